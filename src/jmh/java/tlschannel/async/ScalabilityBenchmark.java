@@ -0,0 +1,329 @@
+package tlschannel.async;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import tlschannel.ClientTlsChannel;
+import tlschannel.HeapBufferAllocator;
+import tlschannel.ServerTlsChannel;
+import tlschannel.TrackingAllocator;
+import tlschannel.helpers.SslContextFactory;
+
+/**
+ * Load harness for an {@link AsynchronousTlsChannelGroup} with many loopback connections, to catch regressions in the
+ * paths of the group that are linear in the number of connections. The servers echo from completion handlers, always
+ * with a read pending. Each invocation sends a message in a window of active connections concurrently and waits for
+ * all the echoes; the window moves on every invocation, so the rest of the connections are idle most of the time, but
+ * every one of them is eventually active. The score is the time per round.
+ *
+ * <p>The number of messages, the CPU time of the selector threads and the time and count of garbage collections are
+ * reported as secondary results (totals of the iteration). At the end of every iteration, a line is printed with the
+ * latency percentiles of the messages, the depth of the task queue of the group (sampled once per round, after all
+ * the messages are sent) and the buffer memory per connection, as tracked by the allocators of the channels. For the
+ * allocation rate, use {@code -prof gc}. This benchmark is in the package of the group to use its latency histogram.
+ *
+ * <p>Every connection uses two file descriptors, so the largest parameter needs a limit of open files above 200 000.
+ * As each local address only has about 28 000 ephemeral ports (on Linux), the clients bind to several loopback
+ * addresses (127.0.0.1, 127.0.0.2, ...), which Linux routes without configuration. Clients resume sessions, to
+ * shorten the setup.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ScalabilityBenchmark {
+
+    private static final int messageSize = 64;
+    private static final int connectionsPerAddress = 20_000;
+
+    @Param({"10000", "100000"})
+    public int connections;
+
+    @Param({"100", "1000"})
+    public int activeConnections;
+
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    private final List<GarbageCollectorMXBean> gcMXBeans = ManagementFactory.getGarbageCollectorMXBeans();
+
+    private AsynchronousTlsChannelGroup group;
+    private long[] selectorThreadIds;
+    private final TrackingAllocator plainAllocator = new TrackingAllocator(new HeapBufferAllocator());
+    private final TrackingAllocator encryptedAllocator = new TrackingAllocator(new HeapBufferAllocator());
+    private final List<AsynchronousTlsChannel> clients = new ArrayList<>();
+    private final List<AsynchronousTlsChannel> servers = new ArrayList<>();
+    private ByteBuffer[] clientBuffers;
+    private int nextActive = 0;
+
+    // statistics of the current iteration
+    private LatencyHistogram messageLatency;
+    private long rounds;
+    private long queuedTasksSum;
+    private long queuedTasksMax;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long messages;
+        public long selectorCpuMicros;
+        public long gcCount;
+        public long gcMillis;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            messages = 0;
+            selectorCpuMicros = 0;
+            gcCount = 0;
+            gcMillis = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, InterruptedException {
+        // the selector threads are the only ones started eagerly by the group
+        Set<Long> threadsBefore = threadIds();
+        group = new AsynchronousTlsChannelGroup();
+        Set<Long> selectorThreads = threadIds();
+        selectorThreads.removeAll(threadsBefore);
+        selectorThreadIds = selectorThreads.stream().mapToLong(Long::longValue).toArray();
+
+        SSLContext sslContext = new SslContextFactory().defaultContext();
+        try (ServerSocketChannel serverSocket = ServerSocketChannel.open()) {
+            serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            InetSocketAddress address = (InetSocketAddress) serverSocket.getLocalAddress();
+            for (int i = 0; i < connections; i++) {
+                SocketChannel rawClient = SocketChannel.open();
+                byte[] localAddress = {127, 0, 0, (byte) (1 + i / connectionsPerAddress)};
+                rawClient.bind(new InetSocketAddress(InetAddress.getByAddress(localAddress), 0));
+                rawClient.connect(address);
+                SocketChannel rawServer = serverSocket.accept();
+                rawClient.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                rawServer.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                rawClient.configureBlocking(false);
+                rawServer.configureBlocking(false);
+                // identifying the peer allows resumption
+                SSLEngine clientEngine = sslContext.createSSLEngine(
+                        SslContextFactory.certificateCommonName, address.getPort());
+                clientEngine.setUseClientMode(true);
+                ClientTlsChannel client = ClientTlsChannel.newBuilder(rawClient, clientEngine)
+                        .withPlainBufferAllocator(plainAllocator)
+                        .withEncryptedBufferAllocator(encryptedAllocator)
+                        .build();
+                ServerTlsChannel server = ServerTlsChannel.newBuilder(rawServer, sslContext)
+                        .withPlainBufferAllocator(plainAllocator)
+                        .withEncryptedBufferAllocator(encryptedAllocator)
+                        .build();
+                clients.add(new AsynchronousTlsChannel(group, client, rawClient));
+                AsynchronousTlsChannel asyncServer = new AsynchronousTlsChannel(group, server, rawServer);
+                servers.add(asyncServer);
+                echo(asyncServer, ByteBuffer.allocate(messageSize));
+            }
+        }
+        clientBuffers = new ByteBuffer[connections];
+        for (int i = 0; i < connections; i++) {
+            clientBuffers[i] = ByteBuffer.allocate(messageSize);
+        }
+        // first message in every connection, which includes the handshakes
+        messageLatency = new LatencyHistogram();
+        for (int i = 0; i < connections; i += activeConnections) {
+            round(new Counters());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        for (AsynchronousTlsChannel channel : clients) {
+            channel.close();
+        }
+        for (AsynchronousTlsChannel channel : servers) {
+            channel.close();
+        }
+        group.shutdownNow();
+    }
+
+    @Setup(Level.Iteration)
+    public void startIteration() {
+        messageLatency = new LatencyHistogram();
+        rounds = 0;
+        queuedTasksSum = 0;
+        queuedTasksMax = 0;
+        plainAllocator.resetMaxAllocation();
+        encryptedAllocator.resetMaxAllocation();
+    }
+
+    @TearDown(Level.Iteration)
+    public void endIteration() {
+        LatencyHistogram.Snapshot latency = messageLatency.snapshot();
+        System.out.printf(
+                "%nmessage latency (us): p50 %.1f, p99 %.1f, p999 %.1f, max %.1f; "
+                        + "queued tasks: mean %.1f, max %d; "
+                        + "buffer bytes per connection: current %.1f, max %.1f%n",
+                latency.getValueAtQuantile(0.5) / 1000.0,
+                latency.getValueAtQuantile(0.99) / 1000.0,
+                latency.getValueAtQuantile(0.999) / 1000.0,
+                latency.getMaxNanos() / 1000.0,
+                rounds == 0 ? 0.0 : (double) queuedTasksSum / rounds,
+                queuedTasksMax,
+                (double) (plainAllocator.currentAllocation() + encryptedAllocator.currentAllocation()) / connections,
+                (double) (plainAllocator.maxAllocation() + encryptedAllocator.maxAllocation()) / connections);
+    }
+
+    /** Send a message in every connection of the next window, concurrently, and wait for all the echoes. */
+    @Benchmark
+    public void round(Counters counters) throws InterruptedException {
+        long selectorCpuBefore = selectorCpuTime();
+        long gcCountBefore = gcCount();
+        long gcMillisBefore = gcMillis();
+        int active = Math.min(activeConnections, connections);
+        CountDownLatch latch = new CountDownLatch(active);
+        for (int i = 0; i < active; i++) {
+            int index = nextActive;
+            nextActive = (nextActive + 1) % connections;
+            ByteBuffer buffer = clientBuffers[index];
+            buffer.clear();
+            sendAndReceive(clients.get(index), buffer, latch, System.nanoTime());
+        }
+        long queuedTasks = group.getQueuedTaskCount();
+        queuedTasksSum += queuedTasks;
+        queuedTasksMax = Math.max(queuedTasksMax, queuedTasks);
+        rounds++;
+        latch.await();
+        counters.messages += active;
+        counters.selectorCpuMicros += (selectorCpuTime() - selectorCpuBefore) / 1000;
+        counters.gcCount += gcCount() - gcCountBefore;
+        counters.gcMillis += gcMillis() - gcMillisBefore;
+    }
+
+    /** Write the whole buffer, then read the echo into it, recording the latency and counting down at the end. */
+    private void sendAndReceive(AsynchronousTlsChannel client, ByteBuffer buffer, CountDownLatch latch, long start) {
+        client.write(buffer, null, new CompletionHandler<Integer, Object>() {
+            @Override
+            public void completed(Integer c, Object attach) {
+                if (buffer.hasRemaining()) {
+                    client.write(buffer, null, this);
+                } else {
+                    buffer.clear();
+                    receive(client, buffer, latch, start);
+                }
+            }
+
+            @Override
+            public void failed(Throwable e, Object attach) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    private void receive(AsynchronousTlsChannel client, ByteBuffer buffer, CountDownLatch latch, long start) {
+        client.read(buffer, null, new CompletionHandler<Integer, Object>() {
+            @Override
+            public void completed(Integer c, Object attach) {
+                if (buffer.hasRemaining()) {
+                    client.read(buffer, null, this);
+                } else {
+                    messageLatency.record(System.nanoTime() - start);
+                    latch.countDown();
+                }
+            }
+
+            @Override
+            public void failed(Throwable e, Object attach) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /** Echo everything the client sends, until the connection is closed. */
+    private static void echo(AsynchronousTlsChannel server, ByteBuffer buffer) {
+        server.read(buffer, null, new CompletionHandler<Integer, Object>() {
+            @Override
+            public void completed(Integer c, Object attach) {
+                if (c < 0) {
+                    return;
+                }
+                buffer.flip();
+                CompletionHandler<Integer, Object> readHandler = this;
+                server.write(buffer, null, new CompletionHandler<Integer, Object>() {
+                    @Override
+                    public void completed(Integer c, Object attach) {
+                        if (buffer.hasRemaining()) {
+                            server.write(buffer, null, this);
+                        } else {
+                            buffer.clear();
+                            server.read(buffer, null, readHandler);
+                        }
+                    }
+
+                    @Override
+                    public void failed(Throwable e, Object attach) {}
+                });
+            }
+
+            @Override
+            public void failed(Throwable e, Object attach) {}
+        });
+    }
+
+    private long selectorCpuTime() {
+        long total = 0;
+        for (long id : selectorThreadIds) {
+            total += threadMXBean.getThreadCpuTime(id);
+        }
+        return total;
+    }
+
+    private long gcCount() {
+        long total = 0;
+        for (GarbageCollectorMXBean bean : gcMXBeans) {
+            total += Math.max(0, bean.getCollectionCount());
+        }
+        return total;
+    }
+
+    private long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean bean : gcMXBeans) {
+            total += Math.max(0, bean.getCollectionTime());
+        }
+        return total;
+    }
+
+    private static Set<Long> threadIds() {
+        Set<Long> ids = new HashSet<>();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            ids.add(thread.getId());
+        }
+        return ids;
+    }
+}
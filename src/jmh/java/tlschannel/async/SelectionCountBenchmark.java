@@ -0,0 +1,97 @@
+package tlschannel.async;
+
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLContext;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import tlschannel.helpers.SocketGroups.AsyncSocketPair;
+import tlschannel.helpers.SocketPairFactory;
+import tlschannel.helpers.SslContextFactory;
+
+/**
+ * Counts the selections (wakeups of the selector threads) per exchange of small messages in an {@link
+ * AsynchronousTlsChannelGroup}, reported as a secondary result. Reads are started before the data arrives, which is
+ * the usual case for a server. When every new operation registered interest in both reading and writing, each read
+ * caused an extra selection and attempt, as a connected socket is almost always ready for writing; with interest
+ * registered according to the state of the channel, a read only wakes the selector when data arrives. This benchmark
+ * is in the package of the group to access the selection count.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SelectionCountBenchmark {
+
+    private static final int messageSize = 64;
+
+    @Param({"false", "true"})
+    public boolean inlineIo;
+
+    private AsynchronousTlsChannelGroup group;
+    private AsyncSocketPair pair;
+    private final ByteBuffer clientBuffer = ByteBuffer.allocate(messageSize);
+    private final ByteBuffer serverBuffer = ByteBuffer.allocate(messageSize);
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long selections;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, InterruptedException, ExecutionException {
+        group = AsynchronousTlsChannelGroup.newBuilder().withInlineIo(inlineIo).build();
+        SSLContext sslContext = new SslContextFactory().defaultContext();
+        SocketPairFactory factory = new SocketPairFactory(sslContext);
+        pair = factory.async(Optional.empty(), group, true, false);
+        pair.client.plain.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        pair.server.plain.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        // complete the handshake, which still registers both interests
+        exchange(new Counters());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        pair.client.external.close();
+        pair.server.external.close();
+        group.shutdownNow();
+    }
+
+    /** The client sends a message, and the server reads it, with the read started before the write. */
+    @Benchmark
+    public int exchange(Counters counters) throws InterruptedException, ExecutionException {
+        long before = group.getSelectionCount();
+        serverBuffer.clear();
+        Future<Integer> serverRead = pair.server.external.read(serverBuffer);
+        clientBuffer.clear();
+        while (clientBuffer.hasRemaining()) {
+            pair.client.external.write(clientBuffer).get();
+        }
+        int received = serverRead.get();
+        while (serverBuffer.hasRemaining()) {
+            received += pair.server.external.read(serverBuffer).get();
+        }
+        counters.selections += group.getSelectionCount() - before;
+        return received;
+    }
+}
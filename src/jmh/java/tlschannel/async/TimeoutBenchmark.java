@@ -0,0 +1,75 @@
+package tlschannel.async;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the timing wheel used for the timeouts of asynchronous operations with the scheduled executor it replaced.
+ * Each invocation schedules a timeout and cancels it, which is what happens with almost every timed operation. Several
+ * threads share the timer, like the threads that start and complete operations in a channel group. This benchmark is
+ * in the package of the timer to access it; the target is well above a million timed operations per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class TimeoutBenchmark {
+
+    private static final long timeoutSeconds = 30;
+
+    @Param({"wheel", "executor"})
+    public String timer;
+
+    private TimingWheel wheel;
+    private ScheduledThreadPoolExecutor executor;
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        final TimingWheel.Timeout timeout = new TimingWheel.Timeout() {
+            @Override
+            void expire() {}
+        };
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        wheel = new TimingWheel(runnable -> new Thread(runnable, "timeout-benchmark-wheel"), 10, TimeUnit.MILLISECONDS, 4096);
+        executor = new ScheduledThreadPoolExecutor(1, runnable -> new Thread(runnable, "timeout-benchmark-executor"));
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        wheel.stop();
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public boolean scheduleAndCancel(ThreadState state) {
+        if (timer.equals("wheel")) {
+            wheel.schedule(state.timeout, timeoutSeconds, TimeUnit.SECONDS);
+            return state.timeout.cancelTimeout();
+        } else {
+            ScheduledFuture<?> future = executor.schedule(() -> {}, timeoutSeconds, TimeUnit.SECONDS);
+            return future.cancel(false);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package tlschannel.jmh;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLContext;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tlschannel.BufferSizeAdvisor;
+import tlschannel.BufferSizeAdvisor.Role;
+import tlschannel.ClientTlsChannel;
+import tlschannel.ServerTlsChannel;
+import tlschannel.helpers.MemoryPipe;
+import tlschannel.helpers.SslContextFactory;
+
+/**
+ * Measures the effect of a {@link BufferSizeAdvisor} on short connections that transfer a block of data. Each
+ * invocation creates a connection, does the handshake, transfers the data and closes the connection. Besides the
+ * time, the number of buffer enlargements and the bytes copied in them are reported as secondary results (per
+ * invocation).
+ *
+ * <p>The non-adaptive case uses an advisor with percentile 0, which never advises more than the minimum size, but
+ * still counts enlargements.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class BufferSizingBenchmark {
+
+    @Param({"false", "true"})
+    public boolean adaptive;
+
+    @Param({"1024", "100000"})
+    public int transferSize;
+
+    private SSLContext sslContext;
+    private BufferSizeAdvisor advisor;
+    private ByteBuffer source;
+    private ByteBuffer receiveBuffer;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long enlargements;
+        public long bytesCopied;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        sslContext = new SslContextFactory().defaultContext();
+        advisor = adaptive ? new BufferSizeAdvisor() : new BufferSizeAdvisor(0, 1024);
+        source = ByteBuffer.allocate(transferSize);
+        receiveBuffer = ByteBuffer.allocate(32 * 1024);
+    }
+
+    @Benchmark
+    public long connection(Counters counters) throws IOException {
+        long enlargementsBefore = totalEnlargements();
+        long bytesCopiedBefore = totalBytesCopied();
+        MemoryPipe pipe = new MemoryPipe();
+        long transferred;
+        try (ClientTlsChannel client = ClientTlsChannel.newBuilder(pipe.client, sslContext)
+                        .withBufferSizeAdvisor(advisor)
+                        .build();
+                ServerTlsChannel server = ServerTlsChannel.newBuilder(pipe.server, sslContext)
+                        .withBufferSizeAdvisor(advisor)
+                        .build()) {
+            MemoryPipe.handshake(client, server);
+            source.clear();
+            transferred = MemoryPipe.transfer(client, server, source, receiveBuffer);
+        }
+        counters.enlargements += totalEnlargements() - enlargementsBefore;
+        counters.bytesCopied += totalBytesCopied() - bytesCopiedBefore;
+        return transferred;
+    }
+
+    private long totalEnlargements() {
+        long ret = 0;
+        for (Role role : Role.values()) {
+            ret += advisor.enlargements(role);
+        }
+        return ret;
+    }
+
+    private long totalBytesCopied() {
+        long ret = 0;
+        for (Role role : Role.values()) {
+            ret += advisor.bytesCopied(role);
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,89 @@
+package tlschannel.jmh;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLContext;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import tlschannel.ClientTlsChannel;
+import tlschannel.ServerTlsChannel;
+import tlschannel.helpers.MemoryPipe;
+import tlschannel.helpers.SslContextFactory;
+
+/**
+ * Measures large reads into a 256 KiB destination buffer with different numbers of records per read. Each invocation
+ * writes 1 MiB and reads it on the other side. The number of read operations done on the TLS channel is reported as a
+ * secondary result, per MiB.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class BulkReadBenchmark {
+
+    private static final int dataSize = 1024 * 1024;
+    private static final int readSize = 256 * 1024;
+
+    @Param({"1", "4", "16"})
+    public int maxRecordsPerRead;
+
+    private ClientTlsChannel client;
+    private ServerTlsChannel server;
+    private ByteBuffer data;
+    private ByteBuffer receiveBuffer;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long reads;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        SSLContext sslContext = new SslContextFactory().defaultContext();
+        MemoryPipe pipe = new MemoryPipe(2 * dataSize);
+        client = ClientTlsChannel.newBuilder(pipe.client, sslContext)
+                .withMaxRecordsPerWrite(16)
+                .build();
+        server = ServerTlsChannel.newBuilder(pipe.server, sslContext)
+                .withMaxRecordsPerRead(maxRecordsPerRead)
+                .build();
+        MemoryPipe.handshake(client, server);
+        data = ByteBuffer.allocate(dataSize);
+        receiveBuffer = ByteBuffer.allocate(readSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        client.close();
+        server.close();
+    }
+
+    @Benchmark
+    public long mebibyte(Counters counters) throws IOException {
+        data.clear();
+        client.write(data);
+        long received = 0;
+        while (received < dataSize) {
+            receiveBuffer.clear();
+            received += server.read(receiveBuffer);
+            counters.reads++;
+        }
+        return received;
+    }
+}
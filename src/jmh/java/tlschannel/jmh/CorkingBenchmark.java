@@ -0,0 +1,89 @@
+package tlschannel.jmh;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import tlschannel.ClientTlsChannel;
+import tlschannel.NeedsReadException;
+import tlschannel.ServerTlsChannel;
+import tlschannel.helpers.MemoryPipe;
+import tlschannel.helpers.SslContextFactory;
+
+/**
+ * Measures the rate of small messages written through a channel, with and without write corking. Each invocation
+ * writes a batch of messages (flushing at the end, if corked) and reads them on the other side.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CorkingBenchmark {
+
+    private static final int messagesPerInvocation = 1000;
+
+    @Param({"false", "true"})
+    public boolean corking;
+
+    @Param({"40", "400"})
+    public int messageSize;
+
+    private ClientTlsChannel client;
+    private ServerTlsChannel server;
+    private ByteBuffer message;
+    private ByteBuffer receiveBuffer;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        SSLContext sslContext = new SslContextFactory().defaultContext();
+        MemoryPipe pipe = new MemoryPipe(messagesPerInvocation * messageSize * 2);
+        client = ClientTlsChannel.newBuilder(pipe.client, sslContext)
+                .withWriteCorking(corking)
+                .build();
+        server = ServerTlsChannel.newBuilder(pipe.server, sslContext).build();
+        MemoryPipe.handshake(client, server);
+        message = ByteBuffer.allocate(messageSize);
+        receiveBuffer = ByteBuffer.allocate(messagesPerInvocation * messageSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        client.close();
+        server.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(messagesPerInvocation)
+    public int messages() throws IOException {
+        for (int i = 0; i < messagesPerInvocation; i++) {
+            message.clear();
+            client.write(message);
+        }
+        client.flush();
+        receiveBuffer.clear();
+        while (receiveBuffer.hasRemaining()) {
+            try {
+                server.read(receiveBuffer);
+            } catch (NeedsReadException e) {
+                throw new IllegalStateException("not all messages were sent", e);
+            }
+        }
+        return receiveBuffer.position();
+    }
+}
@@ -0,0 +1,186 @@
+package tlschannel.jmh;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CompletionHandler;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import tlschannel.async.AsynchronousTlsChannelGroup;
+import tlschannel.helpers.SocketGroups.AsyncSocketPair;
+import tlschannel.helpers.SocketPairFactory;
+import tlschannel.helpers.SslContextFactory;
+
+/**
+ * Compares executors for an {@link AsynchronousTlsChannelGroup}: the default fixed pool, a {@link ForkJoinPool} and
+ * a virtual thread per task (which needs Java 21). Each invocation does an echo round trip in every connection
+ * concurrently, with the servers echoing from completion handlers. The score is the time per round trip.
+ *
+ * <p>Every connection uses two file descriptors, so the default parameter needs a limit of open files above 20 000.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+@OperationsPerInvocation(ExecutorBenchmark.connections)
+public class ExecutorBenchmark {
+
+    static final int connections = 10_000;
+
+    private static final int messageSize = 64;
+
+    @Param({"fixed", "forkJoin", "virtual"})
+    public String executor;
+
+    private AsynchronousTlsChannelGroup group;
+    private List<AsyncSocketPair> pairs;
+    private ByteBuffer[] clientBuffers;
+
+    @Setup(Level.Trial)
+    public void setup() throws InterruptedException {
+        AsynchronousTlsChannelGroup.Builder builder = AsynchronousTlsChannelGroup.newBuilder();
+        switch (executor) {
+            case "fixed":
+                break;
+            case "forkJoin":
+                builder.withExecutor(new ForkJoinPool());
+                break;
+            case "virtual":
+                builder.withExecutor(newVirtualThreadPerTaskExecutor());
+                break;
+            default:
+                throw new IllegalArgumentException(executor);
+        }
+        group = builder.build();
+        SSLContext sslContext = new SslContextFactory().defaultContext();
+        SocketPairFactory factory = new SocketPairFactory(sslContext);
+        pairs = factory.asyncN(Optional.empty(), group, connections, true, false);
+        clientBuffers = new ByteBuffer[connections];
+        for (int i = 0; i < connections; i++) {
+            clientBuffers[i] = ByteBuffer.allocate(messageSize);
+            echo(pairs.get(i), ByteBuffer.allocate(messageSize));
+        }
+        // first round, which includes the handshakes
+        roundTrip();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        for (AsyncSocketPair pair : pairs) {
+            pair.client.external.close();
+            pair.server.external.close();
+        }
+        group.shutdownNow();
+    }
+
+    @Benchmark
+    public void roundTrip() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(connections);
+        for (int i = 0; i < connections; i++) {
+            ByteBuffer buffer = clientBuffers[i];
+            buffer.clear();
+            sendAndReceive(pairs.get(i), buffer, latch);
+        }
+        latch.await();
+    }
+
+    /** Write the whole buffer, then read the echo into it, counting down the latch at the end. */
+    private static void sendAndReceive(AsyncSocketPair pair, ByteBuffer buffer, CountDownLatch latch) {
+        pair.client.external.write(buffer, null, new CompletionHandler<Integer, Object>() {
+            @Override
+            public void completed(Integer c, Object attach) {
+                if (buffer.hasRemaining()) {
+                    pair.client.external.write(buffer, null, this);
+                } else {
+                    buffer.clear();
+                    receive(pair, buffer, latch);
+                }
+            }
+
+            @Override
+            public void failed(Throwable e, Object attach) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    private static void receive(AsyncSocketPair pair, ByteBuffer buffer, CountDownLatch latch) {
+        pair.client.external.read(buffer, null, new CompletionHandler<Integer, Object>() {
+            @Override
+            public void completed(Integer c, Object attach) {
+                if (buffer.hasRemaining()) {
+                    pair.client.external.read(buffer, null, this);
+                } else {
+                    latch.countDown();
+                }
+            }
+
+            @Override
+            public void failed(Throwable e, Object attach) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /** Echo everything the client sends, until the connection is closed. */
+    private static void echo(AsyncSocketPair pair, ByteBuffer buffer) {
+        pair.server.external.read(buffer, null, new CompletionHandler<Integer, Object>() {
+            @Override
+            public void completed(Integer c, Object attach) {
+                if (c < 0) {
+                    return;
+                }
+                buffer.flip();
+                CompletionHandler<Integer, Object> readHandler = this;
+                pair.server.external.write(buffer, null, new CompletionHandler<Integer, Object>() {
+                    @Override
+                    public void completed(Integer c, Object attach) {
+                        if (buffer.hasRemaining()) {
+                            pair.server.external.write(buffer, null, this);
+                        } else {
+                            buffer.clear();
+                            pair.server.external.read(buffer, null, readHandler);
+                        }
+                    }
+
+                    @Override
+                    public void failed(Throwable e, Object attach) {}
+                });
+            }
+
+            @Override
+            public void failed(Throwable e, Object attach) {}
+        });
+    }
+
+    /** Virtual threads need Java 21, while benchmarks compile for Java 8. */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService)
+                    Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("virtual threads need Java 21", e);
+        }
+    }
+}
@@ -0,0 +1,416 @@
+package tlschannel.jmh;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.TrustManagerFactory;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import tlschannel.ClientTlsChannel;
+import tlschannel.ServerTlsChannel;
+import tlschannel.async.AsynchronousTlsChannel;
+import tlschannel.async.AsynchronousTlsChannelGroup;
+import tlschannel.helpers.MemoryPipe;
+import tlschannel.helpers.SslContextFactory;
+
+/**
+ * Measures the rate and latency of handshakes. Each invocation connects a new client-server pair, completes the
+ * handshake and sends one byte from the server to the client, so that the client processes everything the server sent
+ * (like TLS 1.3 session tickets, needed for resumption). The modes are:
+ *
+ * <ul>
+ *   <li>"engine": bare {@link SSLEngine}s exchanging buffers, as the baseline of what the library adds;
+ *   <li>"nonBlocking": channels over a {@link MemoryPipe}, driven from the benchmark thread;
+ *   <li>"blocking": channels over loopback sockets, with the server in its own thread;
+ *   <li>"async": channels over loopback sockets in an {@link AsynchronousTlsChannelGroup}.
+ * </ul>
+ *
+ * <p>With {@code sni}, the client sends a server name, and the server channels choose their context with a {@link
+ * tlschannel.SniSslContextFactory}, which needs to parse the client hello before creating the engine. Client
+ * authentication uses the same key as the server.
+ *
+ * <p>The first two modes run in the benchmark thread, so their throughput is already per core. For all modes, the
+ * number of handshakes and the CPU time of the whole process are reported as secondary results (the totals of the
+ * iteration): their ratio gives handshakes per second per core. The latency distribution is the result of the {@code
+ * latency} benchmark. Socket modes include the TCP connection in the time.
+ *
+ * <p>The default parameters make a long run; they are usually narrowed with {@code -p}.
+ */
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class HandshakeBenchmark {
+
+    private static final String serverName = "name";
+    private static final int fakePeerPort = 443;
+
+    @Param({"engine", "nonBlocking", "blocking", "async"})
+    public String mode;
+
+    @Param({"full", "resumed"})
+    public String session;
+
+    @Param({"rsa", "ecdsa"})
+    public String key;
+
+    @Param({"TLSv1.2", "TLSv1.3"})
+    public String protocol;
+
+    @Param({"false", "true"})
+    public boolean clientAuth;
+
+    @Param({"false", "true"})
+    public boolean sni;
+
+    private SSLContext sslContext;
+    private ServerSocketChannel serverSocket;
+    private InetSocketAddress address;
+    private ExecutorService serverExecutor;
+    private AsynchronousTlsChannelGroup group;
+
+    private final ByteBuffer oneByte = ByteBuffer.allocate(1);
+    private final ByteBuffer clientReceive = ByteBuffer.allocate(1);
+    private final ByteBuffer serverReceive = ByteBuffer.allocate(1);
+    private final ByteBuffer empty = ByteBuffer.allocate(0);
+
+    // used by the engine mode
+    private ByteBuffer clientToServer;
+    private ByteBuffer serverToClient;
+    private ByteBuffer clientApp;
+    private ByteBuffer serverApp;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long handshakes;
+        public long cpuMicros;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            handshakes = 0;
+            cpuMicros = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        sslContext = sslContext(key.equals("ecdsa") ? "mykey3" : "mykey2");
+        switch (mode) {
+            case "engine":
+                int packetSize = sslContext.createSSLEngine().getSession().getPacketBufferSize();
+                int appSize = sslContext.createSSLEngine().getSession().getApplicationBufferSize();
+                clientToServer = ByteBuffer.allocate(packetSize);
+                serverToClient = ByteBuffer.allocate(packetSize);
+                clientApp = ByteBuffer.allocate(appSize);
+                serverApp = ByteBuffer.allocate(appSize);
+                break;
+            case "nonBlocking":
+                break;
+            case "blocking":
+                serverExecutor = Executors.newSingleThreadExecutor();
+                listen();
+                break;
+            case "async":
+                group = new AsynchronousTlsChannelGroup();
+                listen();
+                break;
+            default:
+                throw new IllegalArgumentException(mode);
+        }
+        // check that the parameters are honored; resumed sessions keep the creation time, but not always the id
+        SSLSession first = handshake().getSession();
+        Thread.sleep(10);
+        SSLSession second = handshake().getSession();
+        boolean resumed = first.getCreationTime() == second.getCreationTime();
+        if (!second.getProtocol().equals(protocol) || resumed != session.equals("resumed")) {
+            throw new IllegalStateException("unexpected session: " + second.getProtocol() + ", resumed: " + resumed);
+        }
+    }
+
+    private void listen() throws IOException {
+        serverSocket = ServerSocketChannel.open();
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        address = (InetSocketAddress) serverSocket.getLocalAddress();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (serverExecutor != null) {
+            serverExecutor.shutdownNow();
+        }
+        if (group != null) {
+            group.shutdownNow();
+        }
+        if (serverSocket != null) {
+            serverSocket.close();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public SSLEngine throughput(Counters counters) throws Exception {
+        long cpuBefore = processCpuNanos();
+        SSLEngine engine = handshake();
+        counters.cpuMicros += (processCpuNanos() - cpuBefore) / 1000;
+        counters.handshakes++;
+        return engine;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public SSLEngine latency() throws Exception {
+        return handshake();
+    }
+
+    /** Do one handshake and return the client engine. */
+    private SSLEngine handshake() throws Exception {
+        switch (mode) {
+            case "engine":
+                return engineHandshake();
+            case "nonBlocking":
+                return nonBlockingHandshake();
+            case "blocking":
+                return blockingHandshake();
+            case "async":
+                return asyncHandshake();
+            default:
+                throw new IllegalArgumentException(mode);
+        }
+    }
+
+    private SSLEngine engineHandshake() throws SSLException {
+        SSLEngine client = clientEngine(fakePeerPort);
+        SSLEngine server = serverEngine(sslContext);
+        clientToServer.clear();
+        serverToClient.clear();
+        client.beginHandshake();
+        server.beginHandshake();
+        boolean clientDone = false;
+        boolean serverDone = false;
+        while (!clientDone || !serverDone) {
+            clientDone = engineStep(client, serverToClient, clientToServer, clientApp);
+            serverDone = engineStep(server, clientToServer, serverToClient, serverApp);
+        }
+        oneByte.clear();
+        clientApp.clear();
+        while (clientApp.position() == 0) {
+            if (oneByte.hasRemaining()) {
+                // overflows while there are pending handshake bytes, until the client consumes them
+                server.wrap(oneByte, serverToClient);
+            }
+            engineStep(client, serverToClient, clientToServer, clientApp);
+        }
+        return client;
+    }
+
+    /**
+     * Advance the handshake of an engine as far as possible with the available bytes, and return whether it is done
+     * and has no pending bytes to unwrap. Application data, if any, is unwrapped into the given buffer, which is never
+     * cleared.
+     */
+    private boolean engineStep(SSLEngine engine, ByteBuffer in, ByteBuffer out, ByteBuffer app) throws SSLException {
+        while (true) {
+            HandshakeStatus status = engine.getHandshakeStatus();
+            switch (status) {
+                case NEED_WRAP:
+                    if (engine.wrap(empty, out).getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                        // the peer must consume first
+                        return false;
+                    }
+                    break;
+                case NEED_TASK:
+                    Runnable task;
+                    while ((task = engine.getDelegatedTask()) != null) {
+                        task.run();
+                    }
+                    break;
+                case NEED_UNWRAP:
+                case NOT_HANDSHAKING:
+                case FINISHED:
+                    if (in.position() == 0) {
+                        return status != HandshakeStatus.NEED_UNWRAP;
+                    }
+                    in.flip();
+                    SSLEngineResult result = engine.unwrap(in, app);
+                    in.compact();
+                    if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                        return false;
+                    }
+                    break;
+                default:
+                    // NEED_UNWRAP_AGAIN, only used by DTLS
+                    throw new IllegalStateException(status.toString());
+            }
+        }
+    }
+
+    private SSLEngine nonBlockingHandshake() throws IOException {
+        MemoryPipe pipe = new MemoryPipe();
+        try (ClientTlsChannel client = clientChannel(pipe.client, fakePeerPort);
+                ServerTlsChannel server = serverChannel(pipe.server)) {
+            MemoryPipe.handshake(client, server);
+            oneByte.clear();
+            MemoryPipe.transfer(server, client, oneByte, clientReceive);
+            return client.getSslEngine();
+        }
+    }
+
+    private SSLEngine blockingHandshake() throws IOException, InterruptedException, ExecutionException {
+        Future<?> serverSide = serverExecutor.submit(() -> {
+            try (SocketChannel rawServer = serverSocket.accept();
+                    ServerTlsChannel server = serverChannel(rawServer)) {
+                rawServer.socket().setTcpNoDelay(true);
+                server.handshake();
+                oneByte.clear();
+                server.write(oneByte);
+                // wait for the client to close, which resets the connection
+                serverReceive.clear();
+                server.read(serverReceive);
+            } catch (IOException e) {
+                // expected reset
+            }
+            return null;
+        });
+        try (SocketChannel rawClient = SocketChannel.open(address);
+                ClientTlsChannel client = clientChannel(rawClient, address.getPort())) {
+            // reset the connection when closing, to avoid a growing number of sockets in TIME_WAIT
+            rawClient.socket().setSoLinger(true, 0);
+            rawClient.socket().setTcpNoDelay(true);
+            client.handshake();
+            clientReceive.clear();
+            while (client.read(clientReceive) == 0) {}
+            return client.getSslEngine();
+        } finally {
+            serverSide.get();
+        }
+    }
+
+    private SSLEngine asyncHandshake() throws IOException, InterruptedException, ExecutionException {
+        try (SocketChannel rawClient = SocketChannel.open(address);
+                SocketChannel rawServer = serverSocket.accept()) {
+            rawClient.socket().setSoLinger(true, 0);
+            rawServer.socket().setSoLinger(true, 0);
+            rawClient.socket().setTcpNoDelay(true);
+            rawServer.socket().setTcpNoDelay(true);
+            rawClient.configureBlocking(false);
+            rawServer.configureBlocking(false);
+            ClientTlsChannel client = clientChannel(rawClient, address.getPort());
+            try (AsynchronousTlsChannel asyncClient = new AsynchronousTlsChannel(group, client, rawClient);
+                    AsynchronousTlsChannel asyncServer =
+                            new AsynchronousTlsChannel(group, serverChannel(rawServer), rawServer)) {
+                oneByte.clear();
+                clientReceive.clear();
+                Future<Integer> write = asyncServer.write(oneByte);
+                Future<Integer> read = asyncClient.read(clientReceive);
+                write.get();
+                read.get();
+            }
+            return client.getSslEngine();
+        }
+    }
+
+    private ClientTlsChannel clientChannel(ByteChannel underlying, int peerPort) {
+        return ClientTlsChannel.newBuilder(underlying, clientEngine(peerPort)).build();
+    }
+
+    private ServerTlsChannel serverChannel(ByteChannel underlying) {
+        ServerTlsChannel.Builder builder = sni
+                ? ServerTlsChannel.newBuilder(underlying, name -> Optional.of(sslContext))
+                : ServerTlsChannel.newBuilder(underlying, sslContext);
+        return builder.withEngineFactory(this::serverEngine).build();
+    }
+
+    /**
+     * Create a client engine. Resumption needs the peer to be identified, while full handshakes use engines without
+     * peer information, for which the JDK never tries to resume sessions.
+     */
+    private SSLEngine clientEngine(int peerPort) {
+        SSLEngine engine = session.equals("resumed")
+                ? sslContext.createSSLEngine(serverName, peerPort)
+                : sslContext.createSSLEngine();
+        engine.setUseClientMode(true);
+        engine.setEnabledProtocols(new String[] {protocol});
+        if (sni) {
+            SSLParameters parameters = engine.getSSLParameters();
+            parameters.setServerNames(Collections.singletonList(new SNIHostName(serverName)));
+            engine.setSSLParameters(parameters);
+        }
+        return engine;
+    }
+
+    private SSLEngine serverEngine(SSLContext context) {
+        SSLEngine engine = context.createSSLEngine();
+        engine.setUseClientMode(false);
+        engine.setEnabledProtocols(new String[] {protocol});
+        engine.setNeedClientAuth(clientAuth);
+        return engine;
+    }
+
+    /**
+     * Create a context with only one of the keys of the test key store, which is used by both sides (the client uses it
+     * when client authentication is required).
+     */
+    private SSLContext sslContext(String alias) throws IOException, GeneralSecurityException {
+        KeyStore trusted = KeyStore.getInstance("JKS");
+        KeyStore keys = KeyStore.getInstance("JKS");
+        try (InputStream keystoreFile = SslContextFactory.class.getClassLoader().getResourceAsStream("keystore.jks")) {
+            trusted.load(keystoreFile, "password".toCharArray());
+        }
+        keys.load(null, null);
+        keys.setEntry(
+                alias,
+                trusted.getEntry(alias, new KeyStore.PasswordProtection("password".toCharArray())),
+                new KeyStore.PasswordProtection("password".toCharArray()));
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        tmf.init(trusted);
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        kmf.init(keys, "password".toCharArray());
+        SSLContext context = SSLContext.getInstance(protocol);
+        context.init(kmf.getKeyManagers(), tmf.getTrustManagers(), null);
+        return context;
+    }
+
+    private static long processCpuNanos() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean())
+                .getProcessCpuTime();
+    }
+}
@@ -0,0 +1,96 @@
+package tlschannel.jmh;
+
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import tlschannel.async.AsynchronousTlsChannelGroup;
+import tlschannel.helpers.SocketGroups.AsyncSocketPair;
+import tlschannel.helpers.SocketPairFactory;
+import tlschannel.helpers.SslContextFactory;
+
+/**
+ * Ping-pong latency of small messages in an {@link AsynchronousTlsChannelGroup}, with the reads and writes done in the
+ * executor or inline in the selector thread. Sampling mode reports the percentiles; the interesting one is p0.99.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class InlineIoBenchmark {
+
+    private static final int messageSize = 64;
+
+    @Param({"false", "true"})
+    public boolean inlineIo;
+
+    private AsynchronousTlsChannelGroup group;
+    private AsyncSocketPair pair;
+    private final ByteBuffer clientBuffer = ByteBuffer.allocate(messageSize);
+    private final ByteBuffer serverBuffer = ByteBuffer.allocate(messageSize);
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, InterruptedException, ExecutionException {
+        group = AsynchronousTlsChannelGroup.newBuilder().withInlineIo(inlineIo).build();
+        SSLContext sslContext = new SslContextFactory().defaultContext();
+        SocketPairFactory factory = new SocketPairFactory(sslContext);
+        pair = factory.async(Optional.empty(), group, true, false);
+        // otherwise, delayed acknowledgements dominate the tail latency
+        pair.client.plain.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        pair.server.plain.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        // complete the handshake, so inline I/O is enabled for the channels
+        pingPong();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        pair.client.external.close();
+        pair.server.external.close();
+        group.shutdownNow();
+    }
+
+    /** The client sends a message, the server reads it and sends it back, and the client reads the answer. */
+    @Benchmark
+    public int pingPong() throws InterruptedException, ExecutionException {
+        serverBuffer.clear();
+        Future<Integer> serverRead = pair.server.external.read(serverBuffer);
+        clientBuffer.clear();
+        while (clientBuffer.hasRemaining()) {
+            pair.client.external.write(clientBuffer).get();
+        }
+        int received = serverRead.get();
+        while (serverBuffer.hasRemaining()) {
+            received += pair.server.external.read(serverBuffer).get();
+        }
+        serverBuffer.flip();
+        clientBuffer.clear();
+        Future<Integer> clientRead = pair.client.external.read(clientBuffer);
+        while (serverBuffer.hasRemaining()) {
+            pair.server.external.write(serverBuffer).get();
+        }
+        received += clientRead.get();
+        while (clientBuffer.hasRemaining()) {
+            received += pair.client.external.read(clientBuffer).get();
+        }
+        return received;
+    }
+}
@@ -0,0 +1,85 @@
+package tlschannel.jmh;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import tlschannel.BufferAllocator;
+import tlschannel.ClientTlsChannel;
+import tlschannel.DirectBufferAllocator;
+import tlschannel.HeapBufferAllocator;
+import tlschannel.ScrubbingPolicy;
+import tlschannel.ServerTlsChannel;
+import tlschannel.helpers.MemoryPipe;
+import tlschannel.helpers.SslContextFactory;
+
+/**
+ * Compares the plaintext scrubbing policies, with heap and direct plain buffers. Each invocation transfers a full TLS
+ * record, which is read in small pieces, so every read goes through the internal plain buffer.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ScrubbingBenchmark {
+
+    private static final int recordSize = 16 * 1024;
+    private static final int readSize = 512;
+
+    @Param({"Never", "OnClose", "OnRelease", "Always"})
+    public ScrubbingPolicy policy;
+
+    @Param({"heap", "direct"})
+    public String allocator;
+
+    private ClientTlsChannel client;
+    private ServerTlsChannel server;
+    private ByteBuffer data;
+    private ByteBuffer receiveBuffer;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        SSLContext sslContext = new SslContextFactory().defaultContext();
+        BufferAllocator plainAllocator =
+                allocator.equals("direct") ? new DirectBufferAllocator() : new HeapBufferAllocator();
+        MemoryPipe pipe = new MemoryPipe();
+        client = ClientTlsChannel.newBuilder(pipe.client, sslContext)
+                .withScrubbingPolicy(policy)
+                .withPlainBufferAllocator(plainAllocator)
+                .build();
+        server = ServerTlsChannel.newBuilder(pipe.server, sslContext)
+                .withScrubbingPolicy(policy)
+                .withPlainBufferAllocator(plainAllocator)
+                .build();
+        MemoryPipe.handshake(client, server);
+        data = ByteBuffer.allocate(recordSize);
+        receiveBuffer = ByteBuffer.allocate(readSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        client.close();
+        server.close();
+    }
+
+    @Benchmark
+    public long record() throws IOException {
+        data.clear();
+        return MemoryPipe.transfer(client, server, data, receiveBuffer);
+    }
+}
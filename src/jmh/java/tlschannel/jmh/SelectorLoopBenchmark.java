@@ -0,0 +1,156 @@
+package tlschannel.jmh;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLContext;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import tlschannel.ClientTlsChannel;
+import tlschannel.async.AsynchronousTlsChannel;
+import tlschannel.async.AsynchronousTlsChannelGroup;
+import tlschannel.helpers.SocketGroups.AsyncSocketPair;
+import tlschannel.helpers.SocketPairFactory;
+import tlschannel.helpers.SslContextFactory;
+
+/**
+ * Measures the CPU used by the selector thread of an {@link AsynchronousTlsChannelGroup} with many
+ * registered idle sockets, both while nothing happens and while a single connection is active. Like
+ * in a server, every idle socket has a read waiting. The CPU time of the selector thread is
+ * reported as a secondary result, per operation.
+ *
+ * <p>Every idle socket uses two file descriptors, so the largest parameter needs a limit of open
+ * files above 200 000.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SelectorLoopBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int idleSockets;
+
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+    private AsynchronousTlsChannelGroup group;
+    private long[] selectorThreadIds;
+    private final List<SocketChannel> rawSockets = new ArrayList<>();
+    private final List<AsynchronousTlsChannel> idleChannels = new ArrayList<>();
+    private AsyncSocketPair activePair;
+    private final ByteBuffer writeBuffer = ByteBuffer.allocate(1);
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(1);
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long selectorCpuNanos;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        // the selector threads are the only ones started eagerly by the group
+        Set<Long> threadsBefore = threadIds();
+        group = new AsynchronousTlsChannelGroup();
+        Set<Long> selectorThreads = threadIds();
+        selectorThreads.removeAll(threadsBefore);
+        selectorThreadIds = selectorThreads.stream().mapToLong(Long::longValue).toArray();
+
+        SSLContext sslContext = new SslContextFactory().defaultContext();
+        try (ServerSocketChannel serverSocket = ServerSocketChannel.open()) {
+            serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), idleSockets);
+            InetSocketAddress address = (InetSocketAddress) serverSocket.getLocalAddress();
+            for (int i = 0; i < idleSockets; i++) {
+                SocketChannel client = SocketChannel.open(address);
+                rawSockets.add(client);
+                rawSockets.add(serverSocket.accept());
+                client.configureBlocking(false);
+                ClientTlsChannel tlsChannel = ClientTlsChannel.newBuilder(client, sslContext).build();
+                AsynchronousTlsChannel channel = new AsynchronousTlsChannel(group, tlsChannel, client);
+                // the peer never answers, so the read waits (after sending the ClientHello) until the end
+                channel.read(ByteBuffer.allocate(1));
+                idleChannels.add(channel);
+            }
+        }
+        SocketPairFactory factory = new SocketPairFactory(sslContext);
+        activePair = factory.async(Optional.of(SocketPairFactory.NULL_CIPHER), group, true, false);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        activePair.client.external.close();
+        activePair.server.external.close();
+        for (AsynchronousTlsChannel channel : idleChannels) {
+            channel.close();
+        }
+        for (SocketChannel socket : rawSockets) {
+            socket.close();
+        }
+        group.shutdownNow();
+    }
+
+    /** Does nothing for 100 ms, measuring the work that the selector loop does by itself. */
+    @Benchmark
+    public void idle(Counters counters) throws InterruptedException {
+        long before = selectorCpuTime();
+        Thread.sleep(100);
+        counters.selectorCpuNanos += selectorCpuTime() - before;
+    }
+
+    /** A one-byte round trip in the active connection, with the idle ones registered. */
+    @Benchmark
+    public int roundTrip(Counters counters) throws InterruptedException, ExecutionException {
+        long before = selectorCpuTime();
+        // start reading first, as the first write needs the peer to progress with the handshake
+        readBuffer.clear();
+        Future<Integer> read = activePair.server.external.read(readBuffer);
+        writeBuffer.clear();
+        activePair.client.external.write(writeBuffer).get();
+        int c = read.get();
+        counters.selectorCpuNanos += selectorCpuTime() - before;
+        return c;
+    }
+
+    private long selectorCpuTime() {
+        long total = 0;
+        for (long id : selectorThreadIds) {
+            total += threadMXBean.getThreadCpuTime(id);
+        }
+        return total;
+    }
+
+    private static Set<Long> threadIds() {
+        Set<Long> ids = new HashSet<>();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            ids.add(thread.getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,158 @@
+package tlschannel.jmh;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import tlschannel.BufferAllocator;
+import tlschannel.ClientTlsChannel;
+import tlschannel.DirectBufferAllocator;
+import tlschannel.HeapBufferAllocator;
+import tlschannel.ServerTlsChannel;
+import tlschannel.helpers.MemoryPipe;
+import tlschannel.helpers.SslContextFactory;
+
+/**
+ * Measures bulk throughput of a client-server pair over a {@link MemoryPipe}, so that no system call is involved.
+ * Each invocation sends 1 MiB from the client to the server, using caller buffers of the given size on both sides, so
+ * the primary result, in operations per second, is MiB/s.
+ *
+ * <p>The bytes allocated by the buffer allocators of both channels are reported as a secondary result, together with
+ * the number of MiB transferred (both are totals of the iteration, their ratio is the allocation per MiB). This
+ * includes direct buffers, but not other heap allocations (mostly in the SSLEngine); for those, run with {@code -prof
+ * gc} and look at {@code gc.alloc.rate.norm}.
+ *
+ * <p>The cipher is given without protocol-specific parts (for example, "AES_128_GCM" is
+ * TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256 in TLS 1.2 and TLS_AES_128_GCM_SHA256 in TLS 1.3). Other ciphers, like
+ * "CHACHA20_POLY1305", can be selected with {@code -p cipher=...}, if the JVM supports them.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ThroughputBenchmark {
+
+    private static final int dataSize = 1024 * 1024;
+
+    @Param({"TLSv1.2", "TLSv1.3"})
+    public String protocol;
+
+    @Param({"AES_128_GCM", "AES_256_GCM"})
+    public String cipher;
+
+    @Param({"heap", "direct"})
+    public String allocator;
+
+    @Param({"false", "true"})
+    public boolean releaseBuffers;
+
+    @Param({"1024", "16384", "65536", "1048576"})
+    public int bufferSize;
+
+    private ClientTlsChannel client;
+    private ServerTlsChannel server;
+    private ByteBuffer source;
+    private ByteBuffer receiveBuffer;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long bufferBytesAllocated;
+        public long mebibytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bufferBytesAllocated = 0;
+            mebibytes = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        SSLContext sslContext = new SslContextFactory(protocol).defaultContext();
+        String cipherSuite = cipherSuite(protocol, cipher);
+        SSLEngine clientEngine = sslContext.createSSLEngine();
+        clientEngine.setUseClientMode(true);
+        clientEngine.setEnabledProtocols(new String[] {protocol});
+        clientEngine.setEnabledCipherSuites(new String[] {cipherSuite});
+        BufferAllocator bufferAllocator =
+                allocator.equals("direct") ? new DirectBufferAllocator() : new HeapBufferAllocator();
+        MemoryPipe pipe = new MemoryPipe();
+        client = ClientTlsChannel.newBuilder(pipe.client, clientEngine)
+                .withPlainBufferAllocator(bufferAllocator)
+                .withEncryptedBufferAllocator(bufferAllocator)
+                .withReleaseBuffers(releaseBuffers)
+                .build();
+        server = ServerTlsChannel.newBuilder(pipe.server, sslContext)
+                .withEngineFactory(context -> {
+                    SSLEngine engine = context.createSSLEngine();
+                    engine.setUseClientMode(false);
+                    engine.setEnabledProtocols(new String[] {protocol});
+                    engine.setEnabledCipherSuites(new String[] {cipherSuite});
+                    return engine;
+                })
+                .withPlainBufferAllocator(bufferAllocator)
+                .withEncryptedBufferAllocator(bufferAllocator)
+                .withReleaseBuffers(releaseBuffers)
+                .build();
+        MemoryPipe.handshake(client, server);
+        String negotiated = client.getSslEngine().getSession().getCipherSuite();
+        if (!negotiated.equals(cipherSuite)) {
+            throw new IllegalStateException("negotiated " + negotiated + " instead of " + cipherSuite);
+        }
+        source = ByteBuffer.allocate(bufferSize);
+        receiveBuffer = ByteBuffer.allocate(bufferSize);
+    }
+
+    private static String cipherSuite(String protocol, String cipher) {
+        String hash = cipher.equals("AES_256_GCM") ? "SHA384" : "SHA256";
+        if (protocol.equals("TLSv1.3")) {
+            return "TLS_" + cipher + "_" + hash;
+        } else {
+            return "TLS_ECDHE_RSA_WITH_" + cipher + "_" + hash;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        client.close();
+        server.close();
+    }
+
+    @Benchmark
+    public long mebibyte(Counters counters) throws IOException {
+        long allocatedBefore = bytesAllocated();
+        long transferred = 0;
+        while (transferred < dataSize) {
+            source.clear();
+            transferred += MemoryPipe.transfer(client, server, source, receiveBuffer);
+        }
+        counters.bufferBytesAllocated += bytesAllocated() - allocatedBefore;
+        counters.mebibytes++;
+        return transferred;
+    }
+
+    private long bytesAllocated() {
+        return client.getPlainBufferAllocator().bytesAllocated()
+                + client.getEncryptedBufferAllocator().bytesAllocated()
+                + server.getPlainBufferAllocator().bytesAllocated()
+                + server.getEncryptedBufferAllocator().bytesAllocated();
+    }
+}
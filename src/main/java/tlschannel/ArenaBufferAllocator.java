@@ -0,0 +1,188 @@
+package tlschannel;
+
+import java.nio.ByteBuffer;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import tlschannel.impl.TlsChannelImpl;
+
+/**
+ * Allocator that reserves one or more large direct memory regions upfront and hands out slices of
+ * them, in fixed chunks of the maximum TLS packet size. Requests for any of the sizes used by TLS
+ * channels (starting at 4 KB and doubling up to the maximum TLS packet size) are served from a
+ * chunk; other sizes, or requests made when all chunks are in use, are passed to a fallback
+ * allocator.
+ *
+ * <p>Free chunks are tracked using a lock-free bitmap, so {@link #free(ByteBuffer)} is a constant
+ * time operation that never returns memory to the operating system. This avoids the per-buffer
+ * costs of {@link DirectBufferAllocator}: a native allocation, the registration of a cleaner, and
+ * the accounting of reserved direct memory, which is serialized under load. Memory usage is also
+ * predictable, as the arena is never resized.
+ *
+ * <p>All the buffer objects are created with the arena, and reused afterward. As a consequence, a
+ * buffer must not be used after it is freed. Each chunk has one buffer object for each size, so
+ * very large arenas also have a proportional heap footprint.
+ */
+public class ArenaBufferAllocator implements BufferAllocator {
+
+    private static final int chunkSize = TlsChannelImpl.maxTlsPacketSize;
+
+    /** Direct buffers are limited in size by their int-typed capacity. */
+    private static final int maxChunksPerRegion = Integer.MAX_VALUE / chunkSize;
+
+    private final int chunkCount;
+    private final BufferAllocator fallback;
+
+    /** Buffer views, indexed first by size class and then by chunk. */
+    private final ByteBuffer[][] views;
+
+    /**
+     * Chunk index of every view. Never modified after construction, so it can be read concurrently
+     * without synchronization.
+     */
+    private final Map<ByteBuffer, Integer> chunkIndexes;
+
+    /** One bit per chunk, set when the chunk is free. */
+    private final AtomicLongArray freeChunks;
+
+    /** Word of the bitmap where to start looking for free chunks, to avoid rescanning full words. */
+    private final AtomicInteger searchStart = new AtomicInteger();
+
+    private final AtomicInteger freeChunkCount;
+
+    /**
+     * Creates an instance of this class.
+     *
+     * @param chunkCount number of chunks to reserve, each one the size of the maximum TLS packet
+     * @param fallback allocator used for other sizes, or when the arena is exhausted
+     */
+    public ArenaBufferAllocator(int chunkCount, BufferAllocator fallback) {
+        if (chunkCount <= 0) {
+            throw new IllegalArgumentException("chunk count must be positive: " + chunkCount);
+        }
+        this.chunkCount = chunkCount;
+        this.fallback = fallback;
+        int[] sizeClasses = PooledBufferAllocator.sizeClasses();
+        this.views = new ByteBuffer[sizeClasses.length][chunkCount];
+        this.chunkIndexes = new IdentityHashMap<>(sizeClasses.length * chunkCount);
+        int chunk = 0;
+        while (chunk < chunkCount) {
+            int regionChunks = Math.min(chunkCount - chunk, maxChunksPerRegion);
+            ByteBuffer region = ByteBuffer.allocateDirect(regionChunks * chunkSize);
+            for (int i = 0; i < regionChunks; i++) {
+                for (int sizeClass = 0; sizeClass < sizeClasses.length; sizeClass++) {
+                    ByteBuffer view = region.duplicate();
+                    view.position(i * chunkSize);
+                    view.limit(i * chunkSize + sizeClasses[sizeClass]);
+                    view = view.slice();
+                    views[sizeClass][chunk] = view;
+                    chunkIndexes.put(view, chunk);
+                }
+                chunk++;
+            }
+        }
+        this.freeChunks = new AtomicLongArray((chunkCount + 63) / 64);
+        for (int i = 0; i < chunkCount; i++) {
+            freeChunks.set(i / 64, freeChunks.get(i / 64) | 1L << (i % 64));
+        }
+        this.freeChunkCount = new AtomicInteger(chunkCount);
+    }
+
+    /**
+     * Creates an instance of this class, using a {@link DirectBufferAllocator} as a fallback.
+     *
+     * @param chunkCount number of chunks to reserve, each one the size of the maximum TLS packet
+     */
+    public ArenaBufferAllocator(int chunkCount) {
+        this(chunkCount, new DirectBufferAllocator());
+    }
+
+    @Override
+    public ByteBuffer allocate(int size) {
+        int sizeClass = PooledBufferAllocator.sizeClassIndex(size);
+        if (sizeClass == -1) {
+            return fallback.allocate(size);
+        }
+        int chunk = takeChunk();
+        if (chunk == -1) {
+            return fallback.allocate(size);
+        }
+        ByteBuffer buffer = views[sizeClass][chunk];
+        buffer.clear();
+        return buffer;
+    }
+
+    private int takeChunk() {
+        if (freeChunkCount.get() == 0) {
+            return -1;
+        }
+        int words = freeChunks.length();
+        int start = searchStart.get();
+        for (int i = 0; i < words; i++) {
+            int word = (start + i) % words;
+            while (true) {
+                long bits = freeChunks.get(word);
+                if (bits == 0) {
+                    break;
+                }
+                long lowest = Long.lowestOneBit(bits);
+                if (freeChunks.compareAndSet(word, bits, bits & ~lowest)) {
+                    freeChunkCount.decrementAndGet();
+                    if (word != start) {
+                        searchStart.set(word);
+                    }
+                    return word * 64 + Long.numberOfTrailingZeros(lowest);
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void free(ByteBuffer buffer) {
+        Integer chunk = chunkIndexes.get(buffer);
+        if (chunk == null) {
+            fallback.free(buffer);
+            return;
+        }
+        int word = chunk / 64;
+        long bit = 1L << (chunk % 64);
+        while (true) {
+            long bits = freeChunks.get(word);
+            if ((bits & bit) != 0) {
+                throw new IllegalStateException("buffer freed twice: " + buffer);
+            }
+            if (freeChunks.compareAndSet(word, bits, bits | bit)) {
+                break;
+            }
+        }
+        freeChunkCount.incrementAndGet();
+        if (word < searchStart.get()) {
+            searchStart.set(word);
+        }
+    }
+
+    /**
+     * Return the total number of chunks in the arena.
+     *
+     * @return number of chunks
+     */
+    public int chunkCount() {
+        return chunkCount;
+    }
+
+    /**
+     * Return the number of chunks that are currently not in use.
+     *
+     * @return number of chunks
+     */
+    public int freeChunkCount() {
+        return freeChunkCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ArenaBufferAllocator{" + "chunkCount=" + chunkCount + ", fallback=" + fallback + '}';
+    }
+}
@@ -0,0 +1,194 @@
+package tlschannel;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Chooses the initial size of the buffers of TLS channels, based on the sizes that previous
+ * channels actually needed.
+ *
+ * <p>Without an advisor, every buffer starts with 4 KB and grows (doubling, up to the maximum TLS
+ * packet size) only when it is found to be too small. Each growth implies an allocation, a copy of
+ * the buffered data and a deallocation, and it is repeated for every new channel. A connection that
+ * transfers full TLS records pays this cost two or three times per buffer before reaching its
+ * working size.
+ *
+ * <p>An advisor can be shared by any number of channels, using {@link
+ * TlsChannelBuilder#withBufferSizeAdvisor(BufferSizeAdvisor)}. When a channel is closed, the size
+ * that each of its buffers needed (its high-water mark) is recorded, separately for each {@link
+ * Role}. New buffers then start with the smallest size that would have been enough for a given
+ * fraction (the percentile) of the recorded buffers. Sizes are only recorded in the same classes
+ * used for buffer growth, so the memory used is constant. Old records are progressively discounted,
+ * so the advice follows changes in the traffic pattern.
+ *
+ * <p>The advisor also counts how many times buffers were enlarged, and how many bytes were copied
+ * while doing so, which can be used to assess its effect.
+ *
+ * <p>Instances of this class are thread-safe.
+ */
+public class BufferSizeAdvisor {
+
+    /** The buffers of a TLS channel, whose sizes are tracked independently. */
+    public enum Role {
+        /** Encrypted data read from the underlying channel. */
+        InEncrypted,
+        /** Decrypted data that did not fit in the buffers supplied by the caller. */
+        InPlain,
+        /** Encrypted data to be written to the underlying channel. */
+        OutEncrypted,
+        /** Plain data staged for writing, when corking is enabled. */
+        OutPlain
+    }
+
+    private static final double defaultPercentile = 0.9;
+    private static final int defaultSampleWindow = 1024;
+
+    /** How often to recompute the advised size, in recorded samples. */
+    private static final int recomputeInterval = 16;
+
+    private static final int[] sizeClasses = PooledBufferAllocator.sizeClasses();
+
+    private static final class RoleStats {
+        final AtomicLongArray counts = new AtomicLongArray(sizeClasses.length);
+        final AtomicLong samples = new AtomicLong();
+        final LongAdder enlargements = new LongAdder();
+        final LongAdder bytesCopied = new LongAdder();
+        volatile int advisedSize = sizeClasses[0];
+    }
+
+    private final double percentile;
+    private final int sampleWindow;
+    private final RoleStats[] stats;
+
+    /**
+     * Creates an instance of this class.
+     *
+     * @param percentile the fraction, between 0 and 1, of the recorded buffers that the advised size
+     *     should accommodate without growing. A value of 0 always advises the minimum size, which is
+     *     equivalent to not using an advisor.
+     * @param sampleWindow number of recorded samples after which the previous ones are discounted
+     *     by half
+     */
+    public BufferSizeAdvisor(double percentile, int sampleWindow) {
+        if (percentile < 0 || percentile > 1) {
+            throw new IllegalArgumentException("percentile must be between 0 and 1: " + percentile);
+        }
+        if (sampleWindow <= 0) {
+            throw new IllegalArgumentException("sample window must be positive: " + sampleWindow);
+        }
+        this.percentile = percentile;
+        this.sampleWindow = sampleWindow;
+        this.stats = new RoleStats[Role.values().length];
+        for (int i = 0; i < stats.length; i++) {
+            stats[i] = new RoleStats();
+        }
+    }
+
+    /** Creates an instance of this class, advising a size big enough for 90% of the buffers. */
+    public BufferSizeAdvisor() {
+        this(defaultPercentile, defaultSampleWindow);
+    }
+
+    /**
+     * Return the size with which new buffers of the given role should start.
+     *
+     * @param role the buffer role
+     * @return the size, in bytes
+     */
+    public int initialSize(Role role) {
+        return stats[role.ordinal()].advisedSize;
+    }
+
+    /**
+     * Record the size needed by a buffer during the life of a channel.
+     *
+     * @param role the buffer role
+     * @param highWaterMark the maximum number of bytes that the buffer needed to hold
+     */
+    public void recordHighWaterMark(Role role, int highWaterMark) {
+        RoleStats roleStats = stats[role.ordinal()];
+        roleStats.counts.incrementAndGet(sizeClassFor(highWaterMark));
+        long samples = roleStats.samples.incrementAndGet();
+        if (samples % sampleWindow == 0) {
+            age(roleStats);
+        }
+        if (samples <= recomputeInterval || samples % recomputeInterval == 0) {
+            roleStats.advisedSize = computeAdvisedSize(roleStats);
+        }
+    }
+
+    /**
+     * Record that a buffer had to be enlarged.
+     *
+     * @param role the buffer role
+     * @param bytesCopied number of bytes copied from the old buffer to the new one
+     */
+    public void recordEnlargement(Role role, int bytesCopied) {
+        RoleStats roleStats = stats[role.ordinal()];
+        roleStats.enlargements.increment();
+        roleStats.bytesCopied.add(bytesCopied);
+    }
+
+    /**
+     * Return the number of times that buffers of the given role were enlarged.
+     *
+     * @param role the buffer role
+     * @return number of enlargements
+     */
+    public long enlargements(Role role) {
+        return stats[role.ordinal()].enlargements.longValue();
+    }
+
+    /**
+     * Return the number of bytes copied when enlarging buffers of the given role.
+     *
+     * @param role the buffer role
+     * @return number of bytes
+     */
+    public long bytesCopied(Role role) {
+        return stats[role.ordinal()].bytesCopied.longValue();
+    }
+
+    private static int sizeClassFor(int size) {
+        for (int i = 0; i < sizeClasses.length; i++) {
+            if (size <= sizeClasses[i]) {
+                return i;
+            }
+        }
+        return sizeClasses.length - 1;
+    }
+
+    /**
+     * Halve all the counts. Concurrent increments can be lost in the process, which is harmless, as
+     * counts are only used to approximate a distribution.
+     */
+    private static void age(RoleStats roleStats) {
+        for (int i = 0; i < sizeClasses.length; i++) {
+            roleStats.counts.set(i, roleStats.counts.get(i) / 2);
+        }
+    }
+
+    private int computeAdvisedSize(RoleStats roleStats) {
+        long[] counts = new long[sizeClasses.length];
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = roleStats.counts.get(i);
+            total += counts[i];
+        }
+        double threshold = total * percentile;
+        long accumulated = 0;
+        for (int i = 0; i < counts.length; i++) {
+            accumulated += counts[i];
+            if (accumulated >= threshold) {
+                return sizeClasses[i];
+            }
+        }
+        return sizeClasses[sizeClasses.length - 1];
+    }
+
+    @Override
+    public String toString() {
+        return "BufferSizeAdvisor{" + "percentile=" + percentile + ", sampleWindow=" + sampleWindow + '}';
+    }
+}
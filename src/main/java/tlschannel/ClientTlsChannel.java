@@ -45,7 +45,15 @@ public class ClientTlsChannel implements TlsChannel {
                     plainBufferAllocator,
                     encryptedBufferAllocator,
                     releaseBuffers,
-                    waitForCloseConfirmation);
+                    waitForCloseConfirmation,
+                    bufferSizeAdvisor,
+                    writeCorking,
+                    corkingFlushThreshold,
+                    corkingFlushDelayNanos,
+                    maxRecordsPerWrite,
+                    maxRecordsPerRead,
+                    scrubbingPolicy,
+                    handshakeLimiter);
         }
     }
 
@@ -91,7 +99,15 @@ public class ClientTlsChannel implements TlsChannel {
             BufferAllocator plainBufAllocator,
             BufferAllocator encryptedBufAllocator,
             boolean releaseBuffers,
-            boolean waitForCloseNotifyOnClose) {
+            boolean waitForCloseNotifyOnClose,
+            Optional<BufferSizeAdvisor> bufferSizeAdvisor,
+            boolean writeCorking,
+            int corkingFlushThreshold,
+            long corkingFlushDelayNanos,
+            int maxRecordsPerWrite,
+            int maxRecordsPerRead,
+            ScrubbingPolicy scrubbingPolicy,
+            Optional<HandshakeLimiter> handshakeLimiter) {
         if (!engine.getUseClientMode()) {
             throw new IllegalArgumentException("SSLEngine must be in client mode");
         }
@@ -108,7 +124,15 @@ public class ClientTlsChannel implements TlsChannel {
                 trackingPlainBufAllocator,
                 trackingEncryptedAllocator,
                 releaseBuffers,
-                waitForCloseNotifyOnClose);
+                waitForCloseNotifyOnClose,
+                bufferSizeAdvisor,
+                writeCorking,
+                corkingFlushThreshold,
+                corkingFlushDelayNanos,
+                maxRecordsPerWrite,
+                maxRecordsPerRead,
+                scrubbingPolicy,
+                handshakeLimiter);
     }
 
     @Override
@@ -136,11 +160,31 @@ public class ClientTlsChannel implements TlsChannel {
         return impl.getEncryptedBufferAllocator();
     }
 
+    @Override
+    public TlsChannelStats getStats() {
+        return impl.getStats();
+    }
+
     @Override
     public boolean getRunTasks() {
         return impl.getRunTasks();
     }
 
+    @Override
+    public boolean getWriteCorking() {
+        return impl.getWriteCorking();
+    }
+
+    @Override
+    public int readInterestOps() {
+        return impl.readInterestOps();
+    }
+
+    @Override
+    public int writeInterestOps() {
+        return impl.writeInterestOps();
+    }
+
     @Override
     public long read(ByteBuffer[] dstBuffers, int offset, int length) throws IOException {
         ByteBufferSet dest = new ByteBufferSet(dstBuffers, offset, length);
@@ -158,6 +202,16 @@ public class ClientTlsChannel implements TlsChannel {
         return (int) read(new ByteBuffer[] {dstBuffer});
     }
 
+    @Override
+    public ByteBuffer readLease() throws IOException {
+        return impl.readLease();
+    }
+
+    @Override
+    public void releaseLease(ByteBuffer lease) {
+        impl.releaseLease(lease);
+    }
+
     @Override
     public long write(ByteBuffer[] srcBuffers, int offset, int length) throws IOException {
         ByteBufferSet source = new ByteBufferSet(srcBuffers, offset, length);
@@ -174,6 +228,11 @@ public class ClientTlsChannel implements TlsChannel {
         return (int) write(new ByteBuffer[] {srcBuffer});
     }
 
+    @Override
+    public void flush() throws IOException {
+        impl.flush();
+    }
+
     @Override
     public void renegotiate() throws IOException {
         impl.renegotiate();
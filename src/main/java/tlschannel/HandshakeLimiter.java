@@ -0,0 +1,392 @@
+package tlschannel;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.net.ssl.SSLHandshakeException;
+
+/**
+ * Limits the number of TLS handshakes that are in progress at the same time.
+ *
+ * <p>Handshakes are CPU-intensive. When many connections arrive at the same time, for example when
+ * a large number of clients reconnect after a failover, doing all the handshakes concurrently
+ * means that all of them progress slowly, many of them time out after having consumed CPU, and the
+ * established connections are starved. With a limiter, only a fixed number of handshakes are
+ * admitted at a time; the rest wait in a bounded queue, and are rejected when the queue is full or
+ * after waiting too long, before the {@link javax.net.ssl.SSLEngine} does any work for them.
+ *
+ * <p>A limiter can be shared by any number of channels, using {@link
+ * TlsChannelBuilder#withHandshakeLimiter(HandshakeLimiter)}, and by asynchronous channel groups,
+ * using {@link
+ * tlschannel.async.AsynchronousTlsChannelGroup.Builder#withHandshakeLimiter(HandshakeLimiter)}. A
+ * channel waits for admission at the start of its initial handshake: blocking channels block, and
+ * non-blocking selectable channels throw {@link NeedsAdmissionException}. Rejected handshakes fail
+ * with an {@link SSLHandshakeException}, and the rejection callback is called. Admitted handshakes
+ * keep their permit until they finish, or until the channel is closed.
+ *
+ * <p>The maximum queue time is enforced by blocking channels while they wait, by asynchronous
+ * channel groups with a timer, and, for the rest, whenever a handshake is requested or finishes.
+ *
+ * <p>Instances of this class are thread-safe.
+ */
+public class HandshakeLimiter {
+
+    private static final Logger logger = Logger.getLogger(HandshakeLimiter.class.getName());
+
+    private enum State {
+        Queued,
+        Admitted,
+        Rejected,
+        Released
+    }
+
+    /**
+     * A request for a handshake, which is admitted immediately, queued or rejected. It must be
+     * released when the handshake is done, or when it is abandoned.
+     */
+    public final class Permit {
+
+        private final long requestedAt = System.nanoTime();
+
+        private final CompletableFuture<Void> admission = new CompletableFuture<>();
+
+        /** Guarded by the lock of the limiter. */
+        private State state;
+
+        private Permit() {}
+
+        /**
+         * Return the admission of this permit, which completes normally when the handshake is
+         * admitted, and exceptionally, with an {@link SSLHandshakeException}, when it is rejected.
+         *
+         * @return the admission future
+         */
+        public CompletableFuture<Void> admission() {
+            return admission;
+        }
+
+        /**
+         * Wait until the handshake is admitted, at most for the maximum queue time of the limiter.
+         *
+         * @throws SSLHandshakeException if the handshake was rejected
+         * @throws InterruptedIOException if the current thread was interrupted while waiting
+         */
+        public void await() throws IOException {
+            try {
+                try {
+                    admission.get(getRemainingQueueTimeNanos(), TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    rejectIfQueued(this);
+                    // no longer queued, so already admitted or rejected
+                    admission.get();
+                }
+            } catch (InterruptedException e) {
+                // the permit keeps its place in the queue, in case the operation is retried
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for handshake admission");
+            } catch (ExecutionException e) {
+                throw (SSLHandshakeException) e.getCause();
+            }
+        }
+
+        /**
+         * Return the time left until the maximum queue time of the limiter, after which this permit
+         * is rejected if it is still queued.
+         *
+         * @return time, in nanoseconds, or 0 if the maximum queue time already elapsed
+         */
+        public long getRemainingQueueTimeNanos() {
+            return Math.max(maxQueueTimeNanos - (System.nanoTime() - requestedAt), 0);
+        }
+
+        /**
+         * Reject this permit if it is still queued after the maximum queue time of the limiter.
+         */
+        public void checkQueueTime() {
+            if (System.nanoTime() - requestedAt >= maxQueueTimeNanos) {
+                rejectIfQueued(this);
+            }
+        }
+
+        /**
+         * Release this permit, so that another handshake can be admitted. Queued permits are removed
+         * from the queue, and their admission fails. Calling this method more than once is harmless.
+         */
+        public void release() {
+            releasePermit(this);
+        }
+    }
+
+    private final int maxConcurrentHandshakes;
+    private final int maxQueuedHandshakes;
+    private final long maxQueueTimeNanos;
+    private final Runnable rejectionCallback;
+
+    private final Lock lock = new ReentrantLock();
+
+    /** Guarded by {@link #lock}. */
+    private final ArrayDeque<Permit> queue = new ArrayDeque<>();
+
+    /** Guarded by {@link #lock}. */
+    private int inFlight = 0;
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder totalQueueTimeNanos = new LongAdder();
+    private final LongAccumulator maxQueueTime = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Creates an instance of this class.
+     *
+     * @param maxConcurrentHandshakes maximum number of handshakes in progress at the same time
+     * @param maxQueuedHandshakes maximum number of handshakes waiting for admission; when the queue
+     *     is full, new handshakes are rejected immediately
+     * @param maxQueueTime maximum time that a handshake can wait for admission
+     * @param unit the unit of the maximum queue time
+     * @param rejectionCallback called every time a handshake is rejected, in the thread that
+     *     rejects it, so it should run fast
+     */
+    public HandshakeLimiter(
+            int maxConcurrentHandshakes,
+            int maxQueuedHandshakes,
+            long maxQueueTime,
+            TimeUnit unit,
+            Runnable rejectionCallback) {
+        if (maxConcurrentHandshakes <= 0) {
+            throw new IllegalArgumentException(
+                    "maximum concurrent handshakes must be positive: " + maxConcurrentHandshakes);
+        }
+        if (maxQueuedHandshakes < 0) {
+            throw new IllegalArgumentException(
+                    "maximum queued handshakes must not be negative: " + maxQueuedHandshakes);
+        }
+        if (maxQueueTime < 0) {
+            throw new IllegalArgumentException("maximum queue time must not be negative: " + maxQueueTime);
+        }
+        this.maxConcurrentHandshakes = maxConcurrentHandshakes;
+        this.maxQueuedHandshakes = maxQueuedHandshakes;
+        this.maxQueueTimeNanos = unit.toNanos(maxQueueTime);
+        this.rejectionCallback = rejectionCallback;
+    }
+
+    /**
+     * Creates an instance of this class, without a rejection callback.
+     *
+     * @param maxConcurrentHandshakes maximum number of handshakes in progress at the same time
+     * @param maxQueuedHandshakes maximum number of handshakes waiting for admission
+     * @param maxQueueTime maximum time that a handshake can wait for admission
+     * @param unit the unit of the maximum queue time
+     */
+    public HandshakeLimiter(int maxConcurrentHandshakes, int maxQueuedHandshakes, long maxQueueTime, TimeUnit unit) {
+        this(maxConcurrentHandshakes, maxQueuedHandshakes, maxQueueTime, unit, () -> {});
+    }
+
+    /**
+     * Request a permit for a new handshake. The returned permit can be already admitted, queued or
+     * already rejected, as reflected by its {@link Permit#admission()}.
+     *
+     * @return the permit
+     */
+    public Permit request() {
+        Permit permit = new Permit();
+        List<Permit> rejections = new ArrayList<>();
+        lock.lock();
+        try {
+            expireQueued(rejections);
+            if (inFlight < maxConcurrentHandshakes) {
+                inFlight++;
+                permit.state = State.Admitted;
+            } else if (queue.size() < maxQueuedHandshakes) {
+                queue.add(permit);
+                permit.state = State.Queued;
+            } else {
+                permit.state = State.Rejected;
+                rejections.add(permit);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (permit.state == State.Admitted) {
+            admit(permit);
+        } else if (permit.state == State.Queued) {
+            queued.increment();
+        }
+        reject(rejections);
+        return permit;
+    }
+
+    private void releasePermit(Permit permit) {
+        List<Permit> admissions = new ArrayList<>();
+        List<Permit> rejections = new ArrayList<>();
+        boolean abandoned = false;
+        lock.lock();
+        try {
+            if (permit.state == State.Queued) {
+                queue.remove(permit);
+                permit.state = State.Released;
+                abandoned = true;
+            } else if (permit.state == State.Admitted) {
+                permit.state = State.Released;
+                inFlight--;
+                expireQueued(rejections);
+                while (inFlight < maxConcurrentHandshakes && !queue.isEmpty()) {
+                    Permit next = queue.poll();
+                    next.state = State.Admitted;
+                    inFlight++;
+                    admissions.add(next);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        // complete futures out of the lock, as they can run arbitrary code
+        if (abandoned) {
+            permit.admission.completeExceptionally(new SSLHandshakeException("handshake abandoned while queued"));
+        }
+        for (Permit admission : admissions) {
+            admit(admission);
+        }
+        reject(rejections);
+    }
+
+    private void rejectIfQueued(Permit permit) {
+        lock.lock();
+        try {
+            if (permit.state != State.Queued) {
+                return;
+            }
+            queue.remove(permit);
+            permit.state = State.Rejected;
+        } finally {
+            lock.unlock();
+        }
+        reject(permit);
+    }
+
+    /** Remove from the head of the queue the permits that waited too long. The queue is FIFO. */
+    private void expireQueued(List<Permit> rejections) {
+        long now = System.nanoTime();
+        while (!queue.isEmpty() && now - queue.peek().requestedAt >= maxQueueTimeNanos) {
+            Permit permit = queue.poll();
+            permit.state = State.Rejected;
+            rejections.add(permit);
+        }
+    }
+
+    private void admit(Permit permit) {
+        long queueTime = System.nanoTime() - permit.requestedAt;
+        admitted.increment();
+        totalQueueTimeNanos.add(queueTime);
+        maxQueueTime.accumulate(queueTime);
+        permit.admission.complete(null);
+    }
+
+    private void reject(List<Permit> permits) {
+        for (Permit permit : permits) {
+            reject(permit);
+        }
+    }
+
+    private void reject(Permit permit) {
+        rejected.increment();
+        // call client code
+        try {
+            rejectionCallback.run();
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "client code threw exception in handshake rejection callback", e);
+        }
+        permit.admission.completeExceptionally(new SSLHandshakeException("handshake rejected by limiter: " + this));
+    }
+
+    /**
+     * Return the number of handshakes that are currently admitted.
+     *
+     * @return number of handshakes
+     */
+    public int getInFlightCount() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Return the number of handshakes that are currently waiting for admission.
+     *
+     * @return number of handshakes
+     */
+    public int getQueueSize() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Return the total number of handshakes that were admitted.
+     *
+     * @return number of handshakes
+     */
+    public long getAdmittedCount() {
+        return admitted.longValue();
+    }
+
+    /**
+     * Return the total number of handshakes that had to wait in the queue.
+     *
+     * @return number of handshakes
+     */
+    public long getQueuedCount() {
+        return queued.longValue();
+    }
+
+    /**
+     * Return the total number of handshakes that were rejected.
+     *
+     * @return number of handshakes
+     */
+    public long getRejectedCount() {
+        return rejected.longValue();
+    }
+
+    /**
+     * Return the sum of the times that admitted handshakes waited for admission.
+     *
+     * @return time, in nanoseconds
+     */
+    public long getTotalQueueTimeNanos() {
+        return totalQueueTimeNanos.longValue();
+    }
+
+    /**
+     * Return the longest time that an admitted handshake waited for admission.
+     *
+     * @return time, in nanoseconds
+     */
+    public long getMaxQueueTimeNanos() {
+        return maxQueueTime.longValue();
+    }
+
+    @Override
+    public String toString() {
+        return "HandshakeLimiter{" + "maxConcurrentHandshakes=" + maxConcurrentHandshakes + ", maxQueuedHandshakes="
+                + maxQueuedHandshakes + ", maxQueueTimeNanos=" + maxQueueTimeNanos + '}';
+    }
+}
@@ -0,0 +1,31 @@
+package tlschannel;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * This exception signals the caller that the operation could not continue because the initial
+ * handshake is waiting for admission by a {@link HandshakeLimiter}, and the underlying channel is
+ * non-blocking. The method that threw the exception should be retried once the future supplied by
+ * {@link #getAdmission()} is completed, either normally (the handshake was admitted) or
+ * exceptionally (the handshake was rejected, and the retried operation will fail).
+ *
+ * @see TlsChannelBuilder#withHandshakeLimiter(HandshakeLimiter)
+ */
+public class NeedsAdmissionException extends TlsChannelFlowControlException {
+
+    private static final long serialVersionUID = 4720593318706829130L;
+    private final transient CompletableFuture<Void> admission;
+
+    /**
+     * Creates this class registering the supplied future as the pending admission.
+     *
+     * @param admission the pending admission
+     */
+    public NeedsAdmissionException(CompletableFuture<Void> admission) {
+        this.admission = admission;
+    }
+
+    public CompletableFuture<Void> getAdmission() {
+        return admission;
+    }
+}
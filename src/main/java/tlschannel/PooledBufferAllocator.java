@@ -0,0 +1,197 @@
+package tlschannel;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import tlschannel.impl.TlsChannelImpl;
+
+/**
+ * Allocator that keeps freed buffers for reuse, instead of returning them to the underlying
+ * allocator. Buffers are pooled in size classes that match the sizes actually requested by TLS
+ * channels: starting at 4 KB and doubling up to the maximum TLS packet size. Requests for other
+ * sizes are passed through to the underlying allocator.
+ *
+ * <p>Each thread keeps a small cache ("magazine") of buffers per size class, so most allocations
+ * and deallocations do not involve any synchronization. Full and empty magazines are exchanged
+ * with a shared, lock-free depot. When the depot is full, freed buffers are returned to the
+ * underlying allocator.
+ *
+ * <p>Pooling is most useful together with {@link TlsChannelBuilder#withReleaseBuffers(boolean)},
+ * which frees and reallocates buffers of idle connections continuously, and with a {@link
+ * DirectBufferAllocator}, whose allocations and deallocations are expensive.
+ *
+ * <p>Buffers cached by a thread are only returned to the depot when that thread frees more of them
+ * than its magazine can hold. Buffers held by terminated threads are eventually handed back to the
+ * garbage collector.
+ */
+public class PooledBufferAllocator implements BufferAllocator {
+
+    private static final int defaultMagazineSize = 16;
+    private static final int defaultMaxDepotMagazines = 64;
+
+    private static final int[] sizeClasses = createSizeClasses();
+
+    private static int[] createSizeClasses() {
+        List<Integer> sizes = new ArrayList<>();
+        for (int size = TlsChannelImpl.buffersInitialSize; size < TlsChannelImpl.maxTlsPacketSize; size *= 2) {
+            sizes.add(size);
+        }
+        sizes.add(TlsChannelImpl.maxTlsPacketSize);
+        return sizes.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Return the index of the size class that exactly matches the given size.
+     *
+     * @return the index, or -1 if the size does not correspond to any size class
+     */
+    static int sizeClassIndex(int size) {
+        for (int i = 0; i < sizeClasses.length; i++) {
+            if (sizeClasses[i] == size) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static int[] sizeClasses() {
+        return sizeClasses.clone();
+    }
+
+    private static final class Magazine {
+        ByteBuffer[] buffers;
+        int count;
+
+        Magazine(int size) {
+            this.buffers = new ByteBuffer[size];
+        }
+    }
+
+    private static final class Depot {
+        final ConcurrentLinkedQueue<ByteBuffer[]> full = new ConcurrentLinkedQueue<>();
+        final ConcurrentLinkedQueue<ByteBuffer[]> empty = new ConcurrentLinkedQueue<>();
+        final AtomicInteger fullCount = new AtomicInteger();
+    }
+
+    private final BufferAllocator impl;
+    private final int magazineSize;
+    private final int maxDepotMagazines;
+    private final Depot[] depots;
+
+    private final ThreadLocal<Magazine[]> magazines;
+
+    /**
+     * Creates an instance of this class.
+     *
+     * @param impl the allocator used to create new buffers and to free the ones that are not kept
+     * @param magazineSize number of buffers of each size class cached by each thread
+     * @param maxDepotMagazines number of full magazines of each size class kept in the shared depot
+     */
+    public PooledBufferAllocator(BufferAllocator impl, int magazineSize, int maxDepotMagazines) {
+        if (magazineSize <= 0) {
+            throw new IllegalArgumentException("magazine size must be positive: " + magazineSize);
+        }
+        if (maxDepotMagazines < 0) {
+            throw new IllegalArgumentException("depot size cannot be negative: " + maxDepotMagazines);
+        }
+        this.impl = impl;
+        this.magazineSize = magazineSize;
+        this.maxDepotMagazines = maxDepotMagazines;
+        this.depots = new Depot[sizeClasses.length];
+        for (int i = 0; i < depots.length; i++) {
+            depots[i] = new Depot();
+        }
+        this.magazines = ThreadLocal.withInitial(() -> {
+            Magazine[] ret = new Magazine[sizeClasses.length];
+            for (int i = 0; i < ret.length; i++) {
+                ret[i] = new Magazine(magazineSize);
+            }
+            return ret;
+        });
+    }
+
+    /**
+     * Creates an instance of this class, with default cache sizes.
+     *
+     * @param impl the allocator used to create new buffers and to free the ones that are not kept
+     */
+    public PooledBufferAllocator(BufferAllocator impl) {
+        this(impl, defaultMagazineSize, defaultMaxDepotMagazines);
+    }
+
+    @Override
+    public ByteBuffer allocate(int size) {
+        int index = sizeClassIndex(size);
+        if (index == -1) {
+            return impl.allocate(size);
+        }
+        Magazine magazine = magazines.get()[index];
+        if (magazine.count == 0) {
+            Depot depot = depots[index];
+            ByteBuffer[] full = depot.full.poll();
+            if (full == null) {
+                return impl.allocate(size);
+            }
+            depot.fullCount.decrementAndGet();
+            depot.empty.offer(magazine.buffers);
+            magazine.buffers = full;
+            magazine.count = full.length;
+        }
+        magazine.count--;
+        ByteBuffer buffer = magazine.buffers[magazine.count];
+        magazine.buffers[magazine.count] = null;
+        buffer.clear();
+        return buffer;
+    }
+
+    @Override
+    public void free(ByteBuffer buffer) {
+        int index = sizeClassIndex(buffer.capacity());
+        if (index == -1) {
+            impl.free(buffer);
+            return;
+        }
+        Magazine magazine = magazines.get()[index];
+        if (magazine.count == magazine.buffers.length) {
+            Depot depot = depots[index];
+            if (depot.fullCount.incrementAndGet() > maxDepotMagazines) {
+                depot.fullCount.decrementAndGet();
+                impl.free(buffer);
+                return;
+            }
+            depot.full.offer(magazine.buffers);
+            ByteBuffer[] empty = depot.empty.poll();
+            magazine.buffers = empty != null ? empty : new ByteBuffer[magazineSize];
+            magazine.count = 0;
+        }
+        magazine.buffers[magazine.count] = buffer;
+        magazine.count++;
+    }
+
+    /**
+     * Return the number of full magazines currently kept in the shared depot, for all size classes.
+     *
+     * @return number of magazines
+     */
+    public int depotMagazines() {
+        int ret = 0;
+        for (Depot depot : depots) {
+            ret += depot.fullCount.get();
+        }
+        return ret;
+    }
+
+    @Override
+    public String toString() {
+        return "PooledBufferAllocator{"
+                + "impl="
+                + impl
+                + ", magazineSize="
+                + magazineSize
+                + ", maxDepotMagazines="
+                + maxDepotMagazines
+                + '}';
+    }
+}
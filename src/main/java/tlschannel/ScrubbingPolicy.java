@@ -0,0 +1,35 @@
+package tlschannel;
+
+/**
+ * Policy for zeroing the internal buffers that hold plain (unencrypted) data, as a mitigation
+ * against vulnerabilities that could expose memory contents (like, for example, <a
+ * href="https://nvd.nist.gov/vuln/detail/CVE-2014-0160">CVE-2014-0160</a>).
+ *
+ * <p>Buffers containing encrypted data are never zeroed.
+ *
+ * @see TlsChannelBuilder#withScrubbingPolicy(ScrubbingPolicy)
+ */
+public enum ScrubbingPolicy {
+
+    /** Never zero plain buffers. Suitable when plaintext hygiene is handled elsewhere. */
+    Never,
+
+    /**
+     * Zero plain buffers only when the channel is closed. Buffers that are returned to the allocator
+     * before, because they are released opportunistically or replaced by bigger ones, are not zeroed.
+     */
+    OnClose,
+
+    /**
+     * Zero plain buffers every time they are returned to the allocator, that is, when they are
+     * released opportunistically, replaced by bigger ones or when the channel is closed. Plain data
+     * can remain in a buffer while it is in use by the channel.
+     */
+    OnRelease,
+
+    /**
+     * Zero plain bytes as soon as they are consumed, in addition to zeroing buffers returned to the
+     * allocator. This is the default.
+     */
+    Always
+}
@@ -6,6 +6,7 @@ import java.nio.ByteBuffer;
 import java.nio.channels.ByteChannel;
 import java.nio.channels.Channel;
 import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.locks.Lock;
@@ -23,6 +24,7 @@ import javax.net.ssl.SSLSession;
 import javax.net.ssl.StandardConstants;
 import tlschannel.impl.BufferHolder;
 import tlschannel.impl.ByteBufferSet;
+import tlschannel.impl.ChannelStats;
 import tlschannel.impl.TlsChannelImpl;
 import tlschannel.impl.TlsChannelImpl.EofException;
 import tlschannel.impl.TlsExplorer;
@@ -32,6 +34,9 @@ public class ServerTlsChannel implements TlsChannel {
 
     private static final Logger logger = Logger.getLogger(ServerTlsChannel.class.getName());
 
+    /** Statistics reported before the channel implementation exists, which are never updated. */
+    private static final TlsChannelStats noStats = new ChannelStats();
+
     private interface SslContextStrategy {
 
         @FunctionalInterface
@@ -127,7 +132,15 @@ public class ServerTlsChannel implements TlsChannel {
                     plainBufferAllocator,
                     encryptedBufferAllocator,
                     releaseBuffers,
-                    waitForCloseConfirmation);
+                    waitForCloseConfirmation,
+                    bufferSizeAdvisor,
+                    writeCorking,
+                    corkingFlushThreshold,
+                    corkingFlushDelayNanos,
+                    maxRecordsPerWrite,
+                    maxRecordsPerRead,
+                    scrubbingPolicy,
+                    handshakeLimiter);
         }
     }
 
@@ -171,6 +184,14 @@ public class ServerTlsChannel implements TlsChannel {
     private final TrackingAllocator encryptedBufAllocator;
     private final boolean releaseBuffers;
     private final boolean waitForCloseConfirmation;
+    private final Optional<BufferSizeAdvisor> bufferSizeAdvisor;
+    private final boolean writeCorking;
+    private final int corkingFlushThreshold;
+    private final long corkingFlushDelayNanos;
+    private final int maxRecordsPerWrite;
+    private final int maxRecordsPerRead;
+    private final ScrubbingPolicy scrubbingPolicy;
+    private final Optional<HandshakeLimiter> handshakeLimiter;
 
     private final Lock initLock = new ReentrantLock();
 
@@ -190,7 +211,15 @@ public class ServerTlsChannel implements TlsChannel {
             BufferAllocator plainBufAllocator,
             BufferAllocator encryptedBufAllocator,
             boolean releaseBuffers,
-            boolean waitForCloseConfirmation) {
+            boolean waitForCloseConfirmation,
+            Optional<BufferSizeAdvisor> bufferSizeAdvisor,
+            boolean writeCorking,
+            int corkingFlushThreshold,
+            long corkingFlushDelayNanos,
+            int maxRecordsPerWrite,
+            int maxRecordsPerRead,
+            ScrubbingPolicy scrubbingPolicy,
+            Optional<HandshakeLimiter> handshakeLimiter) {
         this.underlying = underlying;
         this.sslContextStrategy = internalSslContextFactory;
         this.engineFactory = engineFactory;
@@ -200,14 +229,25 @@ public class ServerTlsChannel implements TlsChannel {
         this.encryptedBufAllocator = new TrackingAllocator(encryptedBufAllocator);
         this.releaseBuffers = releaseBuffers;
         this.waitForCloseConfirmation = waitForCloseConfirmation;
+        this.bufferSizeAdvisor = bufferSizeAdvisor;
+        this.writeCorking = writeCorking;
+        this.corkingFlushThreshold = corkingFlushThreshold;
+        this.corkingFlushDelayNanos = corkingFlushDelayNanos;
+        this.maxRecordsPerWrite = maxRecordsPerWrite;
+        this.maxRecordsPerRead = maxRecordsPerRead;
+        this.scrubbingPolicy = scrubbingPolicy;
+        this.handshakeLimiter = handshakeLimiter;
         inEncrypted = new BufferHolder(
                 "inEncrypted",
                 Optional.empty(),
                 this.encryptedBufAllocator,
                 TlsChannelImpl.buffersInitialSize,
-                TlsChannelImpl.maxTlsPacketSize,
+                TlsChannelImpl.maxTlsPacketSize * maxRecordsPerRead,
                 false /* plainData */,
-                releaseBuffers);
+                ScrubbingPolicy.Never,
+                releaseBuffers,
+                bufferSizeAdvisor,
+                BufferSizeAdvisor.Role.InEncrypted);
     }
 
     // @formatter:on
@@ -242,6 +282,22 @@ public class ServerTlsChannel implements TlsChannel {
         return runTasks;
     }
 
+    @Override
+    public boolean getWriteCorking() {
+        return writeCorking;
+    }
+
+    @Override
+    public int readInterestOps() {
+        // before the engine exists, the ClientHello must be read
+        return impl == null ? SelectionKey.OP_READ : impl.readInterestOps();
+    }
+
+    @Override
+    public int writeInterestOps() {
+        return impl == null ? SelectionKey.OP_READ : impl.writeInterestOps();
+    }
+
     @Override
     public TrackingAllocator getPlainBufferAllocator() {
         return plainBufAllocator;
@@ -252,6 +308,12 @@ public class ServerTlsChannel implements TlsChannel {
         return encryptedBufAllocator;
     }
 
+    @Override
+    public TlsChannelStats getStats() {
+        // before the engine exists, nothing was counted (the ClientHello is read by this class)
+        return impl == null ? noStats : impl.getStats();
+    }
+
     @Override
     public long read(ByteBuffer[] dstBuffers, int offset, int length) throws IOException {
         ByteBufferSet dest = new ByteBufferSet(dstBuffers, offset, length);
@@ -276,6 +338,26 @@ public class ServerTlsChannel implements TlsChannel {
         return (int) read(new ByteBuffer[] {dstBuffer});
     }
 
+    @Override
+    public ByteBuffer readLease() throws IOException {
+        if (!sniRead) {
+            try {
+                initEngine();
+            } catch (EofException e) {
+                return null;
+            }
+        }
+        return impl.readLease();
+    }
+
+    @Override
+    public void releaseLease(ByteBuffer lease) {
+        if (impl == null) {
+            throw new IllegalArgumentException("not the outstanding lease of this channel");
+        }
+        impl.releaseLease(lease);
+    }
+
     @Override
     public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
         ByteBufferSet source = new ByteBufferSet(srcs, offset, length);
@@ -299,6 +381,15 @@ public class ServerTlsChannel implements TlsChannel {
         return (int) write(new ByteBuffer[] {srcBuffer});
     }
 
+    @Override
+    public void flush() throws IOException {
+        if (!sniRead) {
+            // nothing can have been written yet
+            return;
+        }
+        impl.flush();
+    }
+
     @Override
     public void renegotiate() throws IOException {
         if (!sniRead) {
@@ -362,7 +453,15 @@ public class ServerTlsChannel implements TlsChannel {
                         plainBufAllocator,
                         encryptedBufAllocator,
                         releaseBuffers,
-                        waitForCloseConfirmation);
+                        waitForCloseConfirmation,
+                        bufferSizeAdvisor,
+                        writeCorking,
+                        corkingFlushThreshold,
+                        corkingFlushDelayNanos,
+                        maxRecordsPerWrite,
+                        maxRecordsPerRead,
+                        scrubbingPolicy,
+                        handshakeLimiter);
                 inEncrypted = null;
                 sniRead = true;
             }
@@ -7,6 +7,7 @@ import java.util.function.Consumer;
 import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLException;
 import javax.net.ssl.SSLSession;
+import tlschannel.impl.ChannelStats;
 
 /**
  * A ByteChannel interface to a TLS (Transport Layer Security) connection.
@@ -87,6 +88,19 @@ public interface TlsChannel extends ByteChannel, GatheringByteChannel, Scatterin
      */
     TrackingAllocator getEncryptedBufferAllocator();
 
+    /**
+     * Return the traffic and cryptographic statistics of this channel, as a live view that is
+     * updated by its operations.
+     *
+     * <p>The default implementation, for implementations of this interface other than the ones in
+     * this library, returns statistics whose counters are all zero.
+     *
+     * @return the statistics
+     */
+    default TlsChannelStats getStats() {
+        return new ChannelStats();
+    }
+
     /**
      * Return whether CPU-intensive tasks are run or not.
      *
@@ -95,6 +109,19 @@ public interface TlsChannel extends ByteChannel, GatheringByteChannel, Scatterin
      */
     boolean getRunTasks();
 
+    /**
+     * Return whether writes are corked.
+     *
+     * <p>The default implementation, for implementations of this interface other than the ones in
+     * this library, returns false.
+     *
+     * @return whether writes are corked
+     * @see TlsChannelBuilder#withWriteCorking(boolean)
+     */
+    default boolean getWriteCorking() {
+        return false;
+    }
+
     /**
      * Reads a sequence of bytes from this channel into the given buffer.
      *
@@ -361,6 +388,119 @@ public interface TlsChannel extends ByteChannel, GatheringByteChannel, Scatterin
      */
     long read(ByteBuffer[] dsts) throws IOException;
 
+    /**
+     * Writes all the bytes that were staged by previous write operations, when the channel corks
+     * writes, as well as any encrypted bytes pending from a previous operation. If the channel does
+     * not cork writes, this method only writes pending encrypted bytes, which can only exist if the
+     * underlying channel is non-blocking.
+     *
+     * <p>This method behaves like {@link #write(ByteBuffer)}, with respect to blocking, non-blocking
+     * and task handling. In particular, after a {@link WouldBlockException}, the flush must be
+     * retried when the underlying channel is ready.
+     *
+     * <p>The default implementation, for implementations of this interface other than the ones in
+     * this library, which do not cork writes, does nothing.
+     *
+     * @throws WouldBlockException if the channel is in non-blocking mode and the IO operation cannot
+     *     be completed immediately
+     * @throws NeedsTaskException if the channel is not configured to run tasks automatically and a
+     *     task needs to be executed to complete the operation
+     * @throws SSLException if the {@link SSLEngine} throws an SSLException
+     * @throws IOException if the underlying channel throws an IOException
+     * @see TlsChannelBuilder#withWriteCorking(boolean)
+     */
+    default void flush() throws IOException {}
+
+    /**
+     * Reads decrypted bytes from this channel, without copying them into a caller-supplied buffer.
+     *
+     * <p>This method behaves like {@link #read(ByteBuffer)}, with respect to blocking, non-blocking
+     * and task handling, but, instead of transferring the bytes, it returns a read-only view of the
+     * internal buffer that contains them (typically, a whole TLS record). This saves a copy, which can
+     * be significant when parsing small messages directly from the channel.
+     *
+     * <p>The returned buffer (the "lease") must be passed to {@link #releaseLease(ByteBuffer)} when
+     * the bytes are no longer needed. The bytes before the position of the buffer at that moment are
+     * considered consumed; the rest will be returned again by the next read. The buffer must not be
+     * used after it is released, as its memory can be reused. While a lease is outstanding, any other
+     * read operation will fail with {@link IllegalStateException}.
+     *
+     * <p>Leases are not supported by implementations of this interface other than the ones in this
+     * library, for which the default implementation throws {@link UnsupportedOperationException}.
+     *
+     * @return a read-only buffer with the decrypted bytes, which has at least one byte remaining, or
+     *     <code>null</code> if the channel has reached end-of-stream
+     * @throws IllegalStateException if a lease is already outstanding
+     * @throws UnsupportedOperationException if the implementation does not support leases
+     * @throws WouldBlockException if the channel is in non-blocking mode and the IO operation cannot
+     *     be completed immediately
+     * @throws NeedsTaskException if the channel is not configured to run tasks automatically and a
+     *     task needs to be executed to complete the operation
+     * @throws SSLException if the {@link SSLEngine} throws an SSLException
+     * @throws IOException if the underlying channel throws an IOException
+     * @see #releaseLease(ByteBuffer)
+     */
+    default ByteBuffer readLease() throws IOException {
+        throw new UnsupportedOperationException("read leases are not supported by " + getClass().getName());
+    }
+
+    /**
+     * Releases a buffer obtained from {@link #readLease()}. The bytes before the current position of
+     * the buffer are considered consumed.
+     *
+     * <p>The default implementation, for implementations of this interface other than the ones in
+     * this library, which do not support leases, throws {@link UnsupportedOperationException}.
+     *
+     * @param lease the buffer returned by {@link #readLease()}
+     * @throws IllegalArgumentException if the buffer is not the outstanding lease of this channel
+     * @throws UnsupportedOperationException if the implementation does not support leases
+     * @see #readLease()
+     */
+    default void releaseLease(ByteBuffer lease) {
+        throw new UnsupportedOperationException("read leases are not supported by " + getClass().getName());
+    }
+
+    /**
+     * Return the readiness of the underlying channel that a read operation is expected to need, for
+     * registering interest in a {@link Selector} before attempting the operation. This is a hint,
+     * based on the state of the handshake and on the bytes already buffered: a read usually needs
+     * bytes to read, but it can need to write pending handshake data, or it can progress without the
+     * underlying channel, with decrypted or complete encrypted records already buffered.
+     *
+     * <p>A wrong hint does not cause a wrong result, as the operation will throw the corresponding
+     * {@link WouldBlockException}, but it can cause an unneeded attempt or selection.
+     *
+     * <p>The default implementation, for implementations of this interface other than the ones in
+     * this library, always returns both {@link SelectionKey#OP_READ} and {@link
+     * SelectionKey#OP_WRITE}, as nothing is known about their state: they can need either for a
+     * handshake, or have buffered data. This only costs some early attempts, while a narrower
+     * answer could leave an operation waiting for a readiness that never comes.
+     *
+     * @return a bitwise union of {@link SelectionKey#OP_READ} and {@link SelectionKey#OP_WRITE}, or 0
+     *     if the operation can progress without waiting for the underlying channel. When the state
+     *     cannot be inspected without blocking, because another operation is running, both are
+     *     returned.
+     */
+    default int readInterestOps() {
+        return SelectionKey.OP_READ | SelectionKey.OP_WRITE;
+    }
+
+    /**
+     * Return the readiness of the underlying channel that a write operation is expected to need. A
+     * write usually needs room for writing, but it can need to read handshake data.
+     *
+     * <p>The default implementation, for implementations of this interface other than the ones in
+     * this library, always returns both {@link SelectionKey#OP_READ} and {@link
+     * SelectionKey#OP_WRITE}, for the same reasons as {@link #readInterestOps()}.
+     *
+     * @return a bitwise union of {@link SelectionKey#OP_READ} and {@link SelectionKey#OP_WRITE}, or 0
+     *     if the operation can progress without waiting for the underlying channel
+     * @see #readInterestOps()
+     */
+    default int writeInterestOps() {
+        return SelectionKey.OP_READ | SelectionKey.OP_WRITE;
+    }
+
     /**
      * Closes the underlying channel. This method first does some form of TLS close if not already
      * done. The exact behavior can be configured using the {@link
@@ -2,6 +2,8 @@ package tlschannel;
 
 import java.io.IOException;
 import java.nio.channels.ByteChannel;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import javax.net.ssl.SSLSession;
 import javax.net.ssl.SSLSocket;
@@ -16,6 +18,9 @@ public abstract class TlsChannelBuilder<T extends TlsChannelBuilder<T>> {
     private static final BufferAllocator defaultPlainBufferAllocator = new HeapBufferAllocator();
     private static final BufferAllocator defaultEncryptedBufferAllocator = new HeapBufferAllocator();
 
+    /** Maximum amount of plain data in a TLS record. */
+    private static final int maxTlsDataSize = 16 * 1024;
+
     final ByteChannel underlying;
 
     // @formatter:off
@@ -26,6 +31,14 @@ public abstract class TlsChannelBuilder<T extends TlsChannelBuilder<T>> {
     BufferAllocator encryptedBufferAllocator = defaultEncryptedBufferAllocator;
     boolean releaseBuffers = true;
     boolean waitForCloseConfirmation = false;
+    Optional<BufferSizeAdvisor> bufferSizeAdvisor = Optional.empty();
+    boolean writeCorking = false;
+    int corkingFlushThreshold = maxTlsDataSize;
+    long corkingFlushDelayNanos = Long.MAX_VALUE;
+    int maxRecordsPerWrite = 1;
+    int maxRecordsPerRead = 1;
+    ScrubbingPolicy scrubbingPolicy = ScrubbingPolicy.Always;
+    Optional<HandshakeLimiter> handshakeLimiter = Optional.empty();
 
     TlsChannelBuilder(ByteChannel underlying) {
         this.underlying = underlying;
@@ -126,4 +139,149 @@ public abstract class TlsChannelBuilder<T extends TlsChannelBuilder<T>> {
         this.waitForCloseConfirmation = waitForCloseConfirmation;
         return getThis();
     }
+
+    /**
+     * Set a {@link BufferSizeAdvisor} to choose the initial size of the buffers of the channel, based
+     * on the sizes needed by previous channels that used the same advisor. By default, no advisor is
+     * used and all buffers start with the minimum size, growing as needed.
+     *
+     * <p>The same advisor should be shared by all the channels that are expected to have similar
+     * traffic patterns.
+     *
+     * @param bufferSizeAdvisor the buffer size advisor
+     * @return this object
+     */
+    public T withBufferSizeAdvisor(BufferSizeAdvisor bufferSizeAdvisor) {
+        this.bufferSizeAdvisor = Optional.of(bufferSizeAdvisor);
+        return getThis();
+    }
+
+    /**
+     * Whether to cork writes. When corking, written bytes are not encrypted and sent immediately,
+     * but copied to a staging buffer, which is only written when it reaches the flush threshold, when
+     * {@link TlsChannel#flush()} is called, or when the channel is shut down. Many small writes are
+     * thus coalesced into few full-size TLS records, saving the per-record overhead (header and
+     * authentication tag) and the underlying write operations.
+     *
+     * <p>Default is to not cork. When corking, the application is responsible for calling {@link
+     * TlsChannel#flush()} when the written data must actually be sent, typically at the end of a
+     * message or response. Corked channels cannot be used with {@link
+     * tlschannel.async.AsynchronousTlsChannel}, which has no way to flush.
+     *
+     * @param writeCorking whether to cork writes
+     * @return this object
+     * @see #withCorkingFlushThreshold(int)
+     * @see #withCorkingFlushDelay(long, TimeUnit)
+     */
+    public T withWriteCorking(boolean writeCorking) {
+        this.writeCorking = writeCorking;
+        return getThis();
+    }
+
+    /**
+     * Set the number of staged bytes that causes an automatic flush, when corking writes. Default is
+     * 16 KB, which is the maximum amount of data in a TLS record.
+     *
+     * @param corkingFlushThreshold the threshold, in bytes, between 1 and 16384
+     * @return this object
+     * @see #withWriteCorking(boolean)
+     */
+    public T withCorkingFlushThreshold(int corkingFlushThreshold) {
+        if (corkingFlushThreshold <= 0 || corkingFlushThreshold > maxTlsDataSize) {
+            throw new IllegalArgumentException(
+                    "flush threshold must be between 1 and " + maxTlsDataSize + ": " + corkingFlushThreshold);
+        }
+        this.corkingFlushThreshold = corkingFlushThreshold;
+        return getThis();
+    }
+
+    /**
+     * Set the maximum time that staged bytes can wait, when corking writes. The delay is only
+     * checked during write operations (no background thread is involved), so a write that finds
+     * staged bytes older than the delay flushes them. Bytes staged by the last write before a pause
+     * are therefore only sent on an explicit {@link TlsChannel#flush()}. By default, there is no
+     * maximum delay.
+     *
+     * @param delay the maximum delay, not negative
+     * @param unit the unit of the delay
+     * @return this object
+     * @see #withWriteCorking(boolean)
+     */
+    public T withCorkingFlushDelay(long delay, TimeUnit unit) {
+        if (delay < 0) {
+            throw new IllegalArgumentException("flush delay must not be negative: " + delay);
+        }
+        this.corkingFlushDelayNanos = unit.toNanos(delay);
+        return getThis();
+    }
+
+    /**
+     * Set the maximum number of TLS records that are encrypted before writing them to the underlying
+     * channel. With the default value of 1, a large write operation alternates the encryption of one
+     * record with a write to the underlying channel, which implies a system call per record (about 16
+     * KB) when writing to a socket. With higher values, several records are encrypted in a larger
+     * buffer and written together, at the cost of more memory.
+     *
+     * @param maxRecordsPerWrite the maximum number of records, at least 1
+     * @return this object
+     */
+    public T withMaxRecordsPerWrite(int maxRecordsPerWrite) {
+        if (maxRecordsPerWrite <= 0) {
+            throw new IllegalArgumentException("maximum records per write must be positive: " + maxRecordsPerWrite);
+        }
+        this.maxRecordsPerWrite = maxRecordsPerWrite;
+        return getThis();
+    }
+
+    /**
+     * Set the maximum number of TLS records that can be read from the underlying channel at once.
+     * With the default value of 1, the buffer for encrypted data can hold only one record (about 16
+     * KB), and each read operation decrypts at most one record, even when the destination buffers
+     * have room for more. With higher values, a larger buffer is used, so reads from the underlying
+     * channel can fetch several records at once, and all the complete records already buffered are
+     * decrypted directly into the destination buffers in the same read operation, until they are
+     * full. This reduces the per-byte overhead of large transfers, at the cost of more memory.
+     *
+     * @param maxRecordsPerRead the maximum number of records, at least 1
+     * @return this object
+     */
+    public T withMaxRecordsPerRead(int maxRecordsPerRead) {
+        if (maxRecordsPerRead <= 0) {
+            throw new IllegalArgumentException("maximum records per read must be positive: " + maxRecordsPerRead);
+        }
+        this.maxRecordsPerRead = maxRecordsPerRead;
+        return getThis();
+    }
+
+    /**
+     * Set the policy for zeroing the internal buffers that hold plain data. The default is {@link
+     * ScrubbingPolicy#Always}, which zeroes plain bytes as soon as they are no longer needed. Less
+     * strict policies avoid that work, which can be significant with many small operations, for
+     * applications that handle plaintext hygiene elsewhere.
+     *
+     * @param scrubbingPolicy the policy
+     * @return this object
+     */
+    public T withScrubbingPolicy(ScrubbingPolicy scrubbingPolicy) {
+        this.scrubbingPolicy = scrubbingPolicy;
+        return getThis();
+    }
+
+    /**
+     * Set a {@link HandshakeLimiter} to bound the number of concurrent handshakes. The initial
+     * handshake of the channel waits for admission by the limiter before starting; if the
+     * underlying channel is a non-blocking {@link java.nio.channels.SelectableChannel}, a {@link
+     * NeedsAdmissionException} is thrown instead of waiting. Rejected handshakes fail with an
+     * {@link javax.net.ssl.SSLHandshakeException}. By default, handshakes are not limited.
+     *
+     * <p>The same limiter should be shared by all the channels whose handshakes compete for the
+     * same CPUs.
+     *
+     * @param handshakeLimiter the handshake limiter
+     * @return this object
+     */
+    public T withHandshakeLimiter(HandshakeLimiter handshakeLimiter) {
+        this.handshakeLimiter = Optional.of(handshakeLimiter);
+        return getThis();
+    }
 }
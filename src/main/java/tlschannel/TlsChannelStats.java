@@ -0,0 +1,138 @@
+package tlschannel;
+
+/**
+ * Traffic and cryptographic statistics of a {@link TlsChannel}, obtained with {@link
+ * TlsChannel#getStats()}. This is a live view: the counters are updated by the operations of the
+ * channel, under the locks that these already take, so keeping them costs almost nothing. For the
+ * same reason, values read while operations are running are approximate, and values read together
+ * are not necessarily consistent with each other.
+ *
+ * <p>Comparing the plain bytes with the records can reveal connections whose counterpart sends
+ * many tiny records, and comparing the calls with the records, buffers that are repeatedly too
+ * small.
+ */
+public interface TlsChannelStats {
+
+    /**
+     * Return the number of plain bytes produced by decryption, which are (or will be) returned by
+     * read operations.
+     *
+     * @return number of bytes
+     */
+    long getPlainBytesRead();
+
+    /**
+     * Return the number of plain bytes consumed by encryption.
+     *
+     * @return number of bytes
+     */
+    long getPlainBytesWritten();
+
+    /**
+     * Return the number of encrypted bytes read from the underlying channel.
+     *
+     * @return number of bytes
+     */
+    long getEncryptedBytesRead();
+
+    /**
+     * Return the number of encrypted bytes written to the underlying channel.
+     *
+     * @return number of bytes
+     */
+    long getEncryptedBytesWritten();
+
+    /**
+     * Return the number of TLS records unwrapped, including those of handshakes and alerts.
+     *
+     * @return number of records
+     */
+    long getRecordsUnwrapped();
+
+    /**
+     * Return the number of TLS records wrapped, including those of handshakes and alerts.
+     *
+     * @return number of records
+     */
+    long getRecordsWrapped();
+
+    /**
+     * Return the number of calls to {@link javax.net.ssl.SSLEngine#unwrap}.
+     *
+     * @return number of calls
+     */
+    long getUnwrapCount();
+
+    /**
+     * Return the number of calls to {@link javax.net.ssl.SSLEngine#wrap}.
+     *
+     * @return number of calls
+     */
+    long getWrapCount();
+
+    /**
+     * Return the number of unwrap calls that needed more encrypted bytes to make progress.
+     *
+     * @return number of calls
+     */
+    long getUnwrapUnderflowCount();
+
+    /**
+     * Return the number of unwrap calls that needed a larger destination buffer to make progress.
+     *
+     * @return number of calls
+     */
+    long getUnwrapOverflowCount();
+
+    /**
+     * Return the number of wrap calls that needed a larger destination buffer to make progress.
+     *
+     * @return number of calls
+     */
+    long getWrapOverflowCount();
+
+    /**
+     * Return the number of times that an internal buffer of the channel had to grow.
+     *
+     * @return number of enlargements
+     */
+    long getBufferEnlargementCount();
+
+    /**
+     * Return the number of times that a non-blocking underlying channel had no bytes to read, which
+     * is signaled to the caller with a {@link NeedsReadException}.
+     *
+     * @return number of occurrences
+     */
+    long getNeedsReadCount();
+
+    /**
+     * Return the number of times that a non-blocking underlying channel had no room to write, which
+     * is signaled to the caller with a {@link NeedsWriteException}.
+     *
+     * @return number of occurrences
+     */
+    long getNeedsWriteCount();
+
+    /**
+     * Return the time spent in {@link javax.net.ssl.SSLEngine#unwrap} calls.
+     *
+     * @return time, in nanoseconds
+     */
+    long getUnwrapNanos();
+
+    /**
+     * Return the time spent in {@link javax.net.ssl.SSLEngine#wrap} calls.
+     *
+     * @return time, in nanoseconds
+     */
+    long getWrapNanos();
+
+    /**
+     * Return the time spent running delegated tasks of the {@link javax.net.ssl.SSLEngine} in the
+     * channel. Tasks run by the caller, after a {@link NeedsTaskException}, are not included.
+     *
+     * @return time, in nanoseconds
+     */
+    long getTaskNanos();
+}
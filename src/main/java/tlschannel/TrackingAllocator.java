@@ -53,6 +53,15 @@ public class TrackingAllocator implements BufferAllocator {
         return maxAllocationSizeAcc.longValue();
     }
 
+    /**
+     * Restart the tracking of the maximum allocation, from the current one. Concurrent allocations
+     * can be missed.
+     */
+    public void resetMaxAllocation() {
+        maxAllocationSizeAcc.reset();
+        maxAllocationSizeAcc.accumulate(currentAllocationSize.longValue());
+    }
+
     public long buffersAllocated() {
         return buffersAllocatedAdder.longValue();
     }
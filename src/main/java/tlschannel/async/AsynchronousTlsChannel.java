@@ -1,8 +1,5 @@
 package tlschannel.async;
 
-import static tlschannel.async.AsynchronousTlsChannelGroup.ReadOperation;
-import static tlschannel.async.AsynchronousTlsChannelGroup.WriteOperation;
-
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.AsynchronousByteChannel;
@@ -13,7 +10,9 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import tlschannel.TlsChannel;
+import tlschannel.async.AsynchronousTlsChannelGroup.ReadOperation;
 import tlschannel.async.AsynchronousTlsChannelGroup.RegisteredSocket;
+import tlschannel.async.AsynchronousTlsChannelGroup.WriteOperation;
 import tlschannel.impl.ByteBufferSet;
 
 /** An {@link AsynchronousByteChannel} that works using {@link TlsChannel}s. */
@@ -46,11 +45,15 @@ public class AsynchronousTlsChannel implements ExtendedAsynchronousByteChannel {
     /**
      * Initializes a new instance of this class.
      *
+     * <p>The TLS channel must not cork writes: written bytes would stay staged, as there is no
+     * asynchronous flush operation.
+     *
      * @param channelGroup group to associate new channel to
      * @param tlsChannel existing TLS channel to be used asynchronously
      * @param socketChannel underlying socket
      * @throws ClosedChannelException if any of the underlying channels are closed.
-     * @throws IllegalArgumentException if the socket is in blocking mode
+     * @throws IllegalArgumentException if the socket is in blocking mode, or if the TLS channel corks
+     *     writes
      */
     public AsynchronousTlsChannel(
             AsynchronousTlsChannelGroup channelGroup, TlsChannel tlsChannel, SocketChannel socketChannel)
@@ -61,6 +64,9 @@ public class AsynchronousTlsChannel implements ExtendedAsynchronousByteChannel {
         if (socketChannel.isBlocking()) {
             throw new IllegalArgumentException("socket channel must be in non-blocking mode");
         }
+        if (tlsChannel.getWriteCorking()) {
+            throw new IllegalArgumentException("TLS channel must not cork writes");
+        }
         this.group = channelGroup;
         this.tlsChannel = tlsChannel;
         this.registeredSocket = channelGroup.registerSocket(tlsChannel, socketChannel);
@@ -78,8 +84,8 @@ public class AsynchronousTlsChannel implements ExtendedAsynchronousByteChannel {
                 new ByteBufferSet(dst),
                 0,
                 TimeUnit.MILLISECONDS,
-                c -> group.executor.execute(() -> handler.completed((int) c, attach)),
-                e -> group.executor.execute(() -> handler.failed(e, attach)));
+                c -> group.executeHandler(registeredSocket, () -> handler.completed((int) c, attach)),
+                e -> group.executeHandler(registeredSocket, () -> handler.failed(e, attach)));
     }
 
     @Override
@@ -95,8 +101,8 @@ public class AsynchronousTlsChannel implements ExtendedAsynchronousByteChannel {
                 new ByteBufferSet(dst),
                 timeout,
                 unit,
-                c -> group.executor.execute(() -> handler.completed((int) c, attach)),
-                e -> group.executor.execute(() -> handler.failed(e, attach)));
+                c -> group.executeHandler(registeredSocket, () -> handler.completed((int) c, attach)),
+                e -> group.executeHandler(registeredSocket, () -> handler.failed(e, attach)));
     }
 
     @Override
@@ -121,8 +127,8 @@ public class AsynchronousTlsChannel implements ExtendedAsynchronousByteChannel {
                 bufferSet,
                 timeout,
                 unit,
-                c -> group.executor.execute(() -> handler.completed(c, attach)),
-                e -> group.executor.execute(() -> handler.failed(e, attach)));
+                c -> group.executeHandler(registeredSocket, () -> handler.completed(c, attach)),
+                e -> group.executeHandler(registeredSocket, () -> handler.failed(e, attach)));
     }
 
     @Override
@@ -159,8 +165,8 @@ public class AsynchronousTlsChannel implements ExtendedAsynchronousByteChannel {
                 new ByteBufferSet(src),
                 0,
                 TimeUnit.MILLISECONDS,
-                c -> group.executor.execute(() -> handler.completed((int) c, attach)),
-                e -> group.executor.execute(() -> handler.failed(e, attach)));
+                c -> group.executeHandler(registeredSocket, () -> handler.completed((int) c, attach)),
+                e -> group.executeHandler(registeredSocket, () -> handler.failed(e, attach)));
     }
 
     @Override
@@ -175,8 +181,8 @@ public class AsynchronousTlsChannel implements ExtendedAsynchronousByteChannel {
                 new ByteBufferSet(src),
                 timeout,
                 unit,
-                c -> group.executor.execute(() -> handler.completed((int) c, attach)),
-                e -> group.executor.execute(() -> handler.failed(e, attach)));
+                c -> group.executeHandler(registeredSocket, () -> handler.completed((int) c, attach)),
+                e -> group.executeHandler(registeredSocket, () -> handler.failed(e, attach)));
     }
 
     @Override
@@ -198,8 +204,8 @@ public class AsynchronousTlsChannel implements ExtendedAsynchronousByteChannel {
                 bufferSet,
                 timeout,
                 unit,
-                c -> group.executor.execute(() -> handler.completed(c, attach)),
-                e -> group.executor.execute(() -> handler.failed(e, attach)));
+                c -> group.executeHandler(registeredSocket, () -> handler.completed(c, attach)),
+                e -> group.executeHandler(registeredSocket, () -> handler.failed(e, attach)));
     }
 
     @Override
@@ -219,11 +225,11 @@ public class AsynchronousTlsChannel implements ExtendedAsynchronousByteChannel {
     }
 
     private <A> void completeWithZeroInt(A attach, CompletionHandler<Integer, ? super A> handler) {
-        group.executor.execute(() -> handler.completed(0, attach));
+        group.executeHandler(registeredSocket, () -> handler.completed(0, attach));
     }
 
     private <A> void completeWithZeroLong(A attach, CompletionHandler<Long, ? super A> handler) {
-        group.executor.execute(() -> handler.completed(0L, attach));
+        group.executeHandler(registeredSocket, () -> handler.completed(0L, attach));
     }
 
     /**
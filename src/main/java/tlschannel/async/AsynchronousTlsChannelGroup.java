@@ -10,7 +10,11 @@ import java.nio.channels.Selector;
 import java.nio.channels.ShutdownChannelGroupException;
 import java.nio.channels.SocketChannel;
 import java.nio.channels.WritePendingException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -18,9 +22,13 @@ import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.LongConsumer;
+import java.util.function.ToLongFunction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import tlschannel.HandshakeLimiter;
+import tlschannel.NeedsAdmissionException;
 import tlschannel.NeedsReadException;
 import tlschannel.NeedsTaskException;
 import tlschannel.NeedsWriteException;
@@ -32,6 +40,34 @@ import tlschannel.util.Util;
  * This class encapsulates the infrastructure for running {@link AsynchronousTlsChannel}s. Each
  * instance of this class is a singleton-like object that manages a thread pool that makes it
  * possible to run a group of asynchronous channels.
+ *
+ * <p>Sockets are registered in one or more selectors, each one with its own thread (a {@link
+ * Shard}). With many connections, a single selector thread can become the bottleneck, in which case
+ * more can be configured using {@link Builder#withSelectorCount(int)}. Each new socket is assigned
+ * to the shard with the fewest registered sockets.
+ *
+ * <p>By default, the selector threads only wait for readiness, and the non-blocking reads and
+ * writes run in the executor. With {@link Builder#withInlineIo(boolean)}, the selector threads do
+ * them directly, saving a thread handoff per operation; only completion handlers are dispatched
+ * to the executor.
+ *
+ * <p>By default, the group creates a fixed thread pool, used both for I/O and to run completion
+ * handlers. Other executors, like a {@link ForkJoinPool} or one that creates virtual threads, can
+ * be configured with {@link Builder#withExecutor(ExecutorService)}, and a separate one for
+ * completion handlers with {@link Builder#withHandlerExecutor(ExecutorService)}.
+ *
+ * <p>Delegated tasks of channels that do not run them (see {@link
+ * tlschannel.TlsChannelBuilder#withRunTasks(boolean)}) run in yet another executor, with a bounded
+ * number of threads (see {@link Builder#withHandshakeThreadCount(int)}), so that handshakes do not
+ * compete with the traffic of established connections.
+ *
+ * <p>With {@link Builder#withHandshakeLimiter(HandshakeLimiter)}, new sockets wait for admission
+ * before their operations start, so that a storm of new connections does not take all the CPU.
+ *
+ * <p>Idle selectors block without timeouts, even with operations waiting. Sockets should be closed
+ * through their asynchronous channel: closing the underlying socket directly does not wake the
+ * selector up, so it is only noticed by a periodic sweep, which checks a part of the sockets every
+ * 100 ms while operations are waiting; their operations fail within about a second.
  */
 public class AsynchronousTlsChannelGroup {
 
@@ -42,8 +78,24 @@ public class AsynchronousTlsChannelGroup {
 
     private static final AtomicInteger globalGroupCount = new AtomicInteger();
 
+    /**
+     * How often to look for sockets whose underlying channel was closed directly (without closing the
+     * asynchronous channel), while they can have operations waiting, and during shutdown.
+     */
+    private static final long closingsPollMillis = 100;
+
+    /**
+     * Number of sweeps in which all the sockets of a shard are checked for closings, which bounds the
+     * time to notice one to about a second.
+     */
+    private static final int closingsSweepRounds = 10;
+
+    /** Minimum number of sockets checked by each sweep, so that small shards are checked at once. */
+    private static final int closingsSweepBatch = 64;
+
     class RegisteredSocket {
 
+        final Shard shard;
         final TlsChannel tlsChannel;
         final SocketChannel socketChannel;
 
@@ -70,11 +122,49 @@ public class AsynchronousTlsChannelGroup {
         /** Bitwise union of pending operations to be registered in the selector */
         final AtomicInteger pendingOps = new AtomicInteger();
 
-        RegisteredSocket(TlsChannel tlsChannel, SocketChannel socketChannel) {
+        /**
+         * Whether an operation already completed successfully, which implies that the initial
+         * handshake is done.
+         */
+        volatile boolean completedOperation = false;
+
+        /**
+         * Permit of the initial handshake, if the group has a limiter, until the first operation
+         * completes or the socket is closed. Rejected permits are kept, failing all operations.
+         */
+        volatile HandshakeLimiter.Permit handshakePermit;
+
+        /** Whether the socket will be re-armed on admission, only used by the selector thread. */
+        boolean awaitingAdmission = false;
+
+        RegisteredSocket(Shard shard, TlsChannel tlsChannel, SocketChannel socketChannel) {
+            this.shard = shard;
             this.tlsChannel = tlsChannel;
             this.socketChannel = socketChannel;
         }
 
+        /**
+         * Add operations to be registered in the selector. The socket is queued for the selector loop
+         * only when it had no pending operations, so it is in the queue at most once.
+         */
+        void addPendingOps(int ops) {
+            int previous = pendingOps.getAndAccumulate(ops, (a, b) -> a | b);
+            if (previous == 0) {
+                shard.dirtySockets.add(this);
+            }
+        }
+
+        /**
+         * Queue the socket for cleanup if its underlying channel was closed directly, which otherwise
+         * would only be noticed by the sweep of the selector loop.
+         */
+        void checkClosed() {
+            if (!key.isValid()) {
+                shard.closedSockets.add(this);
+                shard.selector.wakeup();
+            }
+        }
+
         public void close() {
             if (key != null) {
                 key.cancel();
@@ -82,30 +172,54 @@ public class AsynchronousTlsChannelGroup {
             /*
              * Actual de-registration from the selector will happen asynchronously.
              */
-            selector.wakeup();
+            shard.closedSockets.add(this);
+            shard.selector.wakeup();
         }
     }
 
-    private abstract static class Operation {
+    /**
+     * Operations are their own timeouts, so scheduling one does not allocate. Cancelling the timeout
+     * of an operation without one is harmless.
+     */
+    private abstract static class Operation extends TimingWheel.Timeout {
+        final RegisteredSocket socket;
         final ByteBufferSet bufferSet;
         final LongConsumer onSuccess;
         final Consumer<Throwable> onFailure;
-        Future<?> timeoutFuture;
 
-        Operation(ByteBufferSet bufferSet, LongConsumer onSuccess, Consumer<Throwable> onFailure) {
+        /** Time when the operation was started, for the latency histograms. */
+        final long startedAt = System.nanoTime();
+
+        Operation(
+                RegisteredSocket socket,
+                ByteBufferSet bufferSet,
+                LongConsumer onSuccess,
+                Consumer<Throwable> onFailure) {
+            this.socket = socket;
             this.bufferSet = bufferSet;
             this.onSuccess = onSuccess;
             this.onFailure = onFailure;
         }
     }
 
-    static final class ReadOperation extends Operation {
-        ReadOperation(ByteBufferSet bufferSet, LongConsumer onSuccess, Consumer<Throwable> onFailure) {
-            super(bufferSet, onSuccess, onFailure);
+    final class ReadOperation extends Operation {
+        ReadOperation(
+                RegisteredSocket socket,
+                ByteBufferSet bufferSet,
+                LongConsumer onSuccess,
+                Consumer<Throwable> onFailure) {
+            super(socket, bufferSet, onSuccess, onFailure);
+        }
+
+        @Override
+        void expire() {
+            if (doCancelRead(socket, this)) {
+                onFailure.accept(new InterruptedByTimeoutException());
+            }
         }
     }
 
-    static final class WriteOperation extends Operation {
+    final class WriteOperation extends Operation {
 
         /**
          * Because a write operation can flag a block (needs read/write) even after the source buffer
@@ -113,29 +227,50 @@ public class AsynchronousTlsChannelGroup {
          */
         long consumesBytes = 0;
 
-        WriteOperation(ByteBufferSet bufferSet, LongConsumer onSuccess, Consumer<Throwable> onFailure) {
-            super(bufferSet, onSuccess, onFailure);
+        WriteOperation(
+                RegisteredSocket socket,
+                ByteBufferSet bufferSet,
+                LongConsumer onSuccess,
+                Consumer<Throwable> onFailure) {
+            super(socket, bufferSet, onSuccess, onFailure);
+        }
+
+        @Override
+        void expire() {
+            if (doCancelWrite(socket, this)) {
+                onFailure.accept(new InterruptedByTimeoutException());
+            }
         }
     }
 
     private final int id = globalGroupCount.getAndIncrement();
 
-    /**
-     * With the intention of being sparing with warnings, use this flag to ensure that we only log the
-     * warning about a needed task once.
-     */
-    private final AtomicBoolean loggedTaskWarning = new AtomicBoolean();
+    /** Executor for the I/O operations. */
+    final ExecutorService executor;
 
-    private final Selector selector;
+    /** Executor for completion handlers; the same as {@link #executor} unless configured. */
+    final ExecutorService handlerExecutor;
 
-    final ExecutorService executor;
+    /**
+     * Executor for the delegated tasks of channels that do not run them, which are CPU-intensive
+     * during handshakes. Its threads are bounded, so that handshakes cannot take over the I/O
+     * threads and starve established connections.
+     */
+    private final ExecutorService handshakeExecutor;
 
-    private final ScheduledThreadPoolExecutor timeoutExecutor = new ScheduledThreadPoolExecutor(
-            1, runnable -> new Thread(runnable, String.format("async-channel-group-%d-timeout-thread", id)));
+    private final boolean inlineIo;
 
-    private final Thread selectorThread = new Thread(this::loop, String.format("async-channel-group-%d-selector", id));
+    private final Optional<HandshakeLimiter> handshakeLimiter;
 
-    private final ConcurrentLinkedQueue<RegisteredSocket> pendingRegistrations = new ConcurrentLinkedQueue<>();
+    /**
+     * Timeouts are typically much longer than the time operations take, so almost all of them are
+     * cancelled. With a 10 ms tick, a turn of the wheel covers about 41 seconds.
+     */
+    private final TimingWheel timeouts = new TimingWheel(
+            runnable -> new Thread(runnable, String.format("async-channel-group-%d-timeout-thread", id)),
+            10,
+            TimeUnit.MILLISECONDS,
+            4096);
 
     private enum Shutdown {
         No,
@@ -145,21 +280,763 @@ public class AsynchronousTlsChannelGroup {
 
     private volatile Shutdown shutdown = Shutdown.No;
 
-    private final LongAdder selectionCount = new LongAdder();
+    private final List<Shard> shards;
+
+    /** Number of shards whose selector loop is still running. */
+    private final AtomicInteger liveShards;
+
+    /** Used to break ties when choosing the shard for a new socket. */
+    private final AtomicInteger nextShard = new AtomicInteger();
+
+    /**
+     * A selector, with its own thread, and the sockets registered in it. Each shard keeps its own
+     * counters, which are also reported in aggregate by the group.
+     */
+    public final class Shard {
+
+        private final int index;
+
+        final Selector selector;
+
+        private final Thread selectorThread;
+
+        private final ConcurrentLinkedQueue<RegisteredSocket> pendingRegistrations = new ConcurrentLinkedQueue<>();
+
+        private final ConcurrentHashMap<RegisteredSocket, Boolean> registrations = new ConcurrentHashMap<>();
+
+        /** Sockets closed through {@link RegisteredSocket#close()}, to be cleaned up by the loop. */
+        private final ConcurrentLinkedQueue<RegisteredSocket> closedSockets = new ConcurrentLinkedQueue<>();
+
+        /** Sockets with pending operations to be registered in the selector. */
+        private final ConcurrentLinkedQueue<RegisteredSocket> dirtySockets = new ConcurrentLinkedQueue<>();
+
+        /** Number of sockets assigned to this shard, including those not registered yet. */
+        private final AtomicInteger assignedSockets = new AtomicInteger();
+
+        private final Consumer<SelectionKey> selectedKeyAction = this::processSelectedKey;
+
+        private final LongAdder selectionCount = new LongAdder();
+
+        /**
+         * Time when the first key of the current selection was processed, which marks the end of the
+         * select call proper, or 0 if none was; only used by the selector thread.
+         */
+        private long dispatchStartedAt = 0;
+
+        private final ClosingsSweep closingsSweep = new ClosingsSweep();
+
+        private final LongAdder startedReads = new LongAdder();
+        private final LongAdder startedWrites = new LongAdder();
+        private final LongAdder successfulReads = new LongAdder();
+        private final LongAdder successfulWrites = new LongAdder();
+        private final LongAdder failedReads = new LongAdder();
+        private final LongAdder failedWrites = new LongAdder();
+        private final LongAdder cancelledReads = new LongAdder();
+        private final LongAdder cancelledWrites = new LongAdder();
+
+        private final LongAdder currentReads = new LongAdder();
+        private final LongAdder currentWrites = new LongAdder();
+
+        /** Tasks of this shard submitted to the executors that have not started yet. */
+        private final LongAdder queuedTasks = new LongAdder();
+
+        private final LatencyHistogram readLatency = new LatencyHistogram();
+        private final LatencyHistogram writeLatency = new LatencyHistogram();
+        private final LatencyHistogram ioQueueWait = new LatencyHistogram();
+        private final LatencyHistogram handlerQueueWait = new LatencyHistogram();
+        private final LatencyHistogram handlerTime = new LatencyHistogram();
+        private final LatencyHistogram selectTime = new LatencyHistogram();
+        private final LatencyHistogram dispatchTime = new LatencyHistogram();
+        private final LatencyHistogram registrationTime = new LatencyHistogram();
+        private final LatencyHistogram interestTime = new LatencyHistogram();
+        private final LatencyHistogram closedSocketTime = new LatencyHistogram();
+        private final LatencyHistogram closingsCheckTime = new LatencyHistogram();
+
+        private Shard(int index) throws IOException {
+            this.index = index;
+            this.selector = Selector.open();
+            this.selectorThread =
+                    new Thread(this::loop, String.format("async-channel-group-%d-selector-%d", id, index));
+        }
+
+        private void loop() {
+            try {
+                while (shutdown == Shutdown.No
+                        || shutdown == Shutdown.Wait
+                                && (!pendingRegistrations.isEmpty() || !registrations.isEmpty())) {
+                    // All state-changing operations, including closings of asynchronous channels, wake the
+                    // selector up. However, closings of the underlying channels won't: they are noticed when
+                    // the socket is used, or by the periodic sweep, which wakes the selector up when it finds
+                    // one. Only during shutdown, when all the sockets are checked here, the selector times out.
+                    boolean polling = shutdown != Shutdown.No;
+                    long selectStartedAt = System.nanoTime();
+                    dispatchStartedAt = 0;
+                    SelectorSupport.select(selector, selectedKeyAction, polling ? closingsPollMillis : 0); // block
+                    selectionCount.increment();
+                    long t = System.nanoTime();
+                    if (dispatchStartedAt == 0) {
+                        selectTime.record(t - selectStartedAt);
+                    } else {
+                        selectTime.record(dispatchStartedAt - selectStartedAt);
+                        dispatchTime.record(t - dispatchStartedAt);
+                    }
+                    registerPendingSockets();
+                    t = recordPhase(registrationTime, t);
+                    processPendingInterests();
+                    t = recordPhase(interestTime, t);
+                    // re-read the shutdown status, as it could have changed during the selection
+                    if (shutdown != Shutdown.No) {
+                        checkClosings();
+                        t = recordPhase(closingsCheckTime, t);
+                    }
+                    processClosedSockets();
+                    recordPhase(closedSocketTime, t);
+                }
+            } catch (Throwable e) {
+                logger.log(Level.SEVERE, "error in selector loop", e);
+            } finally {
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "error closing selector: {0}", e.getMessage());
+                }
+                checkClosings();
+                if (liveShards.decrementAndGet() == 0) {
+                    timeouts.stop();
+                    handshakeExecutor.shutdown();
+                    executor.shutdown();
+                    if (handlerExecutor != executor) {
+                        // I/O operations can still dispatch handlers until they finish
+                        awaitUninterruptibly(executor);
+                        handlerExecutor.shutdown();
+                    }
+                }
+            }
+        }
+
+        /** Record the time since the start of a phase of the loop, and return the current time. */
+        private long recordPhase(LatencyHistogram histogram, long startedAt) {
+            long now = System.nanoTime();
+            histogram.record(now - startedAt);
+            return now;
+        }
+
+        private void awaitUninterruptibly(ExecutorService executor) {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    if (executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS)) {
+                        break;
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void processSelectedKey(SelectionKey key) {
+            if (dispatchStartedAt == 0) {
+                dispatchStartedAt = System.nanoTime();
+            }
+            RegisteredSocket socket = (RegisteredSocket) key.attachment();
+            try {
+                key.interestOps(0);
+            } catch (CancelledKeyException e) {
+                // can happen when channels are closed with pending operations
+                closedSockets.add(socket);
+                return;
+            }
+            if (!checkAdmission(socket)) {
+                return;
+            }
+            processRead(socket);
+            processWrite(socket);
+        }
+
+        /**
+         * Whether the operations of the socket can proceed. Sockets waiting for admission are re-armed
+         * when it arrives, and the operations of rejected ones fail.
+         */
+        private boolean checkAdmission(RegisteredSocket socket) {
+            HandshakeLimiter.Permit permit = socket.handshakePermit;
+            if (permit == null) {
+                return true;
+            }
+            CompletableFuture<Void> admission = permit.admission();
+            if (!admission.isDone()) {
+                permit.checkQueueTime();
+            }
+            if (!admission.isDone()) {
+                if (!socket.awaitingAdmission) {
+                    socket.awaitingAdmission = true;
+                    // the socket is not selected while it waits, so the queue time needs a timer
+                    QueueTimeout queueTimeout = new QueueTimeout(permit);
+                    timeouts.schedule(queueTimeout, permit.getRemainingQueueTimeNanos(), TimeUnit.NANOSECONDS);
+                    admission.whenComplete((result, e) -> queueTimeout.cancelTimeout());
+                    rearmOnAdmission(socket, admission);
+                }
+                return false;
+            }
+            try {
+                admission.join();
+                return true;
+            } catch (CompletionException e) {
+                failCurrentRead(socket, e.getCause());
+                failCurrentWrite(socket, e.getCause());
+                return false;
+            }
+        }
+
+        /**
+         * Register the pending operations of the sockets that have them, in time proportional to the
+         * number of those sockets, not all the registered ones.
+         */
+        private void processPendingInterests() {
+            RegisteredSocket socket;
+            while ((socket = dirtySockets.poll()) != null) {
+                // operations added after this point will queue the socket again
+                int pending = socket.pendingOps.getAndSet(0);
+                if (pending != 0) {
+                    try {
+                        socket.key.interestOps(socket.key.interestOps() | pending);
+                    } catch (CancelledKeyException e) {
+                        // can happen when channels are closed with pending operations
+                        closedSockets.add(socket);
+                    }
+                }
+            }
+        }
+
+        private void registerPendingSockets() {
+            RegisteredSocket socket;
+            while ((socket = pendingRegistrations.poll()) != null) {
+                try {
+                    socket.key = socket.socketChannel.register(selector, 0, socket);
+                    registrations.put(socket, true);
+                } catch (ClosedChannelException e) {
+                    // can happen when channels are closed right after creation
+                    assignedSockets.decrementAndGet();
+                    releaseHandshakePermit(socket);
+                } finally {
+                    // decrement the count of the latch even in case of exceptions, so the waiting thread
+                    // is unlocked; it will have to check the result, though
+                    socket.registered.countDown();
+                }
+            }
+        }
+
+        /** Clean up the sockets that were closed through the asynchronous channel. */
+        private void processClosedSockets() {
+            RegisteredSocket socket;
+            while ((socket = closedSockets.poll()) != null) {
+                if (registrations.remove(socket) != null) {
+                    assignedSockets.decrementAndGet();
+                    releaseHandshakePermit(socket);
+                    failCurrentRead(socket, new ClosedChannelException());
+                    failCurrentWrite(socket, new ClosedChannelException());
+                }
+            }
+        }
+
+        /**
+         * Checks the registrations for closings of the underlying channels, in the thread of the timing
+         * wheel, so that the selector is only woken up when one is found. Each run checks a part of the
+         * registrations, continuing where the previous one stopped, so that all of them are checked
+         * within {@link #closingsSweepRounds} runs. The sweep is scheduled while operations are waiting,
+         * as these could otherwise wait forever.
+         */
+        private final class ClosingsSweep extends TimingWheel.Timeout {
+
+            /** Whether the sweep is scheduled or running. */
+            private final AtomicBoolean scheduled = new AtomicBoolean();
+
+            /** Position in the registrations, only used by the thread of the timing wheel. */
+            private Iterator<RegisteredSocket> position = Collections.emptyIterator();
+
+            void ensureScheduled() {
+                if (!scheduled.get() && scheduled.compareAndSet(false, true)) {
+                    timeouts.schedule(this, closingsPollMillis, TimeUnit.MILLISECONDS);
+                }
+            }
+
+            @Override
+            void expire() {
+                long startedAt = System.nanoTime();
+                sweep();
+                closingsCheckTime.record(System.nanoTime() - startedAt);
+                if (shutdown == Shutdown.No && hasWaitingOperations()) {
+                    timeouts.schedule(this, closingsPollMillis, TimeUnit.MILLISECONDS);
+                } else {
+                    scheduled.set(false);
+                    // an operation started in the meantime could have seen the sweep as scheduled
+                    if (shutdown == Shutdown.No && hasWaitingOperations()) {
+                        ensureScheduled();
+                    }
+                }
+            }
+
+            private void sweep() {
+                int batch = Math.max(
+                        closingsSweepBatch, (registrations.size() + closingsSweepRounds - 1) / closingsSweepRounds);
+                boolean restarted = false;
+                boolean found = false;
+                for (int i = 0; i < batch; i++) {
+                    if (!position.hasNext()) {
+                        if (restarted) {
+                            // fewer registrations than the batch, all checked
+                            break;
+                        }
+                        position = registrations.keySet().iterator();
+                        restarted = true;
+                        if (!position.hasNext()) {
+                            break;
+                        }
+                    }
+                    RegisteredSocket socket = position.next();
+                    if (!socket.key.isValid()) {
+                        closedSockets.add(socket);
+                        found = true;
+                    }
+                }
+                if (found) {
+                    selector.wakeup();
+                }
+            }
+        }
+
+        private boolean hasWaitingOperations() {
+            return currentReads.sum() + currentWrites.sum() > 0;
+        }
+
+        /**
+         * Channels whose underlying socket is closed directly are silently removed from selectors. This
+         * method will check them using the internal catalog and do the proper cleanup.
+         */
+        private void checkClosings() {
+            for (RegisteredSocket socket : registrations.keySet()) {
+                if (!socket.key.isValid() || shutdown == Shutdown.Immediate) {
+                    registrations.remove(socket);
+                    assignedSockets.decrementAndGet();
+                    releaseHandshakePermit(socket);
+                    failCurrentRead(socket, new ClosedChannelException());
+                    failCurrentWrite(socket, new ClosedChannelException());
+                }
+            }
+        }
+
+        /**
+         * Return the index of this shard in the group.
+         *
+         * @return the index, starting from 0
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        long getSelectionCount() {
+            return selectionCount.longValue();
+        }
+
+        /**
+         * Return the number of read operations that were started in this shard.
+         *
+         * @return number of operations
+         */
+        public long getStartedReadCount() {
+            return startedReads.longValue();
+        }
+
+        /**
+         * Return the number of write operations that were started in this shard.
+         *
+         * @return number of operations
+         */
+        public long getStartedWriteCount() {
+            return startedWrites.longValue();
+        }
+
+        /**
+         * Return the number of read operations that succeeded in this shard.
+         *
+         * @return number of operations
+         */
+        public long getSuccessfulReadCount() {
+            return successfulReads.longValue();
+        }
+
+        /**
+         * Return the number of write operations that succeeded in this shard.
+         *
+         * @return number of operations
+         */
+        public long getSuccessfulWriteCount() {
+            return successfulWrites.longValue();
+        }
+
+        /**
+         * Return the number of read operations that failed in this shard.
+         *
+         * @return number of operations
+         */
+        public long getFailedReadCount() {
+            return failedReads.longValue();
+        }
+
+        /**
+         * Return the number of write operations that failed in this shard.
+         *
+         * @return number of operations
+         */
+        public long getFailedWriteCount() {
+            return failedWrites.longValue();
+        }
+
+        /**
+         * Return the number of read operations that were cancelled in this shard.
+         *
+         * @return number of operations
+         */
+        public long getCancelledReadCount() {
+            return cancelledReads.longValue();
+        }
+
+        /**
+         * Return the number of write operations that were cancelled in this shard.
+         *
+         * @return number of operations
+         */
+        public long getCancelledWriteCount() {
+            return cancelledWrites.longValue();
+        }
+
+        /**
+         * Returns the current number of active read operations in this shard.
+         *
+         * @return number of operations
+         */
+        public long getCurrentReadCount() {
+            return currentReads.longValue();
+        }
+
+        /**
+         * Returns the current number of active write operations in this shard.
+         *
+         * @return number of operations
+         */
+        public long getCurrentWriteCount() {
+            return currentWrites.longValue();
+        }
+
+        /**
+         * Returns the current number of sockets registered in this shard.
+         *
+         * @return number of sockets
+         */
+        public long getCurrentRegistrationCount() {
+            return registrations.mappingCount();
+        }
+
+        /**
+         * Returns the current number of tasks of this shard (I/O attempts and completion handlers)
+         * that were submitted to the executors and have not started yet.
+         *
+         * @return number of tasks
+         */
+        public long getQueuedTaskCount() {
+            return queuedTasks.longValue();
+        }
+
+        /**
+         * Return a snapshot of the histogram, for this shard, of the latency of the read operations
+         * that succeeded, from the start of the operation until the completion is delivered.
+         *
+         * @return the snapshot, with times in nanoseconds
+         */
+        public LatencyHistogram.Snapshot getReadLatency() {
+            return readLatency.snapshot();
+        }
+
+        /**
+         * Return a snapshot of the histogram, for this shard, of the latency of the write
+         * operations that succeeded, from the start of the operation until the completion is
+         * delivered.
+         *
+         * @return the snapshot, with times in nanoseconds
+         */
+        public LatencyHistogram.Snapshot getWriteLatency() {
+            return writeLatency.snapshot();
+        }
+
+        /**
+         * Return a snapshot of the histogram, for this shard, of the time that I/O attempts waited
+         * in the executor, from the readiness of the socket until a thread took them.
+         *
+         * @return the snapshot, with times in nanoseconds
+         */
+        public LatencyHistogram.Snapshot getIoQueueWait() {
+            return ioQueueWait.snapshot();
+        }
+
+        /**
+         * Return a snapshot of the histogram, for this shard, of the time that completion handlers
+         * waited in the handler executor, before starting to run.
+         *
+         * @return the snapshot, with times in nanoseconds
+         */
+        public LatencyHistogram.Snapshot getHandlerQueueWait() {
+            return handlerQueueWait.snapshot();
+        }
+
+        /**
+         * Return a snapshot of the histogram, for this shard, of the execution time of completion
+         * handlers.
+         *
+         * @return the snapshot, with times in nanoseconds
+         */
+        public LatencyHistogram.Snapshot getHandlerTime() {
+            return handlerTime.snapshot();
+        }
+
+        /**
+         * Return a snapshot of the histogram, for this shard, of the time spent in the select call
+         * of each iteration of the selector loop, including the time blocked waiting for events.
+         *
+         * @return the snapshot, with times in nanoseconds
+         */
+        public LatencyHistogram.Snapshot getSelectTime() {
+            return selectTime.snapshot();
+        }
+
+        /**
+         * Return a snapshot of the histogram, for this shard, of the time spent processing the
+         * selected keys in each iteration of the selector loop, which includes the I/O when it runs
+         * inline.
+         *
+         * @return the snapshot, with times in nanoseconds
+         */
+        public LatencyHistogram.Snapshot getDispatchTime() {
+            return dispatchTime.snapshot();
+        }
+
+        /**
+         * Return a snapshot of the histogram, for this shard, of the time spent registering new
+         * sockets in each iteration of the selector loop.
+         *
+         * @return the snapshot, with times in nanoseconds
+         */
+        public LatencyHistogram.Snapshot getRegistrationTime() {
+            return registrationTime.snapshot();
+        }
+
+        /**
+         * Return a snapshot of the histogram, for this shard, of the time spent registering the
+         * pending interests of sockets in each iteration of the selector loop.
+         *
+         * @return the snapshot, with times in nanoseconds
+         */
+        public LatencyHistogram.Snapshot getInterestTime() {
+            return interestTime.snapshot();
+        }
+
+        /**
+         * Return a snapshot of the histogram, for this shard, of the time spent cleaning up closed
+         * sockets in each iteration of the selector loop.
+         *
+         * @return the snapshot, with times in nanoseconds
+         */
+        public LatencyHistogram.Snapshot getClosedSocketTime() {
+            return closedSocketTime.snapshot();
+        }
+
+        /**
+         * Return a snapshot of the histogram, for this shard, of the time spent checking sockets for
+         * closings of the underlying channels: each periodic sweep, which checks a part of them, and
+         * each check of all of them in the selector loop during shutdown.
+         *
+         * @return the snapshot, with times in nanoseconds
+         */
+        public LatencyHistogram.Snapshot getClosingsCheckTime() {
+            return closingsCheckTime.snapshot();
+        }
+
+        /**
+         * Returns whether the selector thread of this shard is alive (used for debugging).
+         *
+         * @return whether the selector thread is alive
+         */
+        public boolean isAlive() {
+            return selectorThread.isAlive();
+        }
+
+        @Override
+        public String toString() {
+            return "Shard{" + "index=" + index + ", registrations=" + registrations.mappingCount() + '}';
+        }
+    }
+
+    /** Builder of {@link AsynchronousTlsChannelGroup}. */
+    public static class Builder {
 
-    private final LongAdder startedReads = new LongAdder();
-    private final LongAdder startedWrites = new LongAdder();
-    private final LongAdder successfulReads = new LongAdder();
-    private final LongAdder successfulWrites = new LongAdder();
-    private final LongAdder failedReads = new LongAdder();
-    private final LongAdder failedWrites = new LongAdder();
-    private final LongAdder cancelledReads = new LongAdder();
-    private final LongAdder cancelledWrites = new LongAdder();
+        private int threadCount = Runtime.getRuntime().availableProcessors();
+        private int selectorCount = 1;
+        private boolean inlineIo = false;
+        private Optional<ExecutorService> executor = Optional.empty();
+        private Optional<ExecutorService> handlerExecutor = Optional.empty();
+        private int handshakeThreadCount =
+                Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        private Optional<HandshakeLimiter> handshakeLimiter = Optional.empty();
 
-    private final ConcurrentHashMap<RegisteredSocket, Boolean> registrations = new ConcurrentHashMap<>();
+        private Builder() {}
 
-    private final LongAdder currentReads = new LongAdder();
-    private final LongAdder currentWrites = new LongAdder();
+        /**
+         * Set the number of threads in the executor used to assist the selector loops and run
+         * completion handlers. The default is the number of available processors. Ignored if an
+         * executor is set with {@link #withExecutor(ExecutorService)}.
+         *
+         * @param threadCount number of threads
+         * @return this object
+         */
+        public Builder withThreadCount(int threadCount) {
+            if (threadCount <= 0) {
+                throw new IllegalArgumentException("thread count must be positive: " + threadCount);
+            }
+            this.threadCount = threadCount;
+            return this;
+        }
+
+        /**
+         * Set the number of selectors, each one running in its own thread, among which the sockets
+         * are distributed. The default is 1.
+         *
+         * @param selectorCount number of selectors
+         * @return this object
+         */
+        public Builder withSelectorCount(int selectorCount) {
+            if (selectorCount <= 0) {
+                throw new IllegalArgumentException("selector count must be positive: " + selectorCount);
+            }
+            this.selectorCount = selectorCount;
+            return this;
+        }
+
+        /**
+         * Whether the selector threads do the non-blocking reads and writes of ready sockets
+         * themselves, instead of handing them off to the executor. This reduces latency for small
+         * messages, at the cost of making the selector threads busier. Completion handlers always run
+         * in the executor (even when the default one is full, as selector threads queue their tasks
+         * beyond its bound), and delegated tasks in the handshake executor. Channels that run tasks
+         * themselves only get inline I/O after their first successful operation, so the initial
+         * handshake does not run in a selector thread. The default is false.
+         *
+         * @param inlineIo whether to run I/O in the selector threads
+         * @return this object
+         */
+        public Builder withInlineIo(boolean inlineIo) {
+            this.inlineIo = inlineIo;
+            return this;
+        }
+
+        /**
+         * Set the executor used to assist the selector loops with the I/O operations, and also to run
+         * completion handlers, unless a separate executor is set for them with {@link
+         * #withHandlerExecutor(ExecutorService)}. Any executor can be used, including a {@link
+         * ForkJoinPool} or one that starts a virtual thread per task. The group takes ownership of
+         * the executor, and shuts it down when terminating. The default is a fixed thread pool with a
+         * bounded queue, which runs tasks in the calling thread when full, unless it is a selector
+         * thread.
+         *
+         * <p>The executor should accept all tasks until it is shut down, either queueing them or
+         * running them in the calling thread. Rejected I/O tasks are done by the selector threads
+         * themselves, and rejected completion handlers run in the thread that completed the operation,
+         * or in a handshake thread if it was a selector thread; these fallbacks keep the group
+         * consistent, but not its latency.
+         *
+         * @param executor the executor
+         * @return this object
+         */
+        public Builder withExecutor(ExecutorService executor) {
+            this.executor = Optional.of(executor);
+            return this;
+        }
+
+        /**
+         * Set the executor used to run completion handlers. The group takes ownership of the
+         * executor, and shuts it down when terminating, after the I/O executor. The default is to use
+         * the same executor as for I/O. Like that one, it should accept all tasks until it is shut
+         * down; see {@link #withExecutor(ExecutorService)} for what happens to rejected ones.
+         *
+         * @param handlerExecutor the executor for completion handlers
+         * @return this object
+         */
+        public Builder withHandlerExecutor(ExecutorService handlerExecutor) {
+            this.handlerExecutor = Optional.of(handlerExecutor);
+            return this;
+        }
+
+        /**
+         * Set the maximum number of threads that run delegated tasks, which are thrown as {@link
+         * NeedsTaskException} by channels created with {@link
+         * tlschannel.TlsChannelBuilder#withRunTasks(boolean)} set to false. These tasks do the
+         * expensive cryptographic operations of handshakes, and run in a separate executor, with
+         * the socket re-armed in the selector when they finish; this way, a burst of new
+         * connections does not take over the threads that serve established ones. Channels that run
+         * tasks themselves do it in the I/O threads. The default is half the number of available
+         * processors.
+         *
+         * @param handshakeThreadCount maximum number of threads running delegated tasks
+         * @return this object
+         */
+        public Builder withHandshakeThreadCount(int handshakeThreadCount) {
+            if (handshakeThreadCount <= 0) {
+                throw new IllegalArgumentException(
+                        "handshake thread count must be positive: " + handshakeThreadCount);
+            }
+            this.handshakeThreadCount = handshakeThreadCount;
+            return this;
+        }
+
+        /**
+         * Set a {@link HandshakeLimiter} to bound the number of concurrent handshakes of the sockets
+         * of the group. New sockets wait for admission before any of their operations runs, and the
+         * operations of rejected sockets fail with an {@link javax.net.ssl.SSLHandshakeException}.
+         * A socket keeps its permit until its first operation completes, or until it is closed. By
+         * default, handshakes are not limited.
+         *
+         * <p>The limiter can also be shared with other groups, or with channels configured using
+         * {@link tlschannel.TlsChannelBuilder#withHandshakeLimiter(HandshakeLimiter)}; these must not
+         * be registered in a group with the same limiter.
+         *
+         * @param handshakeLimiter the handshake limiter
+         * @return this object
+         */
+        public Builder withHandshakeLimiter(HandshakeLimiter handshakeLimiter) {
+            this.handshakeLimiter = Optional.of(handshakeLimiter);
+            return this;
+        }
+
+        public AsynchronousTlsChannelGroup build() {
+            return new AsynchronousTlsChannelGroup(
+                    threadCount,
+                    executor,
+                    handlerExecutor,
+                    handshakeThreadCount,
+                    handshakeLimiter,
+                    selectorCount,
+                    inlineIo);
+        }
+    }
+
+    /**
+     * Create a new {@link Builder}.
+     *
+     * @return the new builder
+     */
+    public static Builder newBuilder() {
+        return new Builder();
+    }
 
     /**
      * Creates an instance of this class.
@@ -168,21 +1045,14 @@ public class AsynchronousTlsChannelGroup {
      *     completion handlers.
      */
     public AsynchronousTlsChannelGroup(int nThreads) {
-        try {
-            selector = Selector.open();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-        timeoutExecutor.setRemoveOnCancelPolicy(true);
-        this.executor = new ThreadPoolExecutor(
+        this(
                 nThreads,
-                nThreads,
-                0,
-                TimeUnit.MILLISECONDS,
-                new LinkedBlockingQueue<>(nThreads * queueLengthMultiplier),
-                runnable -> new Thread(runnable, String.format("async-channel-group-%d-handler-executor", id)),
-                new ThreadPoolExecutor.CallerRunsPolicy());
-        selectorThread.start();
+                Optional.empty(),
+                Optional.empty(),
+                Math.max(1, Runtime.getRuntime().availableProcessors() / 2),
+                Optional.empty(),
+                1,
+                false);
     }
 
     /** Creates an instance of this class, using as many threads as available processors. */
@@ -190,16 +1060,78 @@ public class AsynchronousTlsChannelGroup {
         this(Runtime.getRuntime().availableProcessors());
     }
 
+    private AsynchronousTlsChannelGroup(
+            int nThreads,
+            Optional<ExecutorService> executor,
+            Optional<ExecutorService> handlerExecutor,
+            int nHandshakeThreads,
+            Optional<HandshakeLimiter> handshakeLimiter,
+            int nSelectors,
+            boolean inlineIo) {
+        this.inlineIo = inlineIo;
+        this.handshakeLimiter = handshakeLimiter;
+        this.executor = executor.orElseGet(() -> new ThreadPoolExecutor(
+                nThreads,
+                nThreads,
+                0,
+                TimeUnit.MILLISECONDS,
+                new ExecutorQueue(nThreads * queueLengthMultiplier),
+                runnable -> new Thread(runnable, String.format("async-channel-group-%d-handler-executor", id)),
+                new ThreadPoolExecutor.CallerRunsPolicy()));
+        this.handlerExecutor = handlerExecutor.orElse(this.executor);
+        // threads are started on demand, and tasks queue up when all of them are busy
+        this.handshakeExecutor = new ThreadPoolExecutor(
+                nHandshakeThreads,
+                nHandshakeThreads,
+                0,
+                TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> new Thread(runnable, String.format("async-channel-group-%d-handshake-executor", id)));
+        List<Shard> shards = new ArrayList<>(nSelectors);
+        try {
+            for (int i = 0; i < nSelectors; i++) {
+                shards.add(new Shard(i));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        this.shards = Collections.unmodifiableList(shards);
+        this.liveShards = new AtomicInteger(nSelectors);
+        for (Shard shard : shards) {
+            shard.selectorThread.start();
+        }
+    }
+
     RegisteredSocket registerSocket(TlsChannel reader, SocketChannel socketChannel) {
         if (shutdown != Shutdown.No) {
             throw new ShutdownChannelGroupException();
         }
-        RegisteredSocket socket = new RegisteredSocket(reader, socketChannel);
-        pendingRegistrations.add(socket);
-        selector.wakeup();
+        Shard shard = leastLoadedShard();
+        RegisteredSocket socket = new RegisteredSocket(shard, reader, socketChannel);
+        socket.handshakePermit = handshakeLimiter.map(HandshakeLimiter::request).orElse(null);
+        shard.pendingRegistrations.add(socket);
+        shard.selector.wakeup();
         return socket;
     }
 
+    /**
+     * Choose the shard with fewer sockets, starting the search from a different one each time, so
+     * ties are resolved round-robin. The chosen shard is charged with the new socket.
+     */
+    private Shard leastLoadedShard() {
+        int size = shards.size();
+        int start = Math.floorMod(nextShard.getAndIncrement(), size);
+        Shard chosen = shards.get(start);
+        for (int i = 1; i < size; i++) {
+            Shard candidate = shards.get((start + i) % size);
+            if (candidate.assignedSockets.get() < chosen.assignedSockets.get()) {
+                chosen = candidate;
+            }
+        }
+        chosen.assignedSockets.incrementAndGet();
+        return chosen;
+    }
+
     boolean doCancelRead(RegisteredSocket socket, ReadOperation op) {
         socket.readLock.lock();
         try {
@@ -207,8 +1139,9 @@ public class AsynchronousTlsChannelGroup {
                 return false;
             }
             socket.readOperation = null;
-            cancelledReads.increment();
-            currentReads.decrement();
+            op.cancelTimeout();
+            socket.shard.cancelledReads.increment();
+            socket.shard.currentReads.decrement();
             return true;
         } finally {
             socket.readLock.unlock();
@@ -222,8 +1155,9 @@ public class AsynchronousTlsChannelGroup {
                 return false;
             }
             socket.writeOperation = null;
-            cancelledWrites.increment();
-            currentWrites.decrement();
+            op.cancelTimeout();
+            socket.shard.cancelledWrites.increment();
+            socket.shard.currentWrites.decrement();
             return true;
         } finally {
             socket.writeLock.unlock();
@@ -247,39 +1181,28 @@ public class AsynchronousTlsChannelGroup {
             if (socket.readOperation != null) {
                 throw new ReadPendingException();
             }
-            op = new ReadOperation(buffer, onSuccess, onFailure);
+            op = new ReadOperation(socket, buffer, onSuccess, onFailure);
 
-            startedReads.increment();
-            currentReads.increment();
+            socket.shard.startedReads.increment();
+            socket.shard.currentReads.increment();
 
-            if (!registrations.containsKey(socket)) {
+            if (!socket.shard.registrations.containsKey(socket)) {
                 op.onFailure.accept(new ClosedChannelException());
-                failedReads.increment();
-                currentReads.decrement();
+                socket.shard.failedReads.increment();
+                socket.shard.currentReads.decrement();
                 return op;
             }
 
-            /*
-             * we do not try to outsmart the TLS state machine and register for both IO operations for each new socket
-             * operation
-             */
-            socket.pendingOps.set(SelectionKey.OP_WRITE | SelectionKey.OP_READ);
+            socket.addPendingOps(initialOps(socket.tlsChannel.readInterestOps()));
+            socket.shard.closingsSweep.ensureScheduled();
             if (timeout != 0) {
-                op.timeoutFuture = timeoutExecutor.schedule(
-                        () -> {
-                            boolean success = doCancelRead(socket, op);
-                            if (success) {
-                                op.onFailure.accept(new InterruptedByTimeoutException());
-                            }
-                        },
-                        timeout,
-                        unit);
+                timeouts.schedule(op, timeout, unit);
             }
             socket.readOperation = op;
         } finally {
             socket.readLock.unlock();
         }
-        selector.wakeup();
+        socket.shard.selector.wakeup();
         return op;
     }
 
@@ -300,42 +1223,41 @@ public class AsynchronousTlsChannelGroup {
             if (socket.writeOperation != null) {
                 throw new WritePendingException();
             }
-            op = new WriteOperation(buffer, onSuccess, onFailure);
+            op = new WriteOperation(socket, buffer, onSuccess, onFailure);
 
-            startedWrites.increment();
-            currentWrites.increment();
+            socket.shard.startedWrites.increment();
+            socket.shard.currentWrites.increment();
 
-            if (!registrations.containsKey(socket)) {
+            if (!socket.shard.registrations.containsKey(socket)) {
                 op.onFailure.accept(new ClosedChannelException());
-                failedWrites.increment();
-                currentWrites.decrement();
+                socket.shard.failedWrites.increment();
+                socket.shard.currentWrites.decrement();
                 return op;
             }
 
-            /*
-             * we do not try to outsmart the TLS state machine and register for both IO operations for each new socket
-             * operation
-             */
-            socket.pendingOps.set(SelectionKey.OP_WRITE | SelectionKey.OP_READ);
+            socket.addPendingOps(initialOps(socket.tlsChannel.writeInterestOps()));
+            socket.shard.closingsSweep.ensureScheduled();
             if (timeout != 0) {
-                op.timeoutFuture = timeoutExecutor.schedule(
-                        () -> {
-                            boolean success = doCancelWrite(socket, op);
-                            if (success) {
-                                op.onFailure.accept(new InterruptedByTimeoutException());
-                            }
-                        },
-                        timeout,
-                        unit);
+                timeouts.schedule(op, timeout, unit);
             }
             socket.writeOperation = op;
         } finally {
             socket.writeLock.unlock();
         }
-        selector.wakeup();
+        socket.shard.selector.wakeup();
         return op;
     }
 
+    /**
+     * Return the operations to register for a new operation, given the readiness that the channel
+     * expects it to need. Registering only that readiness avoids a selection and an attempt for
+     * every new operation, as a connected socket is almost always ready for writing. Operations that
+     * need no readiness register for both, so they are attempted as soon as possible.
+     */
+    private static int initialOps(int interestOps) {
+        return interestOps == 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : interestOps;
+    }
+
     private void checkTerminated() {
         if (isTerminated()) {
             throw new ShutdownChannelGroupException();
@@ -351,100 +1273,221 @@ public class AsynchronousTlsChannelGroup {
         }
     }
 
-    private void loop() {
+    private void processWrite(RegisteredSocket socket) {
+        socket.writeLock.lock();
         try {
-            while (shutdown == Shutdown.No
-                    || shutdown == Shutdown.Wait && (!pendingRegistrations.isEmpty() || !registrations.isEmpty())) {
-                // most state-changing operations will wake the selector up, however, asynchronous closings
-                // of the channels won't, so we have to time out to allow checking those cases
-                int c = selector.select(100); // block
-                selectionCount.increment();
-                // avoid unnecessary creation of iterator object
-                if (c > 0) {
-                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
-                    while (it.hasNext()) {
-                        SelectionKey key = it.next();
-                        it.remove();
-                        try {
-                            key.interestOps(0);
-                        } catch (CancelledKeyException e) {
-                            // can happen when channels are closed with pending operations
-                            continue;
-                        }
-                        RegisteredSocket socket = (RegisteredSocket) key.attachment();
-                        processRead(socket);
-                        processWrite(socket);
-                    }
+            WriteOperation op = socket.writeOperation;
+            if (op != null) {
+                if (runsInline(socket)) {
+                    doWrite(socket, op);
+                } else {
+                    dispatchWrite(socket, op);
                 }
-                registerPendingSockets();
-                processPendingInterests();
-                checkClosings();
             }
-        } catch (Throwable e) {
-            logger.log(Level.SEVERE, "error in selector loop", e);
         } finally {
-            executor.shutdown();
-            // use shutdownNow to stop delayed tasks
-            timeoutExecutor.shutdownNow();
-            try {
-                selector.close();
-            } catch (IOException e) {
-                logger.log(Level.WARNING, "error closing selector: {0}", e.getMessage());
+            socket.writeLock.unlock();
+        }
+    }
+
+    private void processRead(RegisteredSocket socket) {
+        socket.readLock.lock();
+        try {
+            ReadOperation op = socket.readOperation;
+            if (op != null) {
+                if (runsInline(socket)) {
+                    doRead(socket, op);
+                } else {
+                    dispatchRead(socket, op);
+                }
             }
-            checkClosings();
+        } finally {
+            socket.readLock.unlock();
         }
     }
 
-    private void processPendingInterests() {
-        for (SelectionKey key : selector.keys()) {
-            RegisteredSocket socket = (RegisteredSocket) key.attachment();
-            int pending = socket.pendingOps.getAndSet(0);
-            if (pending != 0) {
+    private void dispatchWrite(RegisteredSocket socket, WriteOperation op) {
+        try {
+            execute(executor, socket.shard, socket.shard.ioQueueWait, () -> {
                 try {
-                    key.interestOps(key.interestOps() | pending);
-                } catch (CancelledKeyException e) {
-                    // can happen when channels are closed with pending operations
+                    doWrite(socket, op);
+                } catch (Throwable e) {
+                    logger.log(Level.SEVERE, "error in operation", e);
                 }
-            }
+            });
+        } catch (RejectedExecutionException e) {
+            // the selector thread does the I/O itself, as with inline I/O
+            doWrite(socket, op);
         }
     }
 
-    private void processWrite(RegisteredSocket socket) {
-        socket.writeLock.lock();
+    private void dispatchRead(RegisteredSocket socket, ReadOperation op) {
         try {
-            WriteOperation op = socket.writeOperation;
-            if (op != null) {
-                executor.execute(() -> {
-                    try {
-                        doWrite(socket, op);
-                    } catch (Throwable e) {
-                        logger.log(Level.SEVERE, "error in operation", e);
-                    }
-                });
+            execute(executor, socket.shard, socket.shard.ioQueueWait, () -> {
+                try {
+                    doRead(socket, op);
+                } catch (Throwable e) {
+                    logger.log(Level.SEVERE, "error in operation", e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the selector thread does the I/O itself, as with inline I/O
+            doRead(socket, op);
+        }
+    }
+
+    /**
+     * Run a completion handler of a socket in the handler executor, recording the time it waits and
+     * the time it takes. The operation is already complete, so a handler rejected by the executor
+     * still runs: in the current thread, or, if it is a selector thread, in the handshake executor,
+     * whose queue is unbounded.
+     */
+    void executeHandler(RegisteredSocket socket, Runnable handler) {
+        Runnable timedHandler = () -> {
+            long startedAt = System.nanoTime();
+            try {
+                handler.run();
+            } finally {
+                socket.shard.handlerTime.record(System.nanoTime() - startedAt);
+            }
+        };
+        try {
+            execute(handlerExecutor, socket.shard, socket.shard.handlerQueueWait, timedHandler);
+        } catch (RejectedExecutionException e) {
+            logger.log(Level.FINE, "completion handler rejected by the executor", e);
+            Runnable guardedHandler = () -> {
+                try {
+                    timedHandler.run();
+                } catch (Throwable e2) {
+                    logger.log(Level.SEVERE, "error in completion handler", e2);
+                }
+            };
+            if (inSelectorThread()) {
+                try {
+                    handshakeExecutor.execute(guardedHandler);
+                } catch (RejectedExecutionException e2) {
+                    // only after an immediate shutdown
+                    logger.log(Level.WARNING, "completion handler dropped, as the group is terminating", e2);
+                }
+            } else {
+                guardedHandler.run();
             }
-        } finally {
-            socket.writeLock.unlock();
         }
     }
 
-    private void processRead(RegisteredSocket socket) {
-        socket.readLock.lock();
+    /** Submit a task to an executor, counting it as queued, and recording its wait, until it starts. */
+    private static void execute(ExecutorService executor, Shard shard, LatencyHistogram queueWait, Runnable task) {
+        long submittedAt = System.nanoTime();
+        shard.queuedTasks.increment();
         try {
-            ReadOperation op = socket.readOperation;
-            if (op != null) {
-                executor.execute(() -> {
-                    try {
-                        doRead(socket, op);
-                    } catch (Throwable e) {
-                        logger.log(Level.SEVERE, "error in operation", e);
-                    }
-                });
+            executor.execute(() -> {
+                shard.queuedTasks.decrement();
+                queueWait.record(System.nanoTime() - submittedAt);
+                task.run();
+            });
+        } catch (RejectedExecutionException e) {
+            shard.queuedTasks.decrement();
+            throw e;
+        }
+    }
+
+    /**
+     * Run a delegated task in the handshake executor, and re-arm the socket in the selector when it
+     * finishes. Both operations are retried, as the task is done for the whole engine. A null task
+     * means that another operation already took it, and will re-arm the socket.
+     */
+    private void runHandshakeTask(RegisteredSocket socket, Runnable task) {
+        if (task == null) {
+            return;
+        }
+        handshakeExecutor.execute(() -> {
+            try {
+                task.run();
+            } catch (Throwable e) {
+                logger.log(Level.SEVERE, "error in handshake task", e);
             }
-        } finally {
-            socket.readLock.unlock();
+            socket.addPendingOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            socket.shard.selector.wakeup();
+        });
+    }
+
+    /**
+     * Rejects a queued handshake permit when its maximum queue time elapses. The rejection completes
+     * the admission, which re-arms the socket, so its operations fail.
+     */
+    private static final class QueueTimeout extends TimingWheel.Timeout {
+
+        private final HandshakeLimiter.Permit permit;
+
+        QueueTimeout(HandshakeLimiter.Permit permit) {
+            this.permit = permit;
+        }
+
+        @Override
+        void expire() {
+            permit.checkQueueTime();
+        }
+    }
+
+    /**
+     * Work queue of the default executor. It is bounded for all threads but the selector ones, so that
+     * other threads run their tasks themselves when the executor falls behind, while selector threads
+     * never run completion handlers nor block. What they queue is bounded by their operations anyway.
+     */
+    private final class ExecutorQueue extends LinkedBlockingQueue<Runnable> {
+
+        private final int bound;
+
+        ExecutorQueue(int bound) {
+            this.bound = bound;
+        }
+
+        @Override
+        public boolean offer(Runnable task) {
+            if (size() >= bound && !inSelectorThread()) {
+                return false;
+            }
+            return super.offer(task);
+        }
+    }
+
+    private boolean inSelectorThread() {
+        Thread current = Thread.currentThread();
+        for (Shard shard : shards) {
+            if (shard.selectorThread == current) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Re-arm the socket in the selector when the handshake is admitted or rejected. */
+    private static void rearmOnAdmission(RegisteredSocket socket, CompletableFuture<Void> admission) {
+        admission.whenComplete((result, e) -> {
+            socket.addPendingOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            socket.shard.selector.wakeup();
+        });
+    }
+
+    /**
+     * Release the handshake permit of a socket, if it has one. The first completed operation implies
+     * that the handshake is done.
+     */
+    private static void releaseHandshakePermit(RegisteredSocket socket) {
+        HandshakeLimiter.Permit permit = socket.handshakePermit;
+        if (permit != null && !permit.admission().isCompletedExceptionally()) {
+            permit.release();
+            socket.handshakePermit = null;
         }
     }
 
+    /**
+     * Whether to run the I/O of a socket in the selector thread. Channels that run tasks themselves
+     * would do it in the selector thread during the initial handshake, so they wait until it is done.
+     */
+    private boolean runsInline(RegisteredSocket socket) {
+        return inlineIo && (!socket.tlsChannel.getRunTasks() || socket.completedOperation);
+    }
+
     private void doWrite(RegisteredSocket socket, WriteOperation op) {
         socket.writeLock.lock();
         try {
@@ -454,65 +1497,54 @@ public class AsynchronousTlsChannelGroup {
             try {
                 long before = op.bufferSet.remaining();
                 try {
-                    writeHandlingTasks(socket, op);
+                    socket.tlsChannel.write(op.bufferSet.array, op.bufferSet.offset, op.bufferSet.length);
                 } finally {
                     long c = before - op.bufferSet.remaining();
                     Util.assertTrue(c >= 0);
                     op.consumesBytes += c;
                 }
                 socket.writeOperation = null;
-                if (op.timeoutFuture != null) {
-                    op.timeoutFuture.cancel(false);
-                }
+                socket.completedOperation = true;
+                releaseHandshakePermit(socket);
+                op.cancelTimeout();
+                socket.shard.writeLatency.record(System.nanoTime() - op.startedAt);
                 op.onSuccess.accept(op.consumesBytes);
-                successfulWrites.increment();
-                currentWrites.decrement();
+                socket.shard.successfulWrites.increment();
+                socket.shard.currentWrites.decrement();
             } catch (NeedsReadException e) {
-                socket.pendingOps.accumulateAndGet(SelectionKey.OP_READ, (a, b) -> a | b);
-                selector.wakeup();
+                socket.addPendingOps(SelectionKey.OP_READ);
+                socket.shard.selector.wakeup();
             } catch (NeedsWriteException e) {
-                socket.pendingOps.accumulateAndGet(SelectionKey.OP_WRITE, (a, b) -> a | b);
-                selector.wakeup();
+                socket.addPendingOps(SelectionKey.OP_WRITE);
+                socket.shard.selector.wakeup();
+            } catch (NeedsTaskException e) {
+                runHandshakeTask(socket, e.getTask());
+            } catch (NeedsAdmissionException e) {
+                rearmOnAdmission(socket, e.getAdmission());
             } catch (IOException e) {
                 socket.writeOperation = null;
-                if (op.timeoutFuture != null) {
-                    op.timeoutFuture.cancel(false);
-                }
+                op.cancelTimeout();
                 op.onFailure.accept(e);
-                failedWrites.increment();
-                currentWrites.decrement();
+                socket.shard.failedWrites.increment();
+                socket.shard.currentWrites.decrement();
+                socket.checkClosed();
+            } catch (RuntimeException | Error e) {
+                // a bug, either here or in the channel; fail the operation instead of leaving it waiting, and
+                // keep the selector loop alive when running inline
+                logger.log(Level.SEVERE, "error in write operation", e);
+                if (socket.writeOperation == op) {
+                    socket.writeOperation = null;
+                    op.cancelTimeout();
+                    op.onFailure.accept(e);
+                    socket.shard.failedWrites.increment();
+                    socket.shard.currentWrites.decrement();
+                }
             }
         } finally {
             socket.writeLock.unlock();
         }
     }
 
-    /**
-     * Intended use of the channel group is with sockets that run tasks internally, but out of
-     * tolerance, run tasks in thread in case the socket does not.
-     */
-    private void writeHandlingTasks(RegisteredSocket socket, WriteOperation op) throws IOException {
-        while (true) {
-            try {
-                socket.tlsChannel.write(op.bufferSet.array, op.bufferSet.offset, op.bufferSet.length);
-                return;
-            } catch (NeedsTaskException e) {
-                warnAboutNeedTask();
-                e.getTask().run();
-            }
-        }
-    }
-
-    private void warnAboutNeedTask() {
-        if (!loggedTaskWarning.getAndSet(true)) {
-            logger.log(
-                    Level.WARNING,
-                    "caught {0}; channels used in asynchronous groups should run tasks themselves; "
-                            + "although task is being dealt with anyway, consider configuring channels properly",
-                    NeedsTaskException.class.getName());
-        }
-    }
-
     private void doRead(RegisteredSocket socket, ReadOperation op) {
         socket.readLock.lock();
         try {
@@ -521,107 +1553,74 @@ public class AsynchronousTlsChannelGroup {
             }
             try {
                 Util.assertTrue(op.bufferSet.hasRemaining());
-                long c = readHandlingTasks(socket, op);
+                long c = socket.tlsChannel.read(op.bufferSet.array, op.bufferSet.offset, op.bufferSet.length);
                 Util.assertTrue(c > 0 || c == -1);
                 socket.readOperation = null;
-                if (op.timeoutFuture != null) {
-                    op.timeoutFuture.cancel(false);
-                }
+                socket.completedOperation = true;
+                releaseHandshakePermit(socket);
+                op.cancelTimeout();
+                socket.shard.readLatency.record(System.nanoTime() - op.startedAt);
                 op.onSuccess.accept(c);
-                successfulReads.increment();
-                currentReads.decrement();
+                socket.shard.successfulReads.increment();
+                socket.shard.currentReads.decrement();
             } catch (NeedsReadException e) {
-                socket.pendingOps.accumulateAndGet(SelectionKey.OP_READ, (a, b) -> a | b);
-                selector.wakeup();
+                socket.addPendingOps(SelectionKey.OP_READ);
+                socket.shard.selector.wakeup();
             } catch (NeedsWriteException e) {
-                socket.pendingOps.accumulateAndGet(SelectionKey.OP_WRITE, (a, b) -> a | b);
-                selector.wakeup();
+                socket.addPendingOps(SelectionKey.OP_WRITE);
+                socket.shard.selector.wakeup();
+            } catch (NeedsTaskException e) {
+                runHandshakeTask(socket, e.getTask());
+            } catch (NeedsAdmissionException e) {
+                rearmOnAdmission(socket, e.getAdmission());
             } catch (IOException e) {
                 socket.readOperation = null;
-                if (op.timeoutFuture != null) {
-                    op.timeoutFuture.cancel(false);
-                }
+                op.cancelTimeout();
                 op.onFailure.accept(e);
-                failedReads.increment();
-                currentReads.decrement();
+                socket.shard.failedReads.increment();
+                socket.shard.currentReads.decrement();
+                socket.checkClosed();
+            } catch (RuntimeException | Error e) {
+                // a bug, either here or in the channel; fail the operation instead of leaving it waiting, and
+                // keep the selector loop alive when running inline
+                logger.log(Level.SEVERE, "error in read operation", e);
+                if (socket.readOperation == op) {
+                    socket.readOperation = null;
+                    op.cancelTimeout();
+                    op.onFailure.accept(e);
+                    socket.shard.failedReads.increment();
+                    socket.shard.currentReads.decrement();
+                }
             }
         } finally {
             socket.readLock.unlock();
         }
     }
 
-    /**
-     * @see #writeHandlingTasks
-     */
-    private long readHandlingTasks(RegisteredSocket socket, ReadOperation op) throws IOException {
-        while (true) {
-            try {
-                return socket.tlsChannel.read(op.bufferSet.array, op.bufferSet.offset, op.bufferSet.length);
-            } catch (NeedsTaskException e) {
-                warnAboutNeedTask();
-                e.getTask().run();
-            }
-        }
-    }
-
-    private void registerPendingSockets() {
-        RegisteredSocket socket;
-        while ((socket = pendingRegistrations.poll()) != null) {
-            try {
-                socket.key = socket.socketChannel.register(selector, 0, socket);
-                registrations.put(socket, true);
-            } catch (ClosedChannelException e) {
-                // can happen when channels are closed right after creation
-            } finally {
-                // decrement the count of the latch even in case of exceptions, so the waiting thread
-                // is unlocked; it will have to check the result, though
-                socket.registered.countDown();
-            }
-        }
-    }
-
-    /**
-     * Channels that are closed asynchronously are silently removed from selectors. This method will
-     * check them using the internal catalog and do the proper cleanup.
-     */
-    private void checkClosings() {
-        for (RegisteredSocket socket : registrations.keySet()) {
-            if (!socket.key.isValid() || shutdown == Shutdown.Immediate) {
-                registrations.remove(socket);
-                failCurrentRead(socket);
-                failCurrentWrite(socket);
-            }
-        }
-    }
-
-    private void failCurrentRead(RegisteredSocket socket) {
+    private void failCurrentRead(RegisteredSocket socket, Throwable cause) {
         socket.readLock.lock();
         try {
             if (socket.readOperation != null) {
-                socket.readOperation.onFailure.accept(new ClosedChannelException());
-                if (socket.readOperation.timeoutFuture != null) {
-                    socket.readOperation.timeoutFuture.cancel(false);
-                }
+                socket.readOperation.onFailure.accept(cause);
+                socket.readOperation.cancelTimeout();
                 socket.readOperation = null;
-                failedReads.increment();
-                currentReads.decrement();
+                socket.shard.failedReads.increment();
+                socket.shard.currentReads.decrement();
             }
         } finally {
             socket.readLock.unlock();
         }
     }
 
-    private void failCurrentWrite(RegisteredSocket socket) {
+    private void failCurrentWrite(RegisteredSocket socket, Throwable cause) {
         socket.writeLock.lock();
         try {
             if (socket.writeOperation != null) {
-                socket.writeOperation.onFailure.accept(new ClosedChannelException());
-                if (socket.writeOperation.timeoutFuture != null) {
-                    socket.writeOperation.timeoutFuture.cancel(false);
-                }
+                socket.writeOperation.onFailure.accept(cause);
+                socket.writeOperation.cancelTimeout();
                 socket.writeOperation = null;
-                failedWrites.increment();
-                currentWrites.decrement();
+                socket.shard.failedWrites.increment();
+                socket.shard.currentWrites.decrement();
             }
         } finally {
             socket.writeLock.unlock();
@@ -644,7 +1643,7 @@ public class AsynchronousTlsChannelGroup {
      */
     public void shutdown() {
         shutdown = Shutdown.Wait;
-        selector.wakeup();
+        wakeupAll();
     }
 
     /**
@@ -653,7 +1652,7 @@ public class AsynchronousTlsChannelGroup {
      */
     public void shutdownNow() {
         shutdown = Shutdown.Immediate;
-        selector.wakeup();
+        wakeupAll();
     }
 
     /**
@@ -662,7 +1661,7 @@ public class AsynchronousTlsChannelGroup {
      * @return whether the channel is terminated
      */
     public boolean isTerminated() {
-        return executor.isTerminated();
+        return executor.isTerminated() && handlerExecutor.isTerminated() && handshakeExecutor.isTerminated();
     }
 
     /**
@@ -677,11 +1676,19 @@ public class AsynchronousTlsChannelGroup {
      * @throws InterruptedException if interrupted while waiting
      */
     public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
-        return executor.awaitTermination(timeout, unit);
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        if (!executor.awaitTermination(timeout, unit)) {
+            return false;
+        }
+        if (!handlerExecutor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+            return false;
+        }
+        // delegated tasks can still be running, as they are not waited for when shutting down
+        return handshakeExecutor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
     }
 
     long getSelectionCount() {
-        return selectionCount.longValue();
+        return sum(Shard::getSelectionCount);
     }
 
     /**
@@ -690,7 +1697,7 @@ public class AsynchronousTlsChannelGroup {
      * @return number of operations
      */
     public long getStartedReadCount() {
-        return startedReads.longValue();
+        return sum(shard -> shard.startedReads.longValue());
     }
 
     /**
@@ -699,7 +1706,7 @@ public class AsynchronousTlsChannelGroup {
      * @return number of operations
      */
     public long getStartedWriteCount() {
-        return startedWrites.longValue();
+        return sum(shard -> shard.startedWrites.longValue());
     }
 
     /**
@@ -708,7 +1715,7 @@ public class AsynchronousTlsChannelGroup {
      * @return number of operations
      */
     public long getSuccessfulReadCount() {
-        return successfulReads.longValue();
+        return sum(shard -> shard.successfulReads.longValue());
     }
 
     /**
@@ -717,7 +1724,7 @@ public class AsynchronousTlsChannelGroup {
      * @return number of operations
      */
     public long getSuccessfulWriteCount() {
-        return successfulWrites.longValue();
+        return sum(shard -> shard.successfulWrites.longValue());
     }
 
     /**
@@ -726,7 +1733,7 @@ public class AsynchronousTlsChannelGroup {
      * @return number of operations
      */
     public long getFailedReadCount() {
-        return failedReads.longValue();
+        return sum(shard -> shard.failedReads.longValue());
     }
 
     /**
@@ -735,7 +1742,7 @@ public class AsynchronousTlsChannelGroup {
      * @return number of operations
      */
     public long getFailedWriteCount() {
-        return failedWrites.longValue();
+        return sum(shard -> shard.failedWrites.longValue());
     }
 
     /**
@@ -744,7 +1751,7 @@ public class AsynchronousTlsChannelGroup {
      * @return number of operations
      */
     public long getCancelledReadCount() {
-        return cancelledReads.longValue();
+        return sum(shard -> shard.cancelledReads.longValue());
     }
 
     /**
@@ -753,7 +1760,7 @@ public class AsynchronousTlsChannelGroup {
      * @return number of operations
      */
     public long getCancelledWriteCount() {
-        return cancelledWrites.longValue();
+        return sum(shard -> shard.cancelledWrites.longValue());
     }
 
     /**
@@ -762,7 +1769,7 @@ public class AsynchronousTlsChannelGroup {
      * @return number of operations
      */
     public long getCurrentReadCount() {
-        return currentReads.longValue();
+        return sum(shard -> shard.currentReads.longValue());
     }
 
     /**
@@ -771,7 +1778,7 @@ public class AsynchronousTlsChannelGroup {
      * @return number of operations
      */
     public long getCurrentWriteCount() {
-        return currentWrites.longValue();
+        return sum(shard -> shard.currentWrites.longValue());
     }
 
     /**
@@ -780,15 +1787,171 @@ public class AsynchronousTlsChannelGroup {
      * @return number of sockets
      */
     public long getCurrentRegistrationCount() {
-        return registrations.mappingCount();
+        return sum(shard -> shard.registrations.mappingCount());
+    }
+
+    /**
+     * Returns the current number of tasks (I/O attempts and completion handlers) that were submitted
+     * to the executors and have not started yet.
+     *
+     * @return number of tasks
+     */
+    public long getQueuedTaskCount() {
+        return sum(shard -> shard.queuedTasks.longValue());
+    }
+
+    /**
+     * Return a snapshot of the histogram of the latency of the read operations that succeeded, from
+     * the start of the operation until the completion is delivered.
+     *
+     * @return the snapshot, with times in nanoseconds
+     */
+    public LatencyHistogram.Snapshot getReadLatency() {
+        return merge(shard -> shard.readLatency);
+    }
+
+    /**
+     * Return a snapshot of the histogram of the latency of the write operations that succeeded,
+     * from the start of the operation until the completion is delivered.
+     *
+     * @return the snapshot, with times in nanoseconds
+     */
+    public LatencyHistogram.Snapshot getWriteLatency() {
+        return merge(shard -> shard.writeLatency);
+    }
+
+    /**
+     * Return a snapshot of the histogram of the time that I/O attempts waited in the executor, from
+     * the readiness of the socket until a thread took them.
+     *
+     * @return the snapshot, with times in nanoseconds
+     */
+    public LatencyHistogram.Snapshot getIoQueueWait() {
+        return merge(shard -> shard.ioQueueWait);
+    }
+
+    /**
+     * Return a snapshot of the histogram of the time that completion handlers waited in the handler
+     * executor, before starting to run.
+     *
+     * @return the snapshot, with times in nanoseconds
+     */
+    public LatencyHistogram.Snapshot getHandlerQueueWait() {
+        return merge(shard -> shard.handlerQueueWait);
+    }
+
+    /**
+     * Return a snapshot of the histogram of the execution time of completion handlers.
+     *
+     * @return the snapshot, with times in nanoseconds
+     */
+    public LatencyHistogram.Snapshot getHandlerTime() {
+        return merge(shard -> shard.handlerTime);
+    }
+
+    /**
+     * Return a snapshot of the histogram of the time spent in the select call of each iteration of
+     * the selector loop, including the time blocked waiting for events.
+     *
+     * @return the snapshot, with times in nanoseconds
+     */
+    public LatencyHistogram.Snapshot getSelectTime() {
+        return merge(shard -> shard.selectTime);
+    }
+
+    /**
+     * Return a snapshot of the histogram of the time spent processing the selected keys in each
+     * iteration of the selector loop, which includes the I/O when it runs inline.
+     *
+     * @return the snapshot, with times in nanoseconds
+     */
+    public LatencyHistogram.Snapshot getDispatchTime() {
+        return merge(shard -> shard.dispatchTime);
+    }
+
+    /**
+     * Return a snapshot of the histogram of the time spent registering new sockets in each
+     * iteration of the selector loop.
+     *
+     * @return the snapshot, with times in nanoseconds
+     */
+    public LatencyHistogram.Snapshot getRegistrationTime() {
+        return merge(shard -> shard.registrationTime);
     }
 
     /**
-     * Returns whether the selector thread is alive (used for debugging).
+     * Return a snapshot of the histogram of the time spent registering the pending interests of
+     * sockets in each iteration of the selector loop.
      *
-     * @return whether the selector thread is alive
+     * @return the snapshot, with times in nanoseconds
+     */
+    public LatencyHistogram.Snapshot getInterestTime() {
+        return merge(shard -> shard.interestTime);
+    }
+
+    /**
+     * Return a snapshot of the histogram of the time spent cleaning up closed sockets in each
+     * iteration of the selector loop.
+     *
+     * @return the snapshot, with times in nanoseconds
+     */
+    public LatencyHistogram.Snapshot getClosedSocketTime() {
+        return merge(shard -> shard.closedSocketTime);
+    }
+
+    /**
+     * Return a snapshot of the histogram of the time spent checking sockets for closings of the
+     * underlying channels: each periodic sweep, which checks a part of them, and each check of all of
+     * them in the selector loop during shutdown.
+     *
+     * @return the snapshot, with times in nanoseconds
+     */
+    public LatencyHistogram.Snapshot getClosingsCheckTime() {
+        return merge(shard -> shard.closingsCheckTime);
+    }
+
+    /**
+     * Returns whether all the selector threads are alive (used for debugging).
+     *
+     * @return whether the selector threads are alive
      */
     public boolean isAlive() {
-        return selectorThread.isAlive();
+        for (Shard shard : shards) {
+            if (!shard.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the shards of this group, whose counters add up to the ones of the group.
+     *
+     * @return an unmodifiable list of shards
+     */
+    public List<Shard> getShards() {
+        return shards;
+    }
+
+    private long sum(ToLongFunction<Shard> counter) {
+        long sum = 0;
+        for (Shard shard : shards) {
+            sum += counter.applyAsLong(shard);
+        }
+        return sum;
+    }
+
+    private LatencyHistogram.Snapshot merge(Function<Shard, LatencyHistogram> histogram) {
+        LatencyHistogram.Snapshot merged = LatencyHistogram.Snapshot.empty;
+        for (Shard shard : shards) {
+            merged = merged.merge(histogram.apply(shard).snapshot());
+        }
+        return merged;
+    }
+
+    private void wakeupAll() {
+        for (Shard shard : shards) {
+            shard.selector.wakeup();
+        }
     }
 }
@@ -0,0 +1,187 @@
+package tlschannel.async;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A log-linear histogram of durations, in nanoseconds. Each power of two is divided in a fixed
+ * number of linear sub-buckets, so values are recorded with a relative error of at most 12.5%,
+ * across the whole range of {@code long}, in a small, fixed amount of memory.
+ *
+ * <p>Recording is lock-free and does not allocate, so it can be done in the selector loops and in
+ * every operation. Histograms are only read through {@link Snapshot}s, which are immutable. A
+ * snapshot taken while values are being recorded can miss some of them, but it is otherwise
+ * consistent.
+ */
+public final class LatencyHistogram {
+
+    /** Number of bits of the sub-bucket index: 8 sub-buckets per power of two. */
+    private static final int subBucketBits = 3;
+
+    private static final int subBucketCount = 1 << subBucketBits;
+
+    /**
+     * Values below the sub-bucket count have a bucket each; the rest, a row of sub-buckets for each
+     * of the remaining powers of two.
+     */
+    private static final int bucketCount = (64 - subBucketBits) * subBucketCount;
+
+    private final AtomicLongArray counts = new AtomicLongArray(bucketCount);
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    LatencyHistogram() {}
+
+    /**
+     * Record a duration. Negative values, which can only come from clock anomalies, are recorded as
+     * zero.
+     *
+     * @param nanos the duration, in nanoseconds
+     */
+    void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts.getAndIncrement(bucketIndex(value));
+        total.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Take a snapshot of the values recorded so far.
+     *
+     * @return the snapshot
+     */
+    Snapshot snapshot() {
+        long[] copy = new long[bucketCount];
+        long count = 0;
+        for (int i = 0; i < bucketCount; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        return new Snapshot(copy, count, total.sum(), max.get());
+    }
+
+    static int bucketIndex(long value) {
+        if (value < subBucketCount) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - subBucketBits;
+        int subBucket = (int) (value >>> shift) & (subBucketCount - 1);
+        return (shift + 1) * subBucketCount + subBucket;
+    }
+
+    /** Highest value that falls in a bucket. */
+    static long bucketUpperBound(int index) {
+        if (index < subBucketCount) {
+            return index;
+        }
+        int shift = index / subBucketCount - 1;
+        long lower = (long) (subBucketCount + index % subBucketCount) << shift;
+        return lower + ((1L << shift) - 1);
+    }
+
+    /** An immutable view of the values recorded by a histogram. */
+    public static final class Snapshot {
+
+        /** A snapshot with no values. */
+        public static final Snapshot empty = new Snapshot(new long[bucketCount], 0, 0, 0);
+
+        private final long[] counts;
+        private final long count;
+        private final long total;
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long total, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.total = total;
+            this.max = max;
+        }
+
+        /**
+         * Return the number of recorded values.
+         *
+         * @return number of values
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Return the sum of the recorded values.
+         *
+         * @return time, in nanoseconds
+         */
+        public long getTotalNanos() {
+            return total;
+        }
+
+        /**
+         * Return the mean of the recorded values, or 0 if there are none.
+         *
+         * @return time, in nanoseconds
+         */
+        public double getMeanNanos() {
+            return count == 0 ? 0 : (double) total / count;
+        }
+
+        /**
+         * Return the highest recorded value, which is exact.
+         *
+         * @return time, in nanoseconds
+         */
+        public long getMaxNanos() {
+            return max;
+        }
+
+        /**
+         * Return the value below which the given fraction of the recorded values fall. The result is
+         * the upper bound of the bucket that holds the value, so it can be up to 12.5% higher than
+         * the actual one, but never higher than the maximum.
+         *
+         * @param quantile the fraction of values, between 0 and 1; for example, 0.99 for the 99th
+         *     percentile
+         * @return time, in nanoseconds, or 0 if there are no values
+         */
+        public long getValueAtQuantile(double quantile) {
+            if (quantile < 0 || quantile > 1) {
+                throw new IllegalArgumentException("quantile must be between 0 and 1: " + quantile);
+            }
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(bucketUpperBound(i), max);
+                }
+            }
+            return max;
+        }
+
+        /**
+         * Return a snapshot with the values of this one and another, as if they had been recorded
+         * in the same histogram.
+         *
+         * @param other the other snapshot
+         * @return the combined snapshot
+         */
+        public Snapshot merge(Snapshot other) {
+            long[] merged = new long[bucketCount];
+            for (int i = 0; i < bucketCount; i++) {
+                merged[i] = counts[i] + other.counts[i];
+            }
+            return new Snapshot(merged, count + other.count, total + other.total, Math.max(max, other.max));
+        }
+
+        @Override
+        public String toString() {
+            return "Snapshot{" + "count=" + count + ", mean=" + (long) getMeanNanos() + ", p50="
+                    + getValueAtQuantile(0.5) + ", p99=" + getValueAtQuantile(0.99) + ", p999="
+                    + getValueAtQuantile(0.999) + ", max=" + max + '}';
+        }
+    }
+}
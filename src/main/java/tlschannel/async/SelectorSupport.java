@@ -0,0 +1,38 @@
+package tlschannel.async;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.function.Consumer;
+
+/**
+ * Selection of ready keys. This is the Java 8 version, which goes through the selected-key set;
+ * newer JVMs use a version that passes the keys directly to the action.
+ */
+class SelectorSupport {
+
+    private SelectorSupport() {}
+
+    /**
+     * Select the keys that are ready for I/O operations, and perform an action for each of them.
+     *
+     * @param selector the selector
+     * @param action the action to perform on each ready key
+     * @param timeout maximum time to block, in milliseconds, or 0 to block indefinitely
+     * @return the number of keys processed
+     */
+    static int select(Selector selector, Consumer<SelectionKey> action, long timeout) throws IOException {
+        int c = selector.select(timeout); // block
+        // avoid unnecessary creation of iterator object
+        if (c > 0) {
+            Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+            while (it.hasNext()) {
+                SelectionKey key = it.next();
+                it.remove();
+                action.accept(key);
+            }
+        }
+        return c;
+    }
+}
@@ -0,0 +1,260 @@
+package tlschannel.async;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A hashed timing wheel, used for the timeouts of asynchronous operations.
+ *
+ * <p>Time is divided in ticks, and timeouts are kept in a circular array of buckets, indexed by
+ * the tick in which they are due. Scheduling and cancelling are constant-time operations, which
+ * only lock the affected bucket, and do not allocate: the timeouts are themselves the nodes of the
+ * bucket lists. A single thread advances the wheel, expiring the due timeouts; timeouts that are
+ * more than a full turn away are visited once per turn without expiring. Timeouts can fire up to
+ * one tick late, but never early.
+ *
+ * <p>The thread is started when the first timeout is scheduled, and sleeps while there are no
+ * scheduled timeouts.
+ */
+class TimingWheel {
+
+    private static final Logger logger = Logger.getLogger(TimingWheel.class.getName());
+
+    /** An entry of the wheel, to be extended with the action to perform when the time is due. */
+    abstract static class Timeout {
+
+        /** Bucket where this timeout is scheduled, or null if not scheduled. */
+        private volatile Bucket bucket;
+
+        // guarded by the bucket
+        private Timeout prev;
+        private Timeout next;
+        private long tick;
+
+        /** Called by the thread of the wheel when the time is due, unless cancelled before. */
+        abstract void expire();
+
+        /**
+         * Remove this timeout from the wheel, if it is scheduled.
+         *
+         * @return whether the timeout was cancelled; false if it already expired or was not scheduled
+         */
+        boolean cancelTimeout() {
+            Bucket b = bucket;
+            if (b == null) {
+                return false;
+            }
+            synchronized (b) {
+                if (bucket != b) {
+                    // expired concurrently
+                    return false;
+                }
+                b.remove(this);
+            }
+            b.wheel.pending.decrementAndGet();
+            return true;
+        }
+    }
+
+    private static final class Bucket {
+        final TimingWheel wheel;
+
+        // guarded by this
+        Timeout head;
+        long lastTick = -1;
+
+        Bucket(TimingWheel wheel) {
+            this.wheel = wheel;
+        }
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            timeout.prev = null;
+            timeout.next = head;
+            if (head != null) {
+                head.prev = timeout;
+            }
+            head = timeout;
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.prev == null) {
+                head = timeout.next;
+            } else {
+                timeout.prev.next = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+
+    /** Delays are capped to this value, to avoid overflows; about 73 years. */
+    private static final long maxDelayNanos = Long.MAX_VALUE / 4;
+
+    private final ThreadFactory threadFactory;
+    private final long tickNanos;
+    private final Bucket[] buckets;
+    private final int mask;
+    private final long startNanos = System.nanoTime();
+
+    /** Number of scheduled timeouts, used to let the thread sleep when there are none. */
+    private final AtomicLong pending = new AtomicLong();
+
+    private volatile Thread thread;
+    private volatile boolean stopped = false;
+
+    /**
+     * Creates a wheel.
+     *
+     * @param threadFactory factory for the thread that advances the wheel
+     * @param tickDuration duration of each tick
+     * @param unit unit of the tick duration
+     * @param wheelSize number of buckets, rounded up to a power of two
+     */
+    TimingWheel(ThreadFactory threadFactory, long tickDuration, TimeUnit unit, int wheelSize) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("tick duration must be positive: " + tickDuration);
+        }
+        if (wheelSize <= 0 || wheelSize > 1 << 30) {
+            throw new IllegalArgumentException("invalid wheel size: " + wheelSize);
+        }
+        this.threadFactory = threadFactory;
+        this.tickNanos = unit.toNanos(tickDuration);
+        int size = Integer.highestOneBit(wheelSize - 1) << 1;
+        if (wheelSize == 1) {
+            size = 1;
+        }
+        this.buckets = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new Bucket(this);
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Schedule a timeout, which must not be already scheduled. Timeouts scheduled after the wheel is
+     * stopped never expire.
+     *
+     * @param timeout the timeout
+     * @param delay the time from now after which the timeout expires
+     * @param unit the unit of the delay
+     */
+    void schedule(Timeout timeout, long delay, TimeUnit unit) {
+        long deadline = System.nanoTime() + Math.min(Math.max(unit.toNanos(delay), 0), maxDelayNanos);
+        // round up, so timeouts never expire early
+        long tick = Math.max((deadline - startNanos + tickNanos - 1) / tickNanos, 0);
+        // count before adding, so the count can never be negative
+        long previousPending = pending.getAndIncrement();
+        while (true) {
+            Bucket b = buckets[(int) (tick & mask)];
+            synchronized (b) {
+                if (b.lastTick < tick) {
+                    timeout.tick = tick;
+                    b.add(timeout);
+                    break;
+                }
+            }
+            // the tick was already processed (the wheel thread is ahead), use the next one
+            tick++;
+        }
+        if (previousPending == 0) {
+            // the thread can be sleeping indefinitely
+            LockSupport.unpark(ensureStarted());
+        }
+    }
+
+    private Thread ensureStarted() {
+        Thread t = thread;
+        if (t == null) {
+            synchronized (this) {
+                t = thread;
+                if (t == null) {
+                    t = threadFactory.newThread(this::run);
+                    thread = t;
+                    t.start();
+                }
+            }
+        }
+        return t;
+    }
+
+    /** Stop the thread of the wheel. Scheduled timeouts will never expire. */
+    void stop() {
+        stopped = true;
+        Thread t = thread;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    private void run() {
+        long processedTick = -1;
+        while (!stopped) {
+            if (pending.get() == 0) {
+                // a new timeout will unpark the thread
+                LockSupport.park(this);
+                continue;
+            }
+            long now = System.nanoTime();
+            long currentTick = (now - startNanos) / tickNanos;
+            if (currentTick <= processedTick) {
+                LockSupport.parkNanos(this, startNanos + (processedTick + 1) * tickNanos - now);
+                continue;
+            }
+            // after a long sleep, visiting each bucket once is enough
+            for (long tick = Math.max(processedTick + 1, currentTick - buckets.length + 1);
+                    tick <= currentTick;
+                    tick++) {
+                expireTick(tick);
+            }
+            processedTick = currentTick;
+        }
+    }
+
+    private void expireTick(long tick) {
+        Bucket b = buckets[(int) (tick & mask)];
+        Timeout expired = null;
+        synchronized (b) {
+            b.lastTick = tick;
+            Timeout timeout = b.head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.tick <= tick) {
+                    b.remove(timeout);
+                    // reuse the link to build the list of expired timeouts
+                    timeout.next = expired;
+                    expired = timeout;
+                }
+                timeout = next;
+            }
+        }
+        while (expired != null) {
+            Timeout next = expired.next;
+            expired.next = null;
+            pending.decrementAndGet();
+            try {
+                expired.expire();
+            } catch (Throwable e) {
+                logger.log(Level.SEVERE, "error expiring timeout", e);
+            }
+            expired = next;
+        }
+    }
+
+    /**
+     * Return the number of scheduled timeouts.
+     *
+     * @return number of timeouts
+     */
+    long pendingCount() {
+        return pending.get();
+    }
+}
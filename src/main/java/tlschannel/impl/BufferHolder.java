@@ -1,10 +1,13 @@
 package tlschannel.impl;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Optional;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import tlschannel.BufferAllocator;
+import tlschannel.BufferSizeAdvisor;
+import tlschannel.ScrubbingPolicy;
 
 public class BufferHolder {
 
@@ -14,12 +17,18 @@ public class BufferHolder {
     public final String name;
     public final BufferAllocator allocator;
     public final boolean plainData;
+    public final ScrubbingPolicy scrubbing;
     public final int maxSize;
     public final boolean opportunisticDispose;
+    public final Optional<BufferSizeAdvisor> sizeAdvisor;
+    public final BufferSizeAdvisor.Role role;
 
     public ByteBuffer buffer;
     public int lastSize;
 
+    /** Maximum number of bytes that this holder needed to hold, reported to the size advisor. */
+    private int highWaterMark;
+
     public BufferHolder(
             String name,
             Optional<ByteBuffer> buffer,
@@ -27,14 +36,23 @@ public class BufferHolder {
             int initialSize,
             int maxSize,
             boolean plainData,
-            boolean opportunisticDispose) {
+            ScrubbingPolicy scrubbing,
+            boolean opportunisticDispose,
+            Optional<BufferSizeAdvisor> sizeAdvisor,
+            BufferSizeAdvisor.Role role) {
         this.name = name;
         this.allocator = allocator;
         this.buffer = buffer.orElse(null);
         this.maxSize = maxSize;
         this.plainData = plainData;
+        this.scrubbing = scrubbing;
         this.opportunisticDispose = opportunisticDispose;
-        this.lastSize = buffer.map(b -> b.capacity()).orElse(initialSize);
+        this.sizeAdvisor = sizeAdvisor;
+        this.role = role;
+        this.lastSize = buffer.map(b -> b.capacity())
+                .orElseGet(() -> sizeAdvisor
+                        .map(a -> Math.min(Math.max(initialSize, a.initialSize(role)), maxSize))
+                        .orElse(initialSize));
     }
 
     public void prepare() {
@@ -43,16 +61,55 @@ public class BufferHolder {
         }
     }
 
+    /**
+     * Release the buffer if it is empty and opportunistic disposal is enabled. Otherwise, zero the
+     * consumed bytes beyond the position, if the scrubbing policy requires it.
+     */
     public boolean release() {
         if (opportunisticDispose && buffer.position() == 0) {
             return dispose();
         } else {
+            if (scrubbing == ScrubbingPolicy.Always) {
+                zeroRemaining();
+            }
             return false;
         }
     }
 
+    /**
+     * Record the current position of the buffer as the high-water mark, if it is higher than the
+     * previous one. Should be called at the points where the buffer is fullest.
+     */
+    public void updateHighWaterMark() {
+        if (sizeAdvisor.isPresent() && buffer.position() > highWaterMark) {
+            highWaterMark = buffer.position();
+        }
+    }
+
+    /**
+     * Dispose the buffer at the end of the channel's life, reporting the high-water mark to the size
+     * advisor, if any.
+     */
+    public boolean retire() {
+        if (highWaterMark > 0) {
+            sizeAdvisor.ifPresent(a -> a.recordHighWaterMark(role, highWaterMark));
+            highWaterMark = 0;
+        }
+        if (buffer != null && scrubbing == ScrubbingPolicy.OnClose) {
+            // other policies zero when disposing
+            buffer.clear();
+            zero();
+        }
+        return dispose();
+    }
+
     public boolean dispose() {
         if (buffer != null) {
+            if (scrubsOnRelease()) {
+                buffer.clear();
+                zero();
+            }
+            TlsEvents.bufferDisposed(name, buffer.capacity());
             allocator.free(buffer);
             buffer = null;
             return true;
@@ -72,14 +129,23 @@ public class BufferHolder {
                 name, buffer.capacity(), newCapacity
             });
         }
+        TlsEvents.bufferEnlarged(name, buffer.capacity(), newCapacity);
         resize(newCapacity);
     }
 
     private void resize(int newCapacity) {
         ByteBuffer newBuffer = allocator.allocate(newCapacity);
         buffer.flip();
+        int copied = buffer.remaining();
         newBuffer.put(buffer);
-        if (plainData) {
+        if (sizeAdvisor.isPresent()) {
+            // the old capacity was not enough, so the new one is the minimum needed
+            highWaterMark = Math.max(highWaterMark, newCapacity);
+            sizeAdvisor.get().recordEnlargement(role, copied);
+        }
+        if (scrubsOnRelease()) {
+            // the old buffer is no longer used, clear it to zero all its content
+            buffer.clear();
             zero();
         }
         allocator.free(buffer);
@@ -107,17 +173,23 @@ public class BufferHolder {
     }
 
     private void zero(final int position) {
-        buffer.mark();
-        buffer.position(position);
-        int size = buffer.remaining();
-        int length = Math.min(size, zeros.length);
-        int offset = 0;
-        while (length > 0) {
-            buffer.put(zeros, 0, length);
-            offset = offset + length;
-            length = Math.min(size - offset, zeros.length);
+        if (buffer.hasArray()) {
+            // a single fill of the backing array, which the JIT compiles to vectorized stores
+            int offset = buffer.arrayOffset();
+            Arrays.fill(buffer.array(), offset + position, offset + buffer.limit(), (byte) 0);
+        } else {
+            // bulk copies, which direct buffers do with a single memory copy each
+            int originalPosition = buffer.position();
+            buffer.position(position);
+            while (buffer.hasRemaining()) {
+                buffer.put(zeros, 0, Math.min(buffer.remaining(), zeros.length));
+            }
+            buffer.position(originalPosition);
         }
-        buffer.reset();
+    }
+
+    private boolean scrubsOnRelease() {
+        return scrubbing == ScrubbingPolicy.OnRelease || scrubbing == ScrubbingPolicy.Always;
     }
 
     public boolean nullOrEmpty() {
@@ -134,6 +206,8 @@ public class BufferHolder {
                 + allocator
                 + ", plainData="
                 + plainData
+                + ", scrubbing="
+                + scrubbing
                 + ", maxSize="
                 + maxSize
                 + ", opportunisticDispose="
@@ -142,6 +216,8 @@ public class BufferHolder {
                 + buffer
                 + ", lastSize="
                 + lastSize
+                + ", sizeAdvisor="
+                + sizeAdvisor
                 + '}';
     }
 }
@@ -0,0 +1,128 @@
+package tlschannel.impl;
+
+import tlschannel.TlsChannelStats;
+
+/**
+ * Counters of a channel, in plain fields. The read-side fields are only written with the read lock
+ * of the channel held, and the write-side ones with the write lock, so they need no
+ * synchronization of their own. Readers of the view can see slightly stale values.
+ */
+public class ChannelStats implements TlsChannelStats {
+
+    // read side
+
+    long plainBytesRead;
+    long encryptedBytesRead;
+    long recordsUnwrapped;
+    long unwrapCount;
+    long unwrapUnderflows;
+    long unwrapOverflows;
+    long readEnlargements;
+    long needsReads;
+    long unwrapNanos;
+    long taskNanos;
+
+    // write side
+
+    long plainBytesWritten;
+    long encryptedBytesWritten;
+    long recordsWrapped;
+    long wrapCount;
+    long wrapOverflows;
+    long writeEnlargements;
+    long needsWrites;
+    long wrapNanos;
+
+    @Override
+    public long getPlainBytesRead() {
+        return plainBytesRead;
+    }
+
+    @Override
+    public long getPlainBytesWritten() {
+        return plainBytesWritten;
+    }
+
+    @Override
+    public long getEncryptedBytesRead() {
+        return encryptedBytesRead;
+    }
+
+    @Override
+    public long getEncryptedBytesWritten() {
+        return encryptedBytesWritten;
+    }
+
+    @Override
+    public long getRecordsUnwrapped() {
+        return recordsUnwrapped;
+    }
+
+    @Override
+    public long getRecordsWrapped() {
+        return recordsWrapped;
+    }
+
+    @Override
+    public long getUnwrapCount() {
+        return unwrapCount;
+    }
+
+    @Override
+    public long getWrapCount() {
+        return wrapCount;
+    }
+
+    @Override
+    public long getUnwrapUnderflowCount() {
+        return unwrapUnderflows;
+    }
+
+    @Override
+    public long getUnwrapOverflowCount() {
+        return unwrapOverflows;
+    }
+
+    @Override
+    public long getWrapOverflowCount() {
+        return wrapOverflows;
+    }
+
+    @Override
+    public long getBufferEnlargementCount() {
+        return readEnlargements + writeEnlargements;
+    }
+
+    @Override
+    public long getNeedsReadCount() {
+        return needsReads;
+    }
+
+    @Override
+    public long getNeedsWriteCount() {
+        return needsWrites;
+    }
+
+    @Override
+    public long getUnwrapNanos() {
+        return unwrapNanos;
+    }
+
+    @Override
+    public long getWrapNanos() {
+        return wrapNanos;
+    }
+
+    @Override
+    public long getTaskNanos() {
+        return taskNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "ChannelStats{" + "plainBytesRead=" + plainBytesRead + ", plainBytesWritten=" + plainBytesWritten
+                + ", encryptedBytesRead=" + encryptedBytesRead + ", encryptedBytesWritten=" + encryptedBytesWritten
+                + ", recordsUnwrapped=" + recordsUnwrapped + ", recordsWrapped=" + recordsWrapped + ", unwrapCount="
+                + unwrapCount + ", wrapCount=" + wrapCount + ", enlargements=" + getBufferEnlargementCount() + '}';
+    }
+}
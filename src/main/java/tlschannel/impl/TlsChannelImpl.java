@@ -3,10 +3,14 @@ package tlschannel.impl;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.ByteChannel;
+import java.nio.channels.Channel;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
 import java.nio.channels.WritableByteChannel;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
@@ -17,6 +21,7 @@ import javax.net.ssl.SSLEngineResult;
 import javax.net.ssl.SSLEngineResult.HandshakeStatus;
 import javax.net.ssl.SSLEngineResult.Status;
 import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLHandshakeException;
 import javax.net.ssl.SSLSession;
 import tlschannel.*;
 import tlschannel.util.Util;
@@ -30,6 +35,9 @@ public class TlsChannelImpl implements ByteChannel {
     /** Official TLS max data size is 2^14 = 16k. Use 1024 more to account for overhead. */
     public static final int maxTlsPacketSize = 17 * 1024;
 
+    /** Content type (1 byte), protocol version (2 bytes) and length (2 bytes). */
+    private static final int tlsHeaderSize = 5;
+
     /** Used to signal EOF conditions from the underlying channel */
     public static class EofException extends Exception {
         private static final long serialVersionUID = -3859156713994602991L;
@@ -51,6 +59,12 @@ public class TlsChannelImpl implements ByteChannel {
     private final TrackingAllocator encryptedBufAllocator;
     private final TrackingAllocator plainBufAllocator;
     private final boolean waitForCloseConfirmation;
+    private final boolean writeCorking;
+    private final int corkingFlushThreshold;
+    private final long corkingFlushDelayNanos;
+    private final int maxRecordsPerWrite;
+    private final int maxRecordsPerRead;
+    private final Optional<HandshakeLimiter> handshakeLimiter;
 
     // @formatter:off
     public TlsChannelImpl(
@@ -63,7 +77,15 @@ public class TlsChannelImpl implements ByteChannel {
             TrackingAllocator plainBufAllocator,
             TrackingAllocator encryptedBufAllocator,
             boolean releaseBuffers,
-            boolean waitForCloseConfirmation) {
+            boolean waitForCloseConfirmation,
+            Optional<BufferSizeAdvisor> sizeAdvisor,
+            boolean writeCorking,
+            int corkingFlushThreshold,
+            long corkingFlushDelayNanos,
+            int maxRecordsPerWrite,
+            int maxRecordsPerRead,
+            ScrubbingPolicy scrubbingPolicy,
+            Optional<HandshakeLimiter> handshakeLimiter) {
         // @formatter:on
         this.readChannel = readChannel;
         this.writeChannel = writeChannel;
@@ -73,14 +95,23 @@ public class TlsChannelImpl implements ByteChannel {
                 Optional.empty(),
                 encryptedBufAllocator,
                 buffersInitialSize,
-                maxTlsPacketSize,
+                maxTlsPacketSize * maxRecordsPerRead,
                 false /* plainData */,
-                releaseBuffers));
+                ScrubbingPolicy.Never,
+                releaseBuffers,
+                sizeAdvisor,
+                BufferSizeAdvisor.Role.InEncrypted));
         this.initSessionCallback = initSessionCallback;
         this.runTasks = runTasks;
         this.plainBufAllocator = plainBufAllocator;
         this.encryptedBufAllocator = encryptedBufAllocator;
         this.waitForCloseConfirmation = waitForCloseConfirmation;
+        this.writeCorking = writeCorking;
+        this.corkingFlushThreshold = corkingFlushThreshold;
+        this.corkingFlushDelayNanos = corkingFlushDelayNanos;
+        this.maxRecordsPerWrite = maxRecordsPerWrite;
+        this.maxRecordsPerRead = maxRecordsPerRead;
+        this.handshakeLimiter = handshakeLimiter;
         inPlain = new BufferHolder(
                 "inPlain",
                 Optional.empty(),
@@ -88,23 +119,52 @@ public class TlsChannelImpl implements ByteChannel {
                 buffersInitialSize,
                 maxTlsPacketSize,
                 true /* plainData */,
-                releaseBuffers);
+                scrubbingPolicy,
+                releaseBuffers,
+                sizeAdvisor,
+                BufferSizeAdvisor.Role.InPlain);
         outEncrypted = new BufferHolder(
                 "outEncrypted",
                 Optional.empty(),
                 encryptedBufAllocator,
                 buffersInitialSize,
-                maxTlsPacketSize,
+                maxTlsPacketSize * maxRecordsPerWrite,
                 false /* plainData */,
-                releaseBuffers);
+                ScrubbingPolicy.Never,
+                releaseBuffers,
+                sizeAdvisor,
+                BufferSizeAdvisor.Role.OutEncrypted);
+        outPlain = new BufferHolder(
+                "outPlain",
+                Optional.empty(),
+                plainBufAllocator,
+                buffersInitialSize,
+                maxTlsPacketSize,
+                true /* plainData */,
+                scrubbingPolicy,
+                releaseBuffers,
+                sizeAdvisor,
+                BufferSizeAdvisor.Role.OutPlain);
     }
 
     private final Lock initLock = new ReentrantLock();
     private final Lock readLock = new ReentrantLock();
     private final Lock writeLock = new ReentrantLock();
 
+    /** Updated under {@link #readLock} or {@link #writeLock}, depending on the side of the counter. */
+    private final ChannelStats stats = new ChannelStats();
+
     private boolean handshakeStarted = false;
 
+    /** Flight recorder event of the handshake in progress, if recorded; guarded by the init lock. */
+    private Object handshakeEvent;
+
+    /**
+     * Permit of the initial handshake, while it is waiting for admission or in progress. Only set with
+     * the init lock, but released also when closing.
+     */
+    private volatile HandshakeLimiter.Permit handshakePermit;
+
     private volatile boolean handshakeCompleted = false;
 
     /**
@@ -124,6 +184,12 @@ public class TlsChannelImpl implements ByteChannel {
     /** Contains data encrypted to send to the underlying channel */
     private final BufferHolder outEncrypted;
 
+    /** Plain data staged for writing, only used when corking */
+    private final BufferHolder outPlain;
+
+    /** Time at which the oldest byte currently in {@link #outPlain} was staged */
+    private long stagedSince;
+
     /**
      * Reference to the current read buffer supplied by the client. This field is only valid during a
      * read operation. This field is used instead of {@link #inPlain} in order to avoid copying
@@ -134,6 +200,12 @@ public class TlsChannelImpl implements ByteChannel {
     /** Bytes produced by the current read operation */
     private int bytesToReturn;
 
+    /** View of {@link #inPlain} given by {@link #readLease()}, while not released. */
+    private ByteBuffer lease;
+
+    /** Whether {@link #inPlain} could not be freed on close, because of an outstanding lease. */
+    private boolean inPlainDisposalPending = false;
+
     /**
      * Handshake wrap() method calls need a buffer to read from, even when they actually do not read
      * anything.
@@ -155,6 +227,10 @@ public class TlsChannelImpl implements ByteChannel {
         return encryptedBufAllocator;
     }
 
+    public TlsChannelStats getStats() {
+        return stats;
+    }
+
     // read
 
     public long read(ByteBufferSet dest) throws IOException {
@@ -165,27 +241,46 @@ public class TlsChannelImpl implements ByteChannel {
         handshake();
         readLock.lock();
         try {
+            checkNoLease();
             if (invalid || shutdownSent) {
                 throw new ClosedChannelException();
             }
-
             long originalDestPosition = dest.position();
-            suppliedInPlain = dest;
-            bytesToReturn = inPlain.nullOrEmpty() ? 0 : inPlain.buffer.position();
+            int bytes = readDecrypted(dest);
+            if (bytes == -1) {
+                return -1;
+            }
+            if (inPlain.nullOrEmpty()) {
+                // if there is not in internal buffer, that means that the bytes must be in the supplied
+                // buffer
+                Util.assertTrue(dest.position() == originalDestPosition + bytes);
+                return bytes;
+            } else {
+                Util.assertTrue(inPlain.buffer.position() == bytes);
+                return transferPendingPlain(dest);
+            }
+        } catch (EofException e) {
+            return -1;
+        } finally {
+            readLock.unlock();
+        }
+    }
 
+    /**
+     * Read and decrypt until some bytes are available, either in the supplied buffers or, if they are
+     * null or not big enough, in {@link #inPlain}.
+     *
+     * @return the number of bytes available, or -1 in case of end of stream
+     */
+    private int readDecrypted(ByteBufferSet dest) throws IOException, EofException {
+        suppliedInPlain = dest;
+        bytesToReturn = inPlain.nullOrEmpty() ? 0 : inPlain.buffer.position();
+        try {
             while (true) {
 
                 // return bytes are soon as we have them
                 if (bytesToReturn > 0) {
-                    if (inPlain.nullOrEmpty()) {
-                        // if there is not in internal buffer, that means that the bytes must be in the supplied
-                        // buffer
-                        Util.assertTrue(dest.position() == originalDestPosition + bytesToReturn);
-                        return bytesToReturn;
-                    } else {
-                        Util.assertTrue(inPlain.buffer.position() == bytesToReturn);
-                        return transferPendingPlain(dest);
-                    }
+                    return bytesToReturn;
                 }
 
                 if (shutdownReceived) {
@@ -200,7 +295,9 @@ public class TlsChannelImpl implements ByteChannel {
                     case NOT_HANDSHAKING:
                     case FINISHED:
                         readAndUnwrap();
-                        if (shutdownReceived) {
+                        // a close_notify can come after data records of the same read, which are returned
+                        // first, leaving the end of stream for the next read
+                        if (shutdownReceived && bytesToReturn == 0) {
                             return -1;
                         }
                         break;
@@ -212,35 +309,98 @@ public class TlsChannelImpl implements ByteChannel {
                         return -1;
                 }
             }
-        } catch (EofException e) {
-            return -1;
         } finally {
             bytesToReturn = 0;
             suppliedInPlain = null;
+        }
+    }
+
+    /**
+     * Read and decrypt until some bytes are available, and return a read-only view of them, without
+     * copying. The bytes remain in the internal buffer until {@link #releaseLease(ByteBuffer)} is
+     * called.
+     *
+     * @return the view, or null in case of end of stream
+     */
+    public ByteBuffer readLease() throws IOException {
+        handshake();
+        readLock.lock();
+        try {
+            checkNoLease();
+            if (invalid || shutdownSent) {
+                throw new ClosedChannelException();
+            }
+            if (readDecrypted(null) == -1) {
+                return null;
+            }
+            ByteBuffer view = inPlain.buffer.asReadOnlyBuffer();
+            view.flip();
+            lease = view;
+            return view;
+        } catch (EofException e) {
+            return null;
+        } finally {
             readLock.unlock();
         }
     }
 
+    /**
+     * Return a view obtained from {@link #readLease()}. The bytes before the position of the view are
+     * considered consumed, the rest will be returned again by the next read operation.
+     */
+    public void releaseLease(ByteBuffer view) {
+        readLock.lock();
+        try {
+            if (view == null || view != lease) {
+                throw new IllegalArgumentException("not the outstanding lease of this channel");
+            }
+            lease = null;
+            if (inPlainDisposalPending) {
+                // the channel was closed while the lease was outstanding
+                inPlain.retire();
+                inPlainDisposalPending = false;
+                return;
+            }
+            inPlain.updateHighWaterMark();
+            inPlain.buffer.flip();
+            inPlain.buffer.position(view.position());
+            inPlain.buffer.compact();
+            inPlain.release();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private void checkNoLease() {
+        if (lease != null) {
+            throw new IllegalStateException("a read lease is outstanding, it must be released before reading again");
+        }
+    }
+
     private void handleTask() throws NeedsTaskException {
         Runnable task = engine.getDelegatedTask();
         if (runTasks) {
             logger.log(Level.FINEST, "delegating in task: {0}", task);
+            Object event = TlsEvents.beginTask();
+            long startedAt = System.nanoTime();
             task.run();
+            stats.taskNanos += System.nanoTime() - startedAt;
+            TlsEvents.endTask(event);
         } else {
             logger.log(Level.FINEST, "task needed, throwing exception: {0}", task);
-            throw new NeedsTaskException(task);
+            NeedsTaskException e = new NeedsTaskException(task);
+            TlsEvents.flowControl(e);
+            throw e;
         }
     }
 
     /** Copies bytes from the internal input plain buffer to the supplied buffer. */
     private int transferPendingPlain(ByteBufferSet dstBuffers) {
+        inPlain.updateHighWaterMark();
         inPlain.buffer.flip(); // will read
         int bytes = dstBuffers.putRemaining(inPlain.buffer);
         inPlain.buffer.compact(); // will write
-        boolean disposed = inPlain.release();
-        if (!disposed) {
-            inPlain.zeroRemaining();
-        }
+        inPlain.release();
         return bytes;
     }
 
@@ -287,9 +447,11 @@ public class TlsChannelImpl implements ByteChannel {
                     inPlain.prepare();
                     if (inPlain.buffer.capacity() <= suppliedInPlain.remaining()) {
                         inPlain.enlarge();
+                        stats.readEnlargements++;
                     }
                 } else {
                     inPlain.enlarge();
+                    stats.readEnlargements++;
                 }
 
                 // inPlain changed, re-create the wrapper
@@ -299,9 +461,24 @@ public class TlsChannelImpl implements ByteChannel {
     }
 
     private SSLEngineResult callEngineUnwrap(ByteBufferSet dest) throws SSLException {
+        inEncrypted.updateHighWaterMark();
         inEncrypted.buffer.flip();
         try {
+            Object event = TlsEvents.beginUnwrap();
+            long startedAt = System.nanoTime();
             SSLEngineResult result = engine.unwrap(inEncrypted.buffer, dest.array, dest.offset, dest.length);
+            stats.unwrapNanos += System.nanoTime() - startedAt;
+            TlsEvents.endUnwrap(event, result);
+            stats.unwrapCount++;
+            stats.plainBytesRead += result.bytesProduced();
+            if (result.bytesConsumed() > 0) {
+                stats.recordsUnwrapped++;
+            }
+            if (result.getStatus() == Status.BUFFER_UNDERFLOW) {
+                stats.unwrapUnderflows++;
+            } else if (result.getStatus() == Status.BUFFER_OVERFLOW) {
+                stats.unwrapOverflows++;
+            }
             if (logger.isLoggable(Level.FINEST)) {
                 logger.log(
                         Level.FINEST,
@@ -320,13 +497,20 @@ public class TlsChannelImpl implements ByteChannel {
     }
 
     private void readFromChannel() throws IOException, EofException {
+        int before = inEncrypted.buffer.position();
         try {
             callChannelRead(readChannel, inEncrypted.buffer);
+        } catch (NeedsReadException e) {
+            stats.needsReads++;
+            TlsEvents.flowControl(e);
+            throw e;
         } catch (WouldBlockException e) {
             throw e;
         } catch (IOException e) {
             invalid = true;
             throw e;
+        } finally {
+            stats.encryptedBytesRead += inEncrypted.buffer.position() - before;
         }
     }
 
@@ -360,12 +544,89 @@ public class TlsChannelImpl implements ByteChannel {
             if (invalid || shutdownSent) {
                 throw new ClosedChannelException();
             }
-            return wrapAndWrite(source);
+            if (writeCorking) {
+                return stageAndWrite(source);
+            } else {
+                return wrapAndWrite(source);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Writes all staged plain data, and any pending encrypted data, to the underlying channel.
+     *
+     * @throws IOException if the underlying channel throws an IOException
+     */
+    public void flush() throws IOException {
+        handshake();
+        writeLock.lock();
+        try {
+            if (invalid || shutdownSent) {
+                throw new ClosedChannelException();
+            }
+            flushStaged();
         } finally {
             writeLock.unlock();
         }
     }
 
+    /**
+     * Copies the source bytes to the staging buffer, only wrapping and writing them when the flush
+     * threshold is reached or the oldest staged bytes are older than the flush delay.
+     */
+    private long stageAndWrite(ByteBufferSet source) throws IOException {
+        long bytesToConsume = source.remaining();
+        while (source.hasRemaining()) {
+            outPlain.prepare();
+            int staged = outPlain.buffer.position();
+            if (staged >= corkingFlushThreshold) {
+                flushStaged();
+                continue;
+            }
+            if (!outPlain.buffer.hasRemaining()) {
+                outPlain.enlarge();
+                stats.writeEnlargements++;
+            }
+            if (staged == 0) {
+                stagedSince = System.nanoTime();
+            }
+            int room = Math.min(outPlain.buffer.remaining(), corkingFlushThreshold - staged);
+            source.get(outPlain.buffer, (int) Math.min(source.remaining(), room));
+        }
+        if (!outPlain.nullOrEmpty()
+                && (outPlain.buffer.position() >= corkingFlushThreshold
+                        || System.nanoTime() - stagedSince >= corkingFlushDelayNanos)) {
+            flushStaged();
+        } else if (!outEncrypted.nullOrEmpty()) {
+            // bytes left by a previous flush that could not complete
+            wrapAndWrite(dummyOut);
+        }
+        return bytesToConsume;
+    }
+
+    private void flushStaged() throws IOException {
+        if (outPlain.nullOrEmpty()) {
+            if (!outEncrypted.nullOrEmpty()) {
+                wrapAndWrite(dummyOut);
+            }
+            return;
+        }
+        outPlain.updateHighWaterMark();
+        outPlain.buffer.flip();
+        try {
+            wrapAndWrite(new ByteBufferSet(outPlain.buffer));
+            if (outPlain.buffer.hasRemaining() && engine.isOutboundDone()) {
+                // the engine will not accept more data
+                throw new ClosedChannelException();
+            }
+        } finally {
+            outPlain.buffer.compact();
+            outPlain.release();
+        }
+    }
+
     private long wrapAndWrite(ByteBufferSet source) throws IOException {
         long bytesToConsume = source.remaining();
         outEncrypted.prepare();
@@ -376,6 +637,9 @@ public class TlsChannelImpl implements ByteChannel {
                     return bytesToConsume;
                 }
                 SSLEngineResult result = wrapLoop(source);
+                if (maxRecordsPerWrite > 1) {
+                    result = wrapMore(source, result);
+                }
                 if (result.getStatus() == Status.CLOSED) {
                     return bytesToConsume - source.remaining();
                 }
@@ -385,6 +649,26 @@ public class TlsChannelImpl implements ByteChannel {
         }
     }
 
+    /**
+     * Keeps wrapping records after the previous ones, as long as the output buffer can grow, so they
+     * are all written to the underlying channel in one operation.
+     */
+    private SSLEngineResult wrapMore(ByteBufferSet source, SSLEngineResult result) throws SSLException {
+        while (result.getStatus() == Status.OK
+                && result.getHandshakeStatus() == HandshakeStatus.NOT_HANDSHAKING
+                && source.hasRemaining()) {
+            if (outEncrypted.buffer.remaining() < maxTlsPacketSize) {
+                if (outEncrypted.buffer.capacity() >= outEncrypted.maxSize) {
+                    break;
+                }
+                outEncrypted.enlarge();
+                stats.writeEnlargements++;
+            }
+            result = wrapLoop(source);
+        }
+        return result;
+    }
+
     /** Returns last {@link HandshakeStatus} of the loop */
     private SSLEngineResult wrapLoop(ByteBufferSet source) throws SSLException {
         while (true) {
@@ -396,6 +680,7 @@ public class TlsChannelImpl implements ByteChannel {
                 case BUFFER_OVERFLOW:
                     Util.assertTrue(result.bytesConsumed() == 0);
                     outEncrypted.enlarge();
+                    stats.writeEnlargements++;
                     break;
                 case BUFFER_UNDERFLOW:
                     throw new IllegalStateException();
@@ -405,7 +690,19 @@ public class TlsChannelImpl implements ByteChannel {
 
     private SSLEngineResult callEngineWrap(ByteBufferSet source) throws SSLException {
         try {
+            Object event = TlsEvents.beginWrap();
+            long startedAt = System.nanoTime();
             SSLEngineResult result = engine.wrap(source.array, source.offset, source.length, outEncrypted.buffer);
+            stats.wrapNanos += System.nanoTime() - startedAt;
+            TlsEvents.endWrap(event, result);
+            stats.wrapCount++;
+            stats.plainBytesWritten += result.bytesConsumed();
+            if (result.bytesProduced() > 0) {
+                stats.recordsWrapped++;
+            }
+            if (result.getStatus() == Status.BUFFER_OVERFLOW) {
+                stats.wrapOverflows++;
+            }
             if (logger.isLoggable(Level.FINEST)) {
                 logger.log(
                         Level.FINEST,
@@ -423,10 +720,16 @@ public class TlsChannelImpl implements ByteChannel {
         if (outEncrypted.buffer.position() == 0) {
             return;
         }
+        outEncrypted.updateHighWaterMark();
         outEncrypted.buffer.flip();
+        int before = outEncrypted.buffer.remaining();
         try {
             try {
                 callChannelWrite(writeChannel, outEncrypted.buffer); // IO block
+            } catch (NeedsWriteException e) {
+                stats.needsWrites++;
+                TlsEvents.flowControl(e);
+                throw e;
             } catch (WouldBlockException e) {
                 throw e;
             } catch (IOException e) {
@@ -434,6 +737,7 @@ public class TlsChannelImpl implements ByteChannel {
                 throw e;
             }
         } finally {
+            stats.encryptedBytesWritten += before - outEncrypted.buffer.remaining();
             outEncrypted.buffer.compact();
         }
     }
@@ -502,6 +806,8 @@ public class TlsChannelImpl implements ByteChannel {
             if (force || !handshakeCompleted) {
 
                 if (!handshakeStarted) {
+                    awaitAdmission();
+
                     logger.log(Level.FINEST, "Calling SSLEngine.beginHandshake()");
                     engine.beginHandshake();
 
@@ -510,14 +816,20 @@ public class TlsChannelImpl implements ByteChannel {
                     // See: https://github.com/marianobarrios/tls-channel/issues/197
                     handshakeStarted = true;
                 }
+                if (handshakeEvent == null) {
+                    handshakeEvent = TlsEvents.beginHandshake();
+                }
 
                 writeAndHandshake();
+                TlsEvents.endHandshake(handshakeEvent, engine);
+                handshakeEvent = null;
 
                 if (engine.getSession().getProtocol().startsWith("DTLS")) {
                     throw new IllegalArgumentException("DTLS not supported");
                 }
 
                 handshakeCompleted = true;
+                releaseHandshakePermit();
 
                 // call client code
                 try {
@@ -532,6 +844,56 @@ public class TlsChannelImpl implements ByteChannel {
         }
     }
 
+    /**
+     * Wait for the admission of the initial handshake by the limiter, if there is one. Blocking
+     * channels wait in the limiter; non-blocking ones signal the caller to retry when admitted.
+     */
+    private void awaitAdmission() throws IOException {
+        if (!handshakeLimiter.isPresent()) {
+            return;
+        }
+        HandshakeLimiter.Permit permit = handshakePermit;
+        if (permit == null) {
+            permit = handshakeLimiter.get().request();
+            handshakePermit = permit;
+            // a concurrent close could have missed the permit
+            if (!readChannel.isOpen()) {
+                releaseHandshakePermit();
+                throw new ClosedChannelException();
+            }
+        }
+        if (isNonBlocking(readChannel)) {
+            CompletableFuture<Void> admission = permit.admission();
+            if (!admission.isDone()) {
+                permit.checkQueueTime();
+            }
+            if (!admission.isDone()) {
+                NeedsAdmissionException e = new NeedsAdmissionException(admission);
+                TlsEvents.flowControl(e);
+                throw e;
+            }
+        }
+        try {
+            permit.await();
+        } catch (SSLHandshakeException e) {
+            invalid = true;
+            handshakePermit = null;
+            throw e;
+        }
+    }
+
+    private static boolean isNonBlocking(Channel channel) {
+        return channel instanceof SelectableChannel && !((SelectableChannel) channel).isBlocking();
+    }
+
+    private void releaseHandshakePermit() {
+        HandshakeLimiter.Permit permit = handshakePermit;
+        if (permit != null) {
+            permit.release();
+            handshakePermit = null;
+        }
+    }
+
     private void writeAndHandshake() throws IOException, EofException {
         readLock.lock();
         try {
@@ -593,6 +955,9 @@ public class TlsChannelImpl implements ByteChannel {
                 HandshakeStatus status = engine.getHandshakeStatus();
                 if (result.bytesProduced() > 0) {
                     bytesToReturn = result.bytesProduced();
+                    if (maxRecordsPerRead > 1 && suppliedInPlain != null && inPlain.nullOrEmpty()) {
+                        unwrapMore();
+                    }
                     return;
                 }
                 if (result.getStatus() == Status.CLOSED) {
@@ -606,18 +971,48 @@ public class TlsChannelImpl implements ByteChannel {
                 }
                 if (!inEncrypted.buffer.hasRemaining()) {
                     inEncrypted.enlarge();
+                    stats.readEnlargements++;
                 }
                 readFromChannel(); // IO block
+                if (maxRecordsPerRead > 1
+                        && !inEncrypted.buffer.hasRemaining()
+                        && inEncrypted.buffer.capacity() < inEncrypted.maxSize) {
+                    // the underlying channel had more data than what fitted, make room for next reads
+                    inEncrypted.enlarge();
+                    stats.readEnlargements++;
+                }
             }
         } finally {
             inEncrypted.release();
         }
     }
 
+    /**
+     * Keeps unwrapping the complete records that are already buffered, directly into the supplied
+     * buffers, until they are full or there is no complete record left.
+     */
+    private void unwrapMore() throws SSLException {
+        while (inEncrypted.buffer.position() > 0 && suppliedInPlain.hasRemaining()) {
+            SSLEngineResult result = callEngineUnwrap(suppliedInPlain);
+            bytesToReturn += result.bytesProduced();
+            if (result.getStatus() == Status.CLOSED) {
+                shutdownReceived = true;
+                return;
+            }
+            if (result.getStatus() != Status.OK
+                    || result.bytesProduced() == 0
+                    || result.getHandshakeStatus() != HandshakeStatus.NOT_HANDSHAKING) {
+                return;
+            }
+        }
+    }
+
     public void close() throws IOException {
         tryShutdown();
         writeChannel.close();
         readChannel.close();
+        // without the init lock, which can be held by a handshake waiting for admission
+        releaseHandshakePermit();
         /*
          * After closing the underlying channels, locks should be taken fast.
          */
@@ -667,6 +1062,9 @@ public class TlsChannelImpl implements ByteChannel {
                     throw new ClosedChannelException();
                 }
                 if (!shutdownSent) {
+                    if (writeCorking) {
+                        flushStaged(); // IO block
+                    }
                     shutdownSent = true;
                     outEncrypted.prepare();
                     try {
@@ -714,9 +1112,14 @@ public class TlsChannelImpl implements ByteChannel {
     }
 
     private void freeBuffers() {
-        inEncrypted.dispose();
-        inPlain.dispose();
-        outEncrypted.dispose();
+        inEncrypted.retire();
+        if (lease == null) {
+            inPlain.retire();
+        } else {
+            inPlainDisposalPending = true;
+        }
+        outEncrypted.retire();
+        outPlain.retire();
     }
 
     public boolean isOpen() {
@@ -735,6 +1138,92 @@ public class TlsChannelImpl implements ByteChannel {
         return runTasks;
     }
 
+    public boolean getWriteCorking() {
+        return writeCorking;
+    }
+
+    public int readInterestOps() {
+        return interestOps(true);
+    }
+
+    public int writeInterestOps() {
+        return interestOps(false);
+    }
+
+    private static final int bothOps = SelectionKey.OP_READ | SelectionKey.OP_WRITE;
+
+    /**
+     * Return the readiness of the underlying channel that an operation is expected to need, following
+     * the same paths as {@link #readDecrypted(ByteBufferSet)}. The buffers are only inspected if the
+     * locks can be taken without waiting.
+     */
+    private int interestOps(boolean forRead) {
+        if (invalid || (forRead ? shutdownReceived : shutdownSent)) {
+            // the operation fails or finishes right away
+            return 0;
+        }
+        if (!handshakeCompleted) {
+            /*
+             * During the initial handshake, both operations can read and write, so the state seen now can
+             * be changed by the other one before this operation is attempted.
+             */
+            return bothOps;
+        }
+        if (!forRead) {
+            // after the initial handshake, writes only wrap
+            return SelectionKey.OP_WRITE;
+        }
+        if (!readLock.tryLock()) {
+            return bothOps;
+        }
+        try {
+            if (!inPlain.nullOrEmpty() || hasCompleteRecord(inEncrypted)) {
+                return 0;
+            }
+            // renegotiations and post-handshake messages
+            switch (engine.getHandshakeStatus()) {
+                case NEED_TASK:
+                    return 0;
+                case NEED_WRAP:
+                    return SelectionKey.OP_WRITE;
+                case NEED_UNWRAP:
+                    // pending bytes are written first
+                    if (!writeLock.tryLock()) {
+                        return bothOps;
+                    }
+                    try {
+                        return outEncrypted.nullOrEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_WRITE;
+                    } finally {
+                        writeLock.unlock();
+                    }
+                default:
+                    return SelectionKey.OP_READ;
+            }
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Whether the buffer contains at least a complete TLS record, judging by the length in the header
+     * of the first one. Unknown content types are assumed to be complete, so they are processed.
+     */
+    private static boolean hasCompleteRecord(BufferHolder holder) {
+        if (holder.nullOrEmpty()) {
+            return false;
+        }
+        ByteBuffer buffer = holder.buffer;
+        int contentType = buffer.get(0) & 0xff;
+        if (contentType < 20 || contentType > 24) {
+            return true;
+        }
+        if (buffer.position() < tlsHeaderSize) {
+            return false;
+        }
+        int length = (buffer.get(3) & 0xff) << 8 | buffer.get(4) & 0xff;
+        return buffer.position() >= tlsHeaderSize + length;
+    }
+
     @Override
     public int read(ByteBuffer dst) throws IOException {
         return (int) read(new ByteBufferSet(dst));
@@ -0,0 +1,47 @@
+package tlschannel.impl;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import tlschannel.TlsChannelFlowControlException;
+
+/**
+ * Java Flight Recorder events of the channels. This is the Java 8 version, in which JFR has no
+ * public API, so all methods do nothing; newer JVMs use a version that emits the events.
+ *
+ * <p>Duration events are started with a {@code begin} method, which returns a handle (null if
+ * events are not being recorded), and committed with the corresponding {@code end} method.
+ */
+final class TlsEvents {
+
+    private TlsEvents() {}
+
+    static Object beginHandshake() {
+        return null;
+    }
+
+    static void endHandshake(Object handshake, SSLEngine engine) {}
+
+    static Object beginTask() {
+        return null;
+    }
+
+    static void endTask(Object task) {}
+
+    static Object beginWrap() {
+        return null;
+    }
+
+    static void endWrap(Object wrap, SSLEngineResult result) {}
+
+    static Object beginUnwrap() {
+        return null;
+    }
+
+    static void endUnwrap(Object unwrap, SSLEngineResult result) {}
+
+    static void bufferEnlarged(String name, int previousCapacity, int newCapacity) {}
+
+    static void bufferDisposed(String name, int capacity) {}
+
+    static void flowControl(TlsChannelFlowControlException exception) {}
+}
@@ -0,0 +1,36 @@
+package tlschannel.management;
+
+import tlschannel.TrackingAllocator;
+
+/**
+ * Management interface of a {@link TrackingAllocator}. All the attributes read in the same poll
+ * come from the same sample of the statistics of the allocator. Cumulative counts are relative to
+ * the last {@link #reset()}, and rates are per second, between the two last samples.
+ *
+ * @see TlsChannelMBeans#register(TrackingAllocator, String)
+ */
+public interface AllocatorMXBean {
+
+    long getBytesAllocated();
+
+    long getBytesDeallocated();
+
+    long getBuffersAllocated();
+
+    long getBuffersDeallocated();
+
+    /** Bytes currently allocated, which is not affected by resets. */
+    long getCurrentAllocation();
+
+    /** Maximum of the bytes allocated at the same time, since the last reset. */
+    long getMaxAllocation();
+
+    double getAllocationRate();
+
+    double getBufferAllocationRate();
+
+    long getSampleTimeMillis();
+
+    /** Restart the cumulative counts, rates and the maximum allocation. */
+    void reset();
+}
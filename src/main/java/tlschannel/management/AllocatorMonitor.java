@@ -0,0 +1,78 @@
+package tlschannel.management;
+
+import tlschannel.TrackingAllocator;
+
+/** Implementation of {@link AllocatorMXBean}. */
+class AllocatorMonitor extends SampledMonitor implements AllocatorMXBean {
+
+    private static final int bytesAllocated = 0;
+    private static final int bytesDeallocated = 1;
+    private static final int buffersAllocated = 2;
+    private static final int buffersDeallocated = 3;
+    private static final int currentAllocation = 4;
+    private static final int maxAllocation = 5;
+
+    private final TrackingAllocator allocator;
+
+    AllocatorMonitor(TrackingAllocator allocator, long refreshMillis) {
+        super(refreshMillis);
+        this.allocator = allocator;
+    }
+
+    @Override
+    long[] read() {
+        return new long[] {
+            allocator.bytesAllocated(),
+            allocator.bytesDeallocated(),
+            allocator.buffersAllocated(),
+            allocator.buffersDeallocated(),
+            allocator.currentAllocation(),
+            allocator.maxAllocation()
+        };
+    }
+
+    @Override
+    void resetMonitored() {
+        allocator.resetMaxAllocation();
+    }
+
+    @Override
+    public long getBytesAllocated() {
+        return counter(bytesAllocated);
+    }
+
+    @Override
+    public long getBytesDeallocated() {
+        return counter(bytesDeallocated);
+    }
+
+    @Override
+    public long getBuffersAllocated() {
+        return counter(buffersAllocated);
+    }
+
+    @Override
+    public long getBuffersDeallocated() {
+        return counter(buffersDeallocated);
+    }
+
+    @Override
+    public long getCurrentAllocation() {
+        return gauge(currentAllocation);
+    }
+
+    @Override
+    public long getMaxAllocation() {
+        return gauge(maxAllocation);
+    }
+
+    @Override
+    public double getAllocationRate() {
+        return rate(bytesAllocated);
+    }
+
+    @Override
+    public double getBufferAllocationRate() {
+        return rate(buffersAllocated);
+    }
+}
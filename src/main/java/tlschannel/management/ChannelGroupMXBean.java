@@ -0,0 +1,58 @@
+package tlschannel.management;
+
+import tlschannel.async.AsynchronousTlsChannelGroup;
+
+/**
+ * Management interface of an {@link AsynchronousTlsChannelGroup}. All the attributes read in the
+ * same poll come from the same sample of the counters of the group. Operation counts are relative
+ * to the last {@link #reset()}, and rates are per second, between the two last samples.
+ *
+ * @see TlsChannelMBeans#register(AsynchronousTlsChannelGroup, String)
+ */
+public interface ChannelGroupMXBean {
+
+    long getStartedReadCount();
+
+    long getStartedWriteCount();
+
+    long getSuccessfulReadCount();
+
+    long getSuccessfulWriteCount();
+
+    long getFailedReadCount();
+
+    long getFailedWriteCount();
+
+    long getCancelledReadCount();
+
+    long getCancelledWriteCount();
+
+    long getCurrentReadCount();
+
+    long getCurrentWriteCount();
+
+    long getCurrentRegistrationCount();
+
+    long getQueuedTaskCount();
+
+    double getStartedReadRate();
+
+    double getStartedWriteRate();
+
+    double getSuccessfulReadRate();
+
+    double getSuccessfulWriteRate();
+
+    double getFailedReadRate();
+
+    double getFailedWriteRate();
+
+    int getSelectorCount();
+
+    boolean isShutdown();
+
+    long getSampleTimeMillis();
+
+    /** Restart the operation counts and rates. The counters of the group itself are not affected. */
+    void reset();
+}
@@ -0,0 +1,145 @@
+package tlschannel.management;
+
+import tlschannel.async.AsynchronousTlsChannelGroup;
+
+/** Implementation of {@link ChannelGroupMXBean}. */
+class ChannelGroupMonitor extends SampledMonitor implements ChannelGroupMXBean {
+
+    private static final int startedReads = 0;
+    private static final int startedWrites = 1;
+    private static final int successfulReads = 2;
+    private static final int successfulWrites = 3;
+    private static final int failedReads = 4;
+    private static final int failedWrites = 5;
+    private static final int cancelledReads = 6;
+    private static final int cancelledWrites = 7;
+    private static final int currentReads = 8;
+    private static final int currentWrites = 9;
+    private static final int currentRegistrations = 10;
+    private static final int queuedTasks = 11;
+
+    private final AsynchronousTlsChannelGroup group;
+
+    ChannelGroupMonitor(AsynchronousTlsChannelGroup group, long refreshMillis) {
+        super(refreshMillis);
+        this.group = group;
+    }
+
+    @Override
+    long[] read() {
+        return new long[] {
+            group.getStartedReadCount(),
+            group.getStartedWriteCount(),
+            group.getSuccessfulReadCount(),
+            group.getSuccessfulWriteCount(),
+            group.getFailedReadCount(),
+            group.getFailedWriteCount(),
+            group.getCancelledReadCount(),
+            group.getCancelledWriteCount(),
+            group.getCurrentReadCount(),
+            group.getCurrentWriteCount(),
+            group.getCurrentRegistrationCount(),
+            group.getQueuedTaskCount()
+        };
+    }
+
+    @Override
+    public long getStartedReadCount() {
+        return counter(startedReads);
+    }
+
+    @Override
+    public long getStartedWriteCount() {
+        return counter(startedWrites);
+    }
+
+    @Override
+    public long getSuccessfulReadCount() {
+        return counter(successfulReads);
+    }
+
+    @Override
+    public long getSuccessfulWriteCount() {
+        return counter(successfulWrites);
+    }
+
+    @Override
+    public long getFailedReadCount() {
+        return counter(failedReads);
+    }
+
+    @Override
+    public long getFailedWriteCount() {
+        return counter(failedWrites);
+    }
+
+    @Override
+    public long getCancelledReadCount() {
+        return counter(cancelledReads);
+    }
+
+    @Override
+    public long getCancelledWriteCount() {
+        return counter(cancelledWrites);
+    }
+
+    @Override
+    public long getCurrentReadCount() {
+        return gauge(currentReads);
+    }
+
+    @Override
+    public long getCurrentWriteCount() {
+        return gauge(currentWrites);
+    }
+
+    @Override
+    public long getCurrentRegistrationCount() {
+        return gauge(currentRegistrations);
+    }
+
+    @Override
+    public long getQueuedTaskCount() {
+        return gauge(queuedTasks);
+    }
+
+    @Override
+    public double getStartedReadRate() {
+        return rate(startedReads);
+    }
+
+    @Override
+    public double getStartedWriteRate() {
+        return rate(startedWrites);
+    }
+
+    @Override
+    public double getSuccessfulReadRate() {
+        return rate(successfulReads);
+    }
+
+    @Override
+    public double getSuccessfulWriteRate() {
+        return rate(successfulWrites);
+    }
+
+    @Override
+    public double getFailedReadRate() {
+        return rate(failedReads);
+    }
+
+    @Override
+    public double getFailedWriteRate() {
+        return rate(failedWrites);
+    }
+
+    @Override
+    public int getSelectorCount() {
+        return group.getShards().size();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return group.isShutdown();
+    }
+}
@@ -0,0 +1,102 @@
+package tlschannel.management;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Base class of the MBeans, which read all the values of the monitored object at once, in a
+ * sample, so that the attributes fetched in the same poll are consistent with each other. A sample
+ * is reused while it is younger than the refresh interval. Counters are reported relative to the
+ * last reset (or to the creation of the MBean), and rates are derived from the two last samples.
+ */
+abstract class SampledMonitor {
+
+    static final long defaultRefreshMillis = 1000;
+
+    private static final class Sample {
+        final long[] values;
+        final long nanoTime;
+        final long timeMillis;
+
+        Sample(long[] values, long nanoTime, long timeMillis) {
+            this.values = values;
+            this.nanoTime = nanoTime;
+            this.timeMillis = timeMillis;
+        }
+    }
+
+    private final long refreshNanos;
+
+    /** Time of creation, when all counters are considered to be zero. */
+    private final long createdNanos = System.nanoTime();
+
+    private final long createdMillis = System.currentTimeMillis();
+
+    /** Guarded by this object, as all sampled state. */
+    private Sample baseline;
+
+    private Sample previous;
+    private Sample current;
+
+    SampledMonitor(long refreshMillis) {
+        this.refreshNanos = TimeUnit.MILLISECONDS.toNanos(refreshMillis);
+    }
+
+    /** Read the current values of the monitored object, in the order of the indices of the subclass. */
+    abstract long[] read();
+
+    /** Called on reset, to restart the values that the monitored object tracks itself. */
+    void resetMonitored() {}
+
+    private Sample newSample() {
+        return new Sample(read(), System.nanoTime(), System.currentTimeMillis());
+    }
+
+    private Sample sample() {
+        if (current == null) {
+            current = newSample();
+            baseline = new Sample(new long[current.values.length], createdNanos, createdMillis);
+            previous = baseline;
+        } else if (System.nanoTime() - current.nanoTime >= refreshNanos) {
+            previous = current;
+            current = newSample();
+        }
+        return current;
+    }
+
+    /** Return a value that only grows, relative to the last reset. */
+    synchronized long counter(int index) {
+        return sample().values[index] - baseline.values[index];
+    }
+
+    /** Return a value that can go up and down, which is not affected by resets. */
+    synchronized long gauge(int index) {
+        return sample().values[index];
+    }
+
+    /** Return the rate of change per second of a counter, between the two last samples. */
+    synchronized double rate(int index) {
+        Sample sample = sample();
+        long elapsed = sample.nanoTime - previous.nanoTime;
+        if (elapsed <= 0) {
+            return 0;
+        }
+        return (sample.values[index] - previous.values[index]) * 1e9 / elapsed;
+    }
+
+    /**
+     * Return the wall-clock time at which the current sample was taken.
+     *
+     * @return time, in milliseconds since the epoch
+     */
+    public synchronized long getSampleTimeMillis() {
+        return sample().timeMillis;
+    }
+
+    /** Restart all the counters and rates, from a new sample. */
+    public synchronized void reset() {
+        resetMonitored();
+        current = newSample();
+        baseline = current;
+        previous = current;
+    }
+}
@@ -0,0 +1,80 @@
+package tlschannel.management;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import tlschannel.TrackingAllocator;
+import tlschannel.async.AsynchronousTlsChannelGroup;
+
+/**
+ * Registration of MBeans for the objects of this library that keep statistics, in the platform
+ * MBean server. Registration is optional: nothing is registered unless these methods are called.
+ * The MBeans keep a reference to the monitored objects, so they must be unregistered when these
+ * are no longer used.
+ *
+ * <p>MBeans are registered in the "tlschannel" domain, with the type of the monitored object and
+ * the supplied name as keys.
+ */
+public final class TlsChannelMBeans {
+
+    private static final String domain = "tlschannel";
+
+    private TlsChannelMBeans() {}
+
+    /**
+     * Register a {@link ChannelGroupMXBean} for a channel group.
+     *
+     * @param group the channel group
+     * @param name a name that distinguishes the group from others
+     * @return the name of the registered MBean
+     * @throws JMException if the MBean could not be registered, for example because another one
+     *     has the same name
+     */
+    public static ObjectName register(AsynchronousTlsChannelGroup group, String name) throws JMException {
+        return register(
+                new StandardMBean(
+                        new ChannelGroupMonitor(group, SampledMonitor.defaultRefreshMillis),
+                        ChannelGroupMXBean.class,
+                        true),
+                "AsynchronousTlsChannelGroup",
+                name);
+    }
+
+    /**
+     * Register an {@link AllocatorMXBean} for a tracking buffer allocator.
+     *
+     * @param allocator the allocator
+     * @param name a name that distinguishes the allocator from others, like "plain" or "encrypted"
+     * @return the name of the registered MBean
+     * @throws JMException if the MBean could not be registered, for example because another one
+     *     has the same name
+     */
+    public static ObjectName register(TrackingAllocator allocator, String name) throws JMException {
+        return register(
+                new StandardMBean(
+                        new AllocatorMonitor(allocator, SampledMonitor.defaultRefreshMillis),
+                        AllocatorMXBean.class,
+                        true),
+                "TrackingAllocator",
+                name);
+    }
+
+    /**
+     * Unregister an MBean registered by this class.
+     *
+     * @param objectName the name returned when registering
+     * @throws JMException if the MBean could not be unregistered, for example because it was not
+     *     registered
+     */
+    public static void unregister(ObjectName objectName) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+    }
+
+    private static ObjectName register(StandardMBean mbean, String type, String name) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName(domain + ":type=" + type + ",name=" + ObjectName.quote(name));
+        return server.registerMBean(mbean, objectName).getObjectName();
+    }
+}
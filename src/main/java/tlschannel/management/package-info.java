@@ -0,0 +1,5 @@
+/**
+ * JMX instrumentation of channel groups and buffer allocators, registered on demand with {@link
+ * tlschannel.management.TlsChannelMBeans}.
+ */
+package tlschannel.management;
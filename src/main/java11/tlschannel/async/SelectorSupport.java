@@ -0,0 +1,28 @@
+package tlschannel.async;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.function.Consumer;
+
+/**
+ * Selection of ready keys. This is the Java 11 version, which passes the keys directly to the
+ * action, without adding them to the selected-key set (and creating an iterator) in every
+ * selection.
+ */
+class SelectorSupport {
+
+    private SelectorSupport() {}
+
+    /**
+     * Select the keys that are ready for I/O operations, and perform an action for each of them.
+     *
+     * @param selector the selector
+     * @param action the action to perform on each ready key
+     * @param timeout maximum time to block, in milliseconds, or 0 to block indefinitely
+     * @return the number of keys processed
+     */
+    static int select(Selector selector, Consumer<SelectionKey> action, long timeout) throws IOException {
+        return selector.select(action, timeout); // block
+    }
+}
@@ -0,0 +1,274 @@
+package tlschannel.impl;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLSession;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import tlschannel.TlsChannelFlowControlException;
+
+/**
+ * Java Flight Recorder events of the channels. This is the Java 11 version, which emits the events.
+ * All of them are disabled by default, so they cost almost nothing until they are enabled in a
+ * recording, for example with {@code -XX:StartFlightRecording:settings=my.jfc}, where the file
+ * enables the events with names starting with "tlschannel.". Wrap and unwrap events are only
+ * committed when they take longer than their threshold, 1 ms by default.
+ *
+ * <p>Duration events are started with a {@code begin} method, which returns a handle (null if
+ * events are not being recorded), and committed with the corresponding {@code end} method.
+ */
+final class TlsEvents {
+
+    private TlsEvents() {}
+
+    private static final String category = "TLS Channel";
+
+    @Name("tlschannel.Handshake")
+    @Label("TLS Handshake")
+    @Category(category)
+    @Enabled(false)
+    @StackTrace(false)
+    static final class HandshakeEvent extends Event {
+
+        @Label("Protocol")
+        String protocol;
+
+        @Label("Cipher Suite")
+        String cipherSuite;
+
+        @Label("Resumed")
+        @Description("Whether the session existed before the handshake started")
+        boolean resumed;
+
+        @Label("Client Mode")
+        boolean clientMode;
+
+        @Label("Peer Host")
+        String peerHost;
+
+        transient long startedMillis;
+    }
+
+    @Name("tlschannel.DelegatedTask")
+    @Label("TLS Delegated Task")
+    @Category(category)
+    @Enabled(false)
+    @StackTrace(false)
+    static final class TaskEvent extends Event {}
+
+    @Name("tlschannel.Wrap")
+    @Label("TLS Wrap")
+    @Category(category)
+    @Enabled(false)
+    @StackTrace(false)
+    @Threshold("1 ms")
+    static final class WrapEvent extends Event {
+
+        @Label("Bytes Consumed")
+        @DataAmount
+        int bytesConsumed;
+
+        @Label("Bytes Produced")
+        @DataAmount
+        int bytesProduced;
+
+        @Label("Status")
+        String status;
+
+        @Label("Handshake Status")
+        String handshakeStatus;
+    }
+
+    @Name("tlschannel.Unwrap")
+    @Label("TLS Unwrap")
+    @Category(category)
+    @Enabled(false)
+    @StackTrace(false)
+    @Threshold("1 ms")
+    static final class UnwrapEvent extends Event {
+
+        @Label("Bytes Consumed")
+        @DataAmount
+        int bytesConsumed;
+
+        @Label("Bytes Produced")
+        @DataAmount
+        int bytesProduced;
+
+        @Label("Status")
+        String status;
+
+        @Label("Handshake Status")
+        String handshakeStatus;
+    }
+
+    @Name("tlschannel.BufferEnlarged")
+    @Label("TLS Buffer Enlarged")
+    @Category(category)
+    @Enabled(false)
+    @StackTrace(false)
+    static final class BufferEnlargedEvent extends Event {
+
+        @Label("Buffer")
+        String buffer;
+
+        @Label("Previous Capacity")
+        @DataAmount
+        int previousCapacity;
+
+        @Label("New Capacity")
+        @DataAmount
+        int newCapacity;
+    }
+
+    @Name("tlschannel.BufferDisposed")
+    @Label("TLS Buffer Disposed")
+    @Category(category)
+    @Enabled(false)
+    @StackTrace(false)
+    static final class BufferDisposedEvent extends Event {
+
+        @Label("Buffer")
+        String buffer;
+
+        @Label("Capacity")
+        @DataAmount
+        int capacity;
+    }
+
+    @Name("tlschannel.FlowControl")
+    @Label("TLS Flow Control")
+    @Description("An operation could not progress, and signaled the caller with an exception")
+    @Category(category)
+    @Enabled(false)
+    @StackTrace(false)
+    static final class FlowControlEvent extends Event {
+
+        @Label("Exception")
+        String exception;
+    }
+
+    static Object beginHandshake() {
+        HandshakeEvent event = new HandshakeEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.startedMillis = System.currentTimeMillis();
+        event.begin();
+        return event;
+    }
+
+    static void endHandshake(Object handshake, SSLEngine engine) {
+        if (handshake == null) {
+            return;
+        }
+        HandshakeEvent event = (HandshakeEvent) handshake;
+        event.end();
+        if (event.shouldCommit()) {
+            SSLSession session = engine.getSession();
+            event.protocol = session.getProtocol();
+            event.cipherSuite = session.getCipherSuite();
+            event.resumed = session.getCreationTime() < event.startedMillis;
+            event.clientMode = engine.getUseClientMode();
+            event.peerHost = engine.getPeerHost();
+            event.commit();
+        }
+    }
+
+    static Object beginTask() {
+        TaskEvent event = new TaskEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    static void endTask(Object task) {
+        if (task != null) {
+            ((TaskEvent) task).commit();
+        }
+    }
+
+    static Object beginWrap() {
+        WrapEvent event = new WrapEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    static void endWrap(Object wrap, SSLEngineResult result) {
+        if (wrap == null) {
+            return;
+        }
+        WrapEvent event = (WrapEvent) wrap;
+        event.end();
+        if (event.shouldCommit()) {
+            event.bytesConsumed = result.bytesConsumed();
+            event.bytesProduced = result.bytesProduced();
+            event.status = result.getStatus().name();
+            event.handshakeStatus = result.getHandshakeStatus().name();
+            event.commit();
+        }
+    }
+
+    static Object beginUnwrap() {
+        UnwrapEvent event = new UnwrapEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    static void endUnwrap(Object unwrap, SSLEngineResult result) {
+        if (unwrap == null) {
+            return;
+        }
+        UnwrapEvent event = (UnwrapEvent) unwrap;
+        event.end();
+        if (event.shouldCommit()) {
+            event.bytesConsumed = result.bytesConsumed();
+            event.bytesProduced = result.bytesProduced();
+            event.status = result.getStatus().name();
+            event.handshakeStatus = result.getHandshakeStatus().name();
+            event.commit();
+        }
+    }
+
+    static void bufferEnlarged(String name, int previousCapacity, int newCapacity) {
+        BufferEnlargedEvent event = new BufferEnlargedEvent();
+        if (event.shouldCommit()) {
+            event.buffer = name;
+            event.previousCapacity = previousCapacity;
+            event.newCapacity = newCapacity;
+            event.commit();
+        }
+    }
+
+    static void bufferDisposed(String name, int capacity) {
+        BufferDisposedEvent event = new BufferDisposedEvent();
+        if (event.shouldCommit()) {
+            event.buffer = name;
+            event.capacity = capacity;
+            event.commit();
+        }
+    }
+
+    static void flowControl(TlsChannelFlowControlException exception) {
+        FlowControlEvent event = new FlowControlEvent();
+        if (event.shouldCommit()) {
+            event.exception = exception.getClass().getSimpleName();
+            event.commit();
+        }
+    }
+}
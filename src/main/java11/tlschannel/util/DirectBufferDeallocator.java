@@ -0,0 +1,53 @@
+package tlschannel.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Access to NIO sun.misc.Cleaner, allowing the caller to deterministically deallocate a given
+ * sun.nio.ch.DirectBuffer.
+ *
+ * <p>This is the Java 11 version, which calls sun.misc.Unsafe#invokeCleaner through a method handle
+ * resolved once, instead of a reflective invocation on every deallocation.
+ */
+public class DirectBufferDeallocator {
+
+    private static final Logger logger = Logger.getLogger(DirectBufferDeallocator.class.getName());
+
+    /** Unsafe.invokeCleaner(ByteBuffer), bound to the Unsafe instance. */
+    private static final MethodHandle invokeCleaner;
+
+    static {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            // avoiding getUnsafe methods, as it is explicitly filtered out from reflection API
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Object unsafe = theUnsafe.get(null);
+            invokeCleaner = MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(unsafe);
+        } catch (NoSuchMethodException | ClassNotFoundException | IllegalAccessException | NoSuchFieldException t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    public DirectBufferDeallocator() {
+        logger.log(Level.FINEST, "initialized direct buffer deallocator for java >= 11");
+    }
+
+    public void deallocate(ByteBuffer buffer) {
+        try {
+            invokeCleaner.invokeExact(buffer);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package tlschannel.impl;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This is the Java 17 version, which copies using the absolute bulk put operation, instead of
+ * creating a duplicate of the source buffer for every copy.
+ */
+public class ByteBufferUtil {
+
+    public static void copy(ByteBuffer src, ByteBuffer dst, int length) {
+        if (length < 0) {
+            throw new IllegalArgumentException("negative length");
+        }
+        if (src.remaining() < length) {
+            throw new IllegalArgumentException(String.format(
+                    "source buffer does not have enough remaining capacity (%d < %d)", src.remaining(), length));
+        }
+        if (dst.remaining() < length) {
+            throw new IllegalArgumentException(String.format(
+                    "destination buffer does not have enough remaining capacity (%d < %d)", dst.remaining(), length));
+        }
+        if (length == 0) {
+            return;
+        }
+        dst.put(dst.position(), src, src.position(), length);
+        src.position(src.position() + length);
+        dst.position(dst.position() + length);
+    }
+}
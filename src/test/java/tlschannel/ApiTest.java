@@ -39,7 +39,15 @@ public class ApiTest {
                     new TrackingAllocator(new HeapBufferAllocator()),
                     new TrackingAllocator(new HeapBufferAllocator()),
                     true /* releaseBuffers */,
-                    false /* waitForCloseConfirmation */);
+                    false /* waitForCloseConfirmation */,
+                    Optional.empty(),
+                    false /* writeCorking */,
+                    16 * 1024,
+                    Long.MAX_VALUE,
+                    1 /* maxRecordsPerWrite */,
+                    1 /* maxRecordsPerRead */,
+                    ScrubbingPolicy.Always,
+                    Optional.empty());
         } catch (NoSuchAlgorithmException e) {
             throw new RuntimeException(e);
         }
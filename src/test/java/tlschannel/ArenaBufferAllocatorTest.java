@@ -0,0 +1,88 @@
+package tlschannel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import tlschannel.impl.TlsChannelImpl;
+
+@TestInstance(Lifecycle.PER_CLASS)
+public class ArenaBufferAllocatorTest {
+
+    @Test
+    public void testAllocation() {
+        ArenaBufferAllocator allocator = new ArenaBufferAllocator(4);
+        for (int size : PooledBufferAllocator.sizeClasses()) {
+            ByteBuffer buffer = allocator.allocate(size);
+            assertTrue(buffer.isDirect());
+            assertEquals(size, buffer.capacity());
+            assertEquals(0, buffer.position());
+            assertEquals(size, buffer.limit());
+            assertEquals(3, allocator.freeChunkCount());
+            allocator.free(buffer);
+            assertEquals(4, allocator.freeChunkCount());
+        }
+    }
+
+    @Test
+    public void testChunksDoNotOverlap() {
+        int chunkCount = 130;
+        ArenaBufferAllocator allocator = new ArenaBufferAllocator(chunkCount);
+        List<ByteBuffer> buffers = new ArrayList<>();
+        for (int i = 0; i < chunkCount; i++) {
+            ByteBuffer buffer = allocator.allocate(TlsChannelImpl.maxTlsPacketSize);
+            while (buffer.hasRemaining()) {
+                buffer.put((byte) i);
+            }
+            buffers.add(buffer);
+        }
+        assertEquals(0, allocator.freeChunkCount());
+        for (int i = 0; i < chunkCount; i++) {
+            ByteBuffer buffer = buffers.get(i);
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                assertEquals((byte) i, buffer.get());
+            }
+            allocator.free(buffer);
+        }
+        assertEquals(chunkCount, allocator.freeChunkCount());
+    }
+
+    @Test
+    public void testFallback() {
+        TrackingAllocator fallback = new TrackingAllocator(new HeapBufferAllocator());
+        ArenaBufferAllocator allocator = new ArenaBufferAllocator(1, fallback);
+
+        // size not served by the arena
+        ByteBuffer odd = allocator.allocate(1000);
+        assertFalse(odd.isDirect());
+        allocator.free(odd);
+
+        // arena exhausted
+        ByteBuffer first = allocator.allocate(TlsChannelImpl.buffersInitialSize);
+        ByteBuffer second = allocator.allocate(TlsChannelImpl.buffersInitialSize);
+        assertTrue(first.isDirect());
+        assertFalse(second.isDirect());
+        allocator.free(second);
+        allocator.free(first);
+
+        assertEquals(2, fallback.buffersAllocated());
+        assertEquals(2, fallback.buffersDeallocated());
+        assertEquals(1, allocator.freeChunkCount());
+    }
+
+    @Test
+    public void testDoubleFree() {
+        ArenaBufferAllocator allocator = new ArenaBufferAllocator(1);
+        ByteBuffer buffer = allocator.allocate(TlsChannelImpl.buffersInitialSize);
+        allocator.free(buffer);
+        assertThrows(IllegalStateException.class, () -> allocator.free(buffer));
+    }
+}
@@ -0,0 +1,82 @@
+package tlschannel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import javax.net.ssl.SSLContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import tlschannel.BufferSizeAdvisor.Role;
+import tlschannel.helpers.MemoryPipe;
+import tlschannel.helpers.SslContextFactory;
+import tlschannel.impl.TlsChannelImpl;
+
+@TestInstance(Lifecycle.PER_CLASS)
+public class BufferSizeAdvisorTest {
+
+    private final SSLContext sslContext = new SslContextFactory().defaultContext();
+
+    @Test
+    public void testInitialAdvice() {
+        BufferSizeAdvisor advisor = new BufferSizeAdvisor();
+        for (Role role : Role.values()) {
+            assertEquals(TlsChannelImpl.buffersInitialSize, advisor.initialSize(role));
+        }
+    }
+
+    @Test
+    public void testPercentile() {
+        BufferSizeAdvisor advisor = new BufferSizeAdvisor(0.9, 1024);
+        for (int i = 0; i < 9; i++) {
+            advisor.recordHighWaterMark(Role.InEncrypted, 1000);
+        }
+        advisor.recordHighWaterMark(Role.InEncrypted, 10000);
+        assertEquals(TlsChannelImpl.buffersInitialSize, advisor.initialSize(Role.InEncrypted));
+        advisor.recordHighWaterMark(Role.InEncrypted, 10000);
+        assertEquals(16384, advisor.initialSize(Role.InEncrypted));
+        // roles are independent
+        assertEquals(TlsChannelImpl.buffersInitialSize, advisor.initialSize(Role.OutEncrypted));
+    }
+
+    @Test
+    public void testAging() {
+        int sampleWindow = 32;
+        BufferSizeAdvisor advisor = new BufferSizeAdvisor(0.5, sampleWindow);
+        for (int i = 0; i < sampleWindow; i++) {
+            advisor.recordHighWaterMark(Role.OutEncrypted, TlsChannelImpl.maxTlsPacketSize);
+        }
+        assertEquals(TlsChannelImpl.maxTlsPacketSize, advisor.initialSize(Role.OutEncrypted));
+        // old samples are discounted, so the advice follows the recent ones
+        for (int i = 0; i < sampleWindow; i++) {
+            advisor.recordHighWaterMark(Role.OutEncrypted, 100);
+        }
+        assertEquals(TlsChannelImpl.buffersInitialSize, advisor.initialSize(Role.OutEncrypted));
+    }
+
+    @Test
+    public void testLearningFromChannels() throws IOException {
+        BufferSizeAdvisor advisor = new BufferSizeAdvisor();
+        transfer(advisor);
+        long firstEnlargements = advisor.enlargements(Role.InEncrypted);
+        assertTrue(firstEnlargements > 0);
+        assertEquals(TlsChannelImpl.maxTlsPacketSize, advisor.initialSize(Role.InEncrypted));
+        transfer(advisor);
+        assertEquals(firstEnlargements, advisor.enlargements(Role.InEncrypted));
+    }
+
+    private void transfer(BufferSizeAdvisor advisor) throws IOException {
+        MemoryPipe pipe = new MemoryPipe();
+        try (ClientTlsChannel client = ClientTlsChannel.newBuilder(pipe.client, sslContext)
+                        .withBufferSizeAdvisor(advisor)
+                        .build();
+                ServerTlsChannel server = ServerTlsChannel.newBuilder(pipe.server, sslContext)
+                        .withBufferSizeAdvisor(advisor)
+                        .build()) {
+            MemoryPipe.handshake(client, server);
+            MemoryPipe.transfer(client, server, ByteBuffer.allocate(100_000), ByteBuffer.allocate(32 * 1024));
+        }
+    }
+}
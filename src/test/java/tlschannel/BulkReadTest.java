@@ -0,0 +1,97 @@
+package tlschannel;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import javax.net.ssl.SSLContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import tlschannel.helpers.MemoryPipe;
+import tlschannel.helpers.SslContextFactory;
+
+@TestInstance(Lifecycle.PER_CLASS)
+public class BulkReadTest {
+
+    private final SSLContext sslContext = new SslContextFactory().defaultContext();
+
+    private static final int dataSize = 256 * 1024;
+
+    /** Transfer data from client to server, returning the number of read operations needed by the server. */
+    private int readsForTransfer(int maxRecordsPerRead, int readSize) throws IOException {
+        MemoryPipe pipe = new MemoryPipe(2 * dataSize);
+        try (ClientTlsChannel client = ClientTlsChannel.newBuilder(pipe.client, sslContext).build();
+                ServerTlsChannel server = ServerTlsChannel.newBuilder(pipe.server, sslContext)
+                        .withMaxRecordsPerRead(maxRecordsPerRead)
+                        .build()) {
+            MemoryPipe.handshake(client, server);
+            byte[] data = new byte[dataSize];
+            new Random(0).nextBytes(data);
+            assertEquals(dataSize, client.write(ByteBuffer.wrap(data)));
+            ByteBuffer received = ByteBuffer.allocate(dataSize);
+            int reads = 0;
+            while (received.hasRemaining()) {
+                ByteBuffer slice = received.duplicate();
+                slice.limit(Math.min(slice.position() + readSize, slice.capacity()));
+                received.position(received.position() + server.read(slice));
+                reads++;
+            }
+            assertArrayEquals(data, received.array());
+            return reads;
+        }
+    }
+
+    @Test
+    public void testBulkReads() throws IOException {
+        int records = dataSize / (16 * 1024);
+        assertEquals(records, readsForTransfer(1, dataSize));
+        int bulkReads = readsForTransfer(16, dataSize);
+        // the first reads are smaller, as the buffer grows
+        assertTrue(bulkReads <= 5, "too many reads: " + bulkReads);
+    }
+
+    @Test
+    public void testSmallDestination() throws IOException {
+        // records that do not fit in the destination go through the internal buffer
+        assertTrue(readsForTransfer(16, 1000) >= dataSize / 1000);
+        assertTrue(readsForTransfer(16, 20_000) >= dataSize / 20_000);
+    }
+
+    @Test
+    public void testCloseAfterData() throws IOException {
+        MemoryPipe pipe = new MemoryPipe();
+        ClientTlsChannel client = ClientTlsChannel.newBuilder(pipe.client, sslContext).build();
+        ServerTlsChannel server = ServerTlsChannel.newBuilder(pipe.server, sslContext)
+                .withMaxRecordsPerRead(4)
+                .build();
+        MemoryPipe.handshake(client, server);
+        byte[] data = new byte[2_000];
+        new Random(0).nextBytes(data);
+        // small records, so that the close_notify is buffered together with them
+        for (int i = 0; i < data.length; i += 500) {
+            assertEquals(500, client.write(ByteBuffer.wrap(data, i, 500)));
+        }
+        client.close();
+        // room for a whole record after the data, so that the close_notify is unwrapped in the same read
+        ByteBuffer received = ByteBuffer.allocate(data.length + 32 * 1024);
+        int total = 0;
+        while (total < data.length) {
+            int c = server.read(received);
+            // the data must be returned before the end of stream
+            assertTrue(c > 0);
+            total += c;
+        }
+        assertEquals(data.length, received.position());
+        assertEquals(-1, server.read(received));
+        assertTrue(server.shutdownReceived());
+        byte[] receivedData = new byte[data.length];
+        received.flip();
+        received.get(receivedData);
+        assertArrayEquals(data, receivedData);
+        server.close();
+    }
+}
@@ -0,0 +1,182 @@
+package tlschannel;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+import javax.net.ssl.SSLContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import tlschannel.async.AsynchronousTlsChannel;
+import tlschannel.async.AsynchronousTlsChannelGroup;
+import tlschannel.helpers.MemoryPipe;
+import tlschannel.helpers.SslContextFactory;
+
+@TestInstance(Lifecycle.PER_CLASS)
+public class CorkingTest {
+
+    private final SSLContext sslContext = new SslContextFactory().defaultContext();
+
+    private static final int messageSize = 40;
+
+    /** Counts the write operations done on the underlying channel. */
+    private static class CountingChannel implements ByteChannel {
+        final ByteChannel impl;
+        int writes = 0;
+
+        CountingChannel(ByteChannel impl) {
+            this.impl = impl;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return impl.read(dst);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            writes++;
+            return impl.write(src);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return impl.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            impl.close();
+        }
+    }
+
+    private static class Pair {
+        final CountingChannel rawClient;
+        final ClientTlsChannel client;
+        final ServerTlsChannel server;
+
+        Pair(CountingChannel rawClient, ClientTlsChannel client, ServerTlsChannel server) {
+            this.rawClient = rawClient;
+            this.client = client;
+            this.server = server;
+        }
+    }
+
+    private Pair connect(UnaryOperator<ClientTlsChannel.Builder> config) throws IOException {
+        MemoryPipe pipe = new MemoryPipe(1024 * 1024);
+        CountingChannel rawClient = new CountingChannel(pipe.client);
+        ClientTlsChannel client = config.apply(ClientTlsChannel.newBuilder(rawClient, sslContext)).build();
+        ServerTlsChannel server = ServerTlsChannel.newBuilder(pipe.server, sslContext).build();
+        MemoryPipe.handshake(client, server);
+        rawClient.writes = 0;
+        return new Pair(rawClient, client, server);
+    }
+
+    private static byte[] message(int index) {
+        byte[] ret = new byte[messageSize];
+        for (int i = 0; i < messageSize; i++) {
+            ret[i] = (byte) (index + i);
+        }
+        return ret;
+    }
+
+    private static void writeMessages(TlsChannel channel, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            ByteBuffer buffer = ByteBuffer.wrap(message(i));
+            assertEquals(messageSize, channel.write(buffer));
+        }
+    }
+
+    private static void readMessages(TlsChannel channel, int count) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(count * messageSize);
+        while (buffer.hasRemaining()) {
+            channel.read(buffer);
+        }
+        buffer.flip();
+        for (int i = 0; i < count; i++) {
+            byte[] message = new byte[messageSize];
+            buffer.get(message);
+            assertArrayEquals(message(i), message);
+        }
+    }
+
+    @Test
+    public void testCoalescing() throws IOException {
+        int messages = 1000;
+
+        Pair uncorked = connect(b -> b);
+        writeMessages(uncorked.client, messages);
+        readMessages(uncorked.server, messages);
+        assertEquals(messages, uncorked.rawClient.writes);
+
+        Pair corked = connect(b -> b.withWriteCorking(true));
+        writeMessages(corked.client, messages);
+        corked.client.flush();
+        readMessages(corked.server, messages);
+        int expectedRecords = (messages * messageSize + 16 * 1024 - 1) / (16 * 1024);
+        assertEquals(expectedRecords, corked.rawClient.writes);
+    }
+
+    @Test
+    public void testNoFlushWithoutThreshold() throws IOException {
+        Pair pair = connect(b -> b.withWriteCorking(true));
+        writeMessages(pair.client, 10);
+        assertEquals(0, pair.rawClient.writes);
+        assertThrows(NeedsReadException.class, () -> pair.server.read(ByteBuffer.allocate(10)));
+        pair.client.flush();
+        readMessages(pair.server, 10);
+    }
+
+    @Test
+    public void testThreshold() throws IOException {
+        Pair pair = connect(b -> b.withWriteCorking(true).withCorkingFlushThreshold(messageSize * 5));
+        writeMessages(pair.client, 5);
+        assertEquals(1, pair.rawClient.writes);
+        readMessages(pair.server, 5);
+    }
+
+    @Test
+    public void testDelay() throws IOException {
+        Pair pair = connect(b -> b.withWriteCorking(true).withCorkingFlushDelay(0, TimeUnit.MILLISECONDS));
+        writeMessages(pair.client, 3);
+        assertEquals(3, pair.rawClient.writes);
+        readMessages(pair.server, 3);
+    }
+
+    @Test
+    public void testCloseFlushes() throws IOException {
+        Pair pair = connect(b -> b.withWriteCorking(true));
+        writeMessages(pair.client, 10);
+        pair.client.close();
+        readMessages(pair.server, 10);
+        assertEquals(-1, pair.server.read(ByteBuffer.allocate(10)));
+        assertTrue(pair.server.shutdownReceived());
+        assertEquals(0, pair.client.getPlainBufferAllocator().currentAllocation());
+    }
+
+    @Test
+    public void testInvalidConfiguration() throws IOException {
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> ClientTlsChannel.newBuilder(new MemoryPipe().client, sslContext)
+                        .withCorkingFlushDelay(-1, TimeUnit.MILLISECONDS));
+        AsynchronousTlsChannelGroup group = new AsynchronousTlsChannelGroup();
+        try (SocketChannel socket = SocketChannel.open()) {
+            socket.configureBlocking(false);
+            ClientTlsChannel client = ClientTlsChannel.newBuilder(socket, sslContext)
+                    .withWriteCorking(true)
+                    .build();
+            assertThrows(IllegalArgumentException.class, () -> new AsynchronousTlsChannel(group, client, socket));
+        } finally {
+            group.shutdown();
+        }
+    }
+}
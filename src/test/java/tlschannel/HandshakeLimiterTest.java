@@ -0,0 +1,91 @@
+package tlschannel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLHandshakeException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import tlschannel.helpers.MemoryPipe;
+import tlschannel.helpers.SslContextFactory;
+
+@TestInstance(Lifecycle.PER_CLASS)
+public class HandshakeLimiterTest {
+
+    private final SSLContext sslContext = new SslContextFactory().defaultContext();
+
+    @Test
+    public void testAdmissionAndQueue() {
+        AtomicInteger rejections = new AtomicInteger();
+        HandshakeLimiter limiter = new HandshakeLimiter(1, 1, 1, TimeUnit.MINUTES, rejections::incrementAndGet);
+        HandshakeLimiter.Permit first = limiter.request();
+        HandshakeLimiter.Permit second = limiter.request();
+        HandshakeLimiter.Permit third = limiter.request();
+        assertTrue(first.admission().isDone());
+        assertFalse(second.admission().isDone());
+        // the queue is full
+        assertTrue(third.admission().isCompletedExceptionally());
+        assertEquals(1, rejections.get());
+        first.release();
+        assertTrue(second.admission().isDone());
+        assertFalse(second.admission().isCompletedExceptionally());
+        // releasing twice is harmless
+        first.release();
+        assertEquals(1, limiter.getInFlightCount());
+        second.release();
+        assertEquals(0, limiter.getInFlightCount());
+        assertEquals(2, limiter.getAdmittedCount());
+        assertEquals(1, limiter.getQueuedCount());
+        assertEquals(1, limiter.getRejectedCount());
+    }
+
+    @Test
+    public void testQueueTime() throws IOException {
+        HandshakeLimiter limiter = new HandshakeLimiter(1, 1, 10, TimeUnit.MILLISECONDS);
+        HandshakeLimiter.Permit first = limiter.request();
+        first.await();
+        HandshakeLimiter.Permit second = limiter.request();
+        assertThrows(SSLHandshakeException.class, second::await);
+        assertEquals(1, limiter.getRejectedCount());
+        first.release();
+        assertEquals(0, limiter.getQueueSize());
+    }
+
+    @Test
+    public void testChannels() throws IOException {
+        HandshakeLimiter limiter = new HandshakeLimiter(2, 0, 0, TimeUnit.MILLISECONDS);
+        handshake(limiter);
+        // permits are released when handshakes finish
+        handshake(limiter);
+        assertEquals(0, limiter.getInFlightCount());
+        assertEquals(4, limiter.getAdmittedCount());
+    }
+
+    @Test
+    public void testRejectedChannel() throws IOException {
+        HandshakeLimiter limiter = new HandshakeLimiter(1, 0, 0, TimeUnit.MILLISECONDS);
+        assertThrows(SSLHandshakeException.class, () -> handshake(limiter));
+        assertEquals(1, limiter.getRejectedCount());
+        // permits are released when channels are closed
+        assertEquals(0, limiter.getInFlightCount());
+    }
+
+    private void handshake(HandshakeLimiter limiter) throws IOException {
+        MemoryPipe pipe = new MemoryPipe();
+        try (ClientTlsChannel client = ClientTlsChannel.newBuilder(pipe.client, sslContext)
+                        .withHandshakeLimiter(limiter)
+                        .build();
+                ServerTlsChannel server = ServerTlsChannel.newBuilder(pipe.server, sslContext)
+                        .withHandshakeLimiter(limiter)
+                        .build()) {
+            MemoryPipe.handshake(client, server);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package tlschannel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import javax.net.ssl.SSLContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import tlschannel.helpers.MemoryPipe;
+import tlschannel.helpers.SslContextFactory;
+
+@TestInstance(Lifecycle.PER_CLASS)
+public class InterestOpsTest {
+
+    private final SSLContext sslContext = new SslContextFactory().defaultContext();
+
+    @Test
+    public void testInterestOps() throws IOException {
+        MemoryPipe pipe = new MemoryPipe();
+        try (ClientTlsChannel client = ClientTlsChannel.newBuilder(pipe.client, sslContext).build();
+                ServerTlsChannel server = ServerTlsChannel.newBuilder(pipe.server, sslContext).build()) {
+            // during the handshake, both operations can need both
+            assertEquals(SelectionKey.OP_READ | SelectionKey.OP_WRITE, client.readInterestOps());
+            assertEquals(SelectionKey.OP_READ | SelectionKey.OP_WRITE, client.writeInterestOps());
+            // the server starts by reading
+            assertEquals(SelectionKey.OP_READ, server.readInterestOps());
+            MemoryPipe.handshake(client, server);
+
+            assertEquals(SelectionKey.OP_READ, client.readInterestOps());
+            assertEquals(SelectionKey.OP_WRITE, client.writeInterestOps());
+
+            ByteBuffer data = ByteBuffer.allocate(100);
+            server.write(data);
+            assertEquals(0, data.remaining());
+            ByteBuffer small = ByteBuffer.allocate(10);
+            assertEquals(10, client.read(small));
+            // the rest of the record is already decrypted
+            assertEquals(0, client.readInterestOps());
+            ByteBuffer rest = ByteBuffer.allocate(100);
+            assertEquals(90, client.read(rest));
+            assertEquals(SelectionKey.OP_READ, client.readInterestOps());
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package tlschannel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import javax.net.ssl.SSLContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import tlschannel.helpers.MemoryPipe;
+import tlschannel.helpers.SslContextFactory;
+
+@TestInstance(Lifecycle.PER_CLASS)
+public class LeaseTest {
+
+    private final SSLContext sslContext = new SslContextFactory().defaultContext();
+
+    private static class Pair {
+        final ClientTlsChannel client;
+        final ServerTlsChannel server;
+
+        Pair(ClientTlsChannel client, ServerTlsChannel server) {
+            this.client = client;
+            this.server = server;
+        }
+    }
+
+    private Pair connect() throws IOException {
+        MemoryPipe pipe = new MemoryPipe();
+        ClientTlsChannel client = ClientTlsChannel.newBuilder(pipe.client, sslContext).build();
+        ServerTlsChannel server = ServerTlsChannel.newBuilder(pipe.server, sslContext).build();
+        MemoryPipe.handshake(client, server);
+        return new Pair(client, server);
+    }
+
+    private static void send(TlsChannel channel, ByteBuffer data) throws IOException {
+        // the pipe is big enough for all the data used in these tests
+        channel.write(data);
+        assertEquals(0, data.remaining());
+    }
+
+    private static ByteBuffer lease(TlsChannel channel) throws IOException {
+        while (true) {
+            try {
+                return channel.readLease();
+            } catch (NeedsReadException e) {
+                // retry, the peer already wrote everything
+            }
+        }
+    }
+
+    @Test
+    public void testPartialConsumption() throws IOException {
+        Pair pair = connect();
+        int size = 30_000;
+        ByteBuffer data = ByteBuffer.allocate(size);
+        for (int i = 0; i < size; i++) {
+            data.put((byte) i);
+        }
+        data.flip();
+        send(pair.client, data);
+        int received = 0;
+        while (received < size) {
+            ByteBuffer lease = lease(pair.server);
+            assertTrue(lease.isReadOnly());
+            assertTrue(lease.hasRemaining());
+            // consume only some bytes, the rest must be returned again
+            int toConsume = Math.min(lease.remaining(), 1000);
+            for (int i = 0; i < toConsume; i++) {
+                assertEquals((byte) (received + i), lease.get());
+            }
+            received += toConsume;
+            pair.server.releaseLease(lease);
+        }
+        assertEquals(size, received);
+        pair.client.close();
+        pair.server.close();
+    }
+
+    @Test
+    public void testMixedWithRead() throws IOException {
+        Pair pair = connect();
+        ByteBuffer data = ByteBuffer.wrap(new byte[] {1, 2, 3, 4});
+        send(pair.client, data);
+        ByteBuffer lease = lease(pair.server);
+        assertEquals(4, lease.remaining());
+        lease.get();
+        pair.server.releaseLease(lease);
+        ByteBuffer dst = ByteBuffer.allocate(10);
+        assertEquals(3, pair.server.read(dst));
+        assertEquals(2, dst.get(0));
+        pair.client.close();
+        pair.server.close();
+    }
+
+    @Test
+    public void testInvalidUsage() throws IOException {
+        Pair pair = connect();
+        send(pair.client, ByteBuffer.wrap(new byte[] {1}));
+        ByteBuffer lease = lease(pair.server);
+        assertThrows(IllegalStateException.class, () -> pair.server.read(ByteBuffer.allocate(10)));
+        assertThrows(IllegalStateException.class, () -> pair.server.readLease());
+        assertThrows(IllegalArgumentException.class, () -> pair.server.releaseLease(lease.duplicate()));
+        pair.server.releaseLease(lease);
+        assertThrows(IllegalArgumentException.class, () -> pair.server.releaseLease(lease));
+        pair.client.close();
+        pair.server.close();
+    }
+
+    @Test
+    public void testEndOfStream() throws IOException {
+        Pair pair = connect();
+        pair.client.close();
+        assertNull(pair.server.readLease());
+        pair.server.close();
+    }
+
+    @Test
+    public void testCloseWhileLeased() throws IOException {
+        Pair pair = connect();
+        send(pair.client, ByteBuffer.wrap(new byte[] {1}));
+        ByteBuffer lease = lease(pair.server);
+        assertNotNull(lease);
+        pair.server.close();
+        // the buffer cannot be freed while leased
+        assertEquals(1, lease.get(0));
+        pair.server.releaseLease(lease);
+        assertEquals(0, pair.server.getPlainBufferAllocator().currentAllocation());
+        pair.client.close();
+    }
+}
@@ -0,0 +1,97 @@
+package tlschannel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import tlschannel.impl.TlsChannelImpl;
+
+@TestInstance(Lifecycle.PER_CLASS)
+public class PooledBufferAllocatorTest {
+
+    @Test
+    public void testReuse() {
+        TrackingAllocator underlying = new TrackingAllocator(new HeapBufferAllocator());
+        PooledBufferAllocator allocator = new PooledBufferAllocator(underlying);
+        ByteBuffer first = allocator.allocate(TlsChannelImpl.buffersInitialSize);
+        first.put((byte) 1);
+        allocator.free(first);
+        ByteBuffer second = allocator.allocate(TlsChannelImpl.buffersInitialSize);
+        assertSame(first, second);
+        assertEquals(0, second.position());
+        assertEquals(second.capacity(), second.limit());
+        assertEquals(1, underlying.buffersAllocated());
+    }
+
+    @Test
+    public void testSizeClasses() {
+        PooledBufferAllocator allocator = new PooledBufferAllocator(new HeapBufferAllocator());
+        int[] sizeClasses = PooledBufferAllocator.sizeClasses();
+        for (int size : sizeClasses) {
+            ByteBuffer buffer = allocator.allocate(size);
+            assertEquals(size, buffer.capacity());
+            allocator.free(buffer);
+            assertSame(buffer, allocator.allocate(size));
+        }
+        assertEquals(TlsChannelImpl.buffersInitialSize, sizeClasses[0]);
+        assertEquals(TlsChannelImpl.maxTlsPacketSize, sizeClasses[sizeClasses.length - 1]);
+    }
+
+    @Test
+    public void testUnpooledSize() {
+        TrackingAllocator underlying = new TrackingAllocator(new HeapBufferAllocator());
+        PooledBufferAllocator allocator = new PooledBufferAllocator(underlying);
+        ByteBuffer buffer = allocator.allocate(1000);
+        assertEquals(1000, buffer.capacity());
+        allocator.free(buffer);
+        assertEquals(1, underlying.buffersDeallocated());
+        assertNotSame(buffer, allocator.allocate(1000));
+    }
+
+    @Test
+    public void testDepotBound() {
+        int magazineSize = 4;
+        int maxDepotMagazines = 2;
+        TrackingAllocator underlying = new TrackingAllocator(new HeapBufferAllocator());
+        PooledBufferAllocator allocator = new PooledBufferAllocator(underlying, magazineSize, maxDepotMagazines);
+        int total = magazineSize * (maxDepotMagazines + 2);
+        List<ByteBuffer> buffers = new ArrayList<>();
+        for (int i = 0; i < total; i++) {
+            buffers.add(allocator.allocate(TlsChannelImpl.buffersInitialSize));
+        }
+        for (ByteBuffer buffer : buffers) {
+            allocator.free(buffer);
+        }
+        assertEquals(maxDepotMagazines, allocator.depotMagazines());
+        // one magazine stays in the thread cache, the rest overflows to the underlying allocator
+        int kept = magazineSize * (maxDepotMagazines + 1);
+        assertEquals(total - kept, underlying.buffersDeallocated());
+    }
+
+    @Test
+    public void testCrossThread() throws InterruptedException {
+        int magazineSize = 4;
+        TrackingAllocator underlying = new TrackingAllocator(new HeapBufferAllocator());
+        PooledBufferAllocator allocator = new PooledBufferAllocator(underlying, magazineSize, 8);
+        List<ByteBuffer> buffers = new ArrayList<>();
+        for (int i = 0; i < magazineSize * 2; i++) {
+            buffers.add(allocator.allocate(TlsChannelImpl.buffersInitialSize));
+        }
+        // free from another thread, so the full magazine ends in the depot
+        Thread freer = new Thread(() -> buffers.forEach(allocator::free));
+        freer.start();
+        freer.join();
+        assertEquals(1, allocator.depotMagazines());
+        for (int i = 0; i < magazineSize; i++) {
+            allocator.allocate(TlsChannelImpl.buffersInitialSize);
+        }
+        assertEquals(0, allocator.depotMagazines());
+        assertEquals(magazineSize * 2, underlying.buffersAllocated());
+    }
+}
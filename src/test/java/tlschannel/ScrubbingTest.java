@@ -0,0 +1,148 @@
+package tlschannel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.net.ssl.SSLContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import tlschannel.helpers.MemoryPipe;
+import tlschannel.helpers.SslContextFactory;
+
+@TestInstance(Lifecycle.PER_CLASS)
+public class ScrubbingTest {
+
+    private final SSLContext sslContext = new SslContextFactory().defaultContext();
+
+    private static final byte mark = 0x55;
+    private static final int dataSize = 10_000;
+    private static final int readSize = 100;
+
+    /** Keeps all the buffers that it allocated, to inspect them after they are used or freed. */
+    private static class RecordingAllocator implements BufferAllocator {
+        final BufferAllocator impl;
+        final List<ByteBuffer> allocated = new ArrayList<>();
+        final List<ByteBuffer> freed = new ArrayList<>();
+
+        RecordingAllocator(BufferAllocator impl) {
+            this.impl = impl;
+        }
+
+        @Override
+        public ByteBuffer allocate(int size) {
+            ByteBuffer buffer = impl.allocate(size);
+            allocated.add(buffer);
+            return buffer;
+        }
+
+        @Override
+        public void free(ByteBuffer buffer) {
+            freed.add(buffer);
+            // do not free the memory, to be able to inspect it
+        }
+    }
+
+    private static int markedBytes(List<ByteBuffer> buffers) {
+        int count = 0;
+        for (ByteBuffer buffer : buffers) {
+            ByteBuffer whole = buffer.duplicate();
+            whole.clear();
+            for (int i = 0; i < whole.capacity(); i++) {
+                if (whole.get(i) == mark) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Send data from client to server, and read it on the server side with a buffer small enough to
+     * force the use of the internal plain buffer. Only half of the data is read before returning.
+     */
+    private static ServerTlsChannel sendAndReadHalf(
+            SSLContext sslContext, RecordingAllocator allocator, ScrubbingPolicy policy, boolean releaseBuffers)
+            throws IOException {
+        MemoryPipe pipe = new MemoryPipe();
+        ClientTlsChannel client = ClientTlsChannel.newBuilder(pipe.client, sslContext)
+                .withScrubbingPolicy(ScrubbingPolicy.Never)
+                .build();
+        ServerTlsChannel server = ServerTlsChannel.newBuilder(pipe.server, sslContext)
+                .withPlainBufferAllocator(allocator)
+                .withScrubbingPolicy(policy)
+                .withReleaseBuffers(releaseBuffers)
+                .build();
+        MemoryPipe.handshake(client, server);
+        byte[] data = new byte[dataSize];
+        Arrays.fill(data, mark);
+        assertEquals(dataSize, client.write(ByteBuffer.wrap(data)));
+        ByteBuffer dst = ByteBuffer.allocate(readSize);
+        int received = 0;
+        while (received < dataSize / 2) {
+            dst.clear();
+            try {
+                received += server.read(dst);
+            } catch (NeedsReadException e) {
+                // retry, the client already wrote everything
+            }
+        }
+        return server;
+    }
+
+    private static int pendingBytes(ServerTlsChannel server) throws IOException {
+        ByteBuffer rest = ByteBuffer.allocate(dataSize);
+        while (rest.position() < dataSize / 2) {
+            server.read(rest);
+        }
+        return rest.position();
+    }
+
+    @Test
+    public void testAlways() throws IOException {
+        RecordingAllocator allocator = new RecordingAllocator(new HeapBufferAllocator());
+        ServerTlsChannel server = sendAndReadHalf(sslContext, allocator, ScrubbingPolicy.Always, false);
+        // consumed bytes are zeroed immediately, only the pending ones remain
+        int marked = markedBytes(allocator.allocated);
+        assertEquals(pendingBytes(server), marked);
+        server.close();
+        assertEquals(0, markedBytes(allocator.allocated));
+    }
+
+    @Test
+    public void testNever() throws IOException {
+        RecordingAllocator allocator = new RecordingAllocator(new HeapBufferAllocator());
+        ServerTlsChannel server = sendAndReadHalf(sslContext, allocator, ScrubbingPolicy.Never, true);
+        pendingBytes(server);
+        server.close();
+        assertTrue(markedBytes(allocator.freed) > 0);
+    }
+
+    @Test
+    public void testOnRelease() throws IOException {
+        RecordingAllocator allocator = new RecordingAllocator(new DirectBufferAllocator());
+        ServerTlsChannel server = sendAndReadHalf(sslContext, allocator, ScrubbingPolicy.OnRelease, true);
+        pendingBytes(server);
+        // buffers are released opportunistically, when empty
+        assertTrue(allocator.freed.size() > 0);
+        assertEquals(0, markedBytes(allocator.freed));
+        server.close();
+        assertEquals(0, markedBytes(allocator.freed));
+    }
+
+    @Test
+    public void testOnClose() throws IOException {
+        RecordingAllocator allocator = new RecordingAllocator(new DirectBufferAllocator());
+        ServerTlsChannel server = sendAndReadHalf(sslContext, allocator, ScrubbingPolicy.OnClose, false);
+        pendingBytes(server);
+        // buffers in use are not zeroed
+        assertTrue(markedBytes(allocator.allocated) > 0);
+        server.close();
+        assertEquals(0, markedBytes(allocator.allocated));
+    }
+}
@@ -0,0 +1,57 @@
+package tlschannel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import javax.net.ssl.SSLContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import tlschannel.helpers.MemoryPipe;
+import tlschannel.helpers.SslContextFactory;
+
+@TestInstance(Lifecycle.PER_CLASS)
+public class StatsTest {
+
+    private final SSLContext sslContext = new SslContextFactory().defaultContext();
+
+    private static final int messageSize = 10_000;
+    private static final int messageCount = 10;
+
+    @Test
+    public void testStats() throws IOException {
+        MemoryPipe pipe = new MemoryPipe();
+        try (ClientTlsChannel client = ClientTlsChannel.newBuilder(pipe.client, sslContext).build();
+                ServerTlsChannel server = ServerTlsChannel.newBuilder(pipe.server, sslContext).build()) {
+            MemoryPipe.handshake(client, server);
+            TlsChannelStats clientStats = client.getStats();
+            TlsChannelStats serverStats = server.getStats();
+            // the handshake moves records, but no plain data
+            assertTrue(clientStats.getRecordsWrapped() > 0);
+            assertTrue(serverStats.getRecordsUnwrapped() > 0);
+            assertEquals(0, clientStats.getPlainBytesWritten());
+            // the server tried to read before the client wrote
+            assertTrue(serverStats.getNeedsReadCount() > 0);
+
+            long recordsWrappedBefore = clientStats.getRecordsWrapped();
+            long plainBytesReadBefore = serverStats.getPlainBytesRead();
+            long encryptedBytesWrittenBefore = clientStats.getEncryptedBytesWritten();
+            ByteBuffer receiveBuffer = ByteBuffer.allocate(messageSize);
+            for (int i = 0; i < messageCount; i++) {
+                MemoryPipe.transfer(client, server, ByteBuffer.allocate(messageSize), receiveBuffer);
+            }
+            long totalBytes = (long) messageSize * messageCount;
+            assertEquals(totalBytes, clientStats.getPlainBytesWritten());
+            assertEquals(totalBytes, serverStats.getPlainBytesRead() - plainBytesReadBefore);
+            // each message fits in a record
+            assertEquals(messageCount, clientStats.getRecordsWrapped() - recordsWrappedBefore);
+            // encryption adds overhead to every record
+            assertTrue(clientStats.getEncryptedBytesWritten() - encryptedBytesWrittenBefore > totalBytes);
+            assertTrue(serverStats.getUnwrapCount() >= serverStats.getRecordsUnwrapped());
+            assertTrue(clientStats.getWrapNanos() > 0);
+            assertTrue(serverStats.getUnwrapNanos() > 0);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package tlschannel;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import javax.net.ssl.SSLContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import tlschannel.helpers.MemoryPipe;
+import tlschannel.helpers.SslContextFactory;
+
+@TestInstance(Lifecycle.PER_CLASS)
+public class WriteBatchingTest {
+
+    private final SSLContext sslContext = new SslContextFactory().defaultContext();
+
+    private static final int dataSize = 1024 * 1024;
+
+    private long writesForTransfer(int maxRecordsPerWrite) throws IOException {
+        MemoryPipe pipe = new MemoryPipe(2 * dataSize);
+        try (ClientTlsChannel client = ClientTlsChannel.newBuilder(pipe.client, sslContext)
+                        .withMaxRecordsPerWrite(maxRecordsPerWrite)
+                        .build();
+                ServerTlsChannel server = ServerTlsChannel.newBuilder(pipe.server, sslContext).build()) {
+            MemoryPipe.handshake(client, server);
+            long writesBefore = pipe.clientWrites();
+            byte[] data = new byte[dataSize];
+            new Random(0).nextBytes(data);
+            assertEquals(dataSize, client.write(ByteBuffer.wrap(data)));
+            long writes = pipe.clientWrites() - writesBefore;
+            ByteBuffer received = ByteBuffer.allocate(dataSize);
+            while (received.hasRemaining()) {
+                server.read(received);
+            }
+            assertArrayEquals(data, received.array());
+            return writes;
+        }
+    }
+
+    @Test
+    public void testBatching() throws IOException {
+        long unbatched = writesForTransfer(1);
+        long batched = writesForTransfer(8);
+        int records = dataSize / (16 * 1024);
+        assertEquals(records, unbatched);
+        // the first writes are smaller, as the buffer grows
+        assertTrue(batched <= records / 8 + 4, "too many writes: " + batched);
+    }
+}
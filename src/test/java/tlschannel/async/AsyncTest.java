@@ -1,13 +1,33 @@
 package tlschannel.async;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static tlschannel.helpers.SocketPairFactory.NULL_CIPHER;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLHandshakeException;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import org.junit.jupiter.api.TestInstance.Lifecycle;
+import tlschannel.ClientTlsChannel;
+import tlschannel.HandshakeLimiter;
 import tlschannel.helpers.AsyncLoops;
 import tlschannel.helpers.SocketGroups.AsyncSocketPair;
 import tlschannel.helpers.SocketPairFactory;
@@ -85,4 +105,268 @@ public class AsyncTest implements AsyncTestBase {
         report.print();
         printChannelGroupStatus(channelGroup);
     }
+
+    // real engine - several selectors
+    @Test
+    public void testShardedSelectors() throws Throwable {
+        System.out.println("testShardedSelectors():");
+        AsynchronousTlsChannelGroup channelGroup =
+                AsynchronousTlsChannelGroup.newBuilder().withSelectorCount(4).build();
+        int dataSize = 2 * 1024 * 1024;
+        System.out.printf("data size: %d\n", dataSize);
+        List<AsyncSocketPair> socketPairs =
+                factory.asyncN(Optional.empty(), channelGroup, socketPairCount, true, false);
+        AsyncLoops.Report report = AsyncLoops.loop(socketPairs, dataSize);
+
+        shutdownChannelGroup(channelGroup);
+        assertChannelGroupConsistency(channelGroup);
+        assertEquals(0, channelGroup.getFailedReadCount());
+        assertEquals(0, channelGroup.getFailedWriteCount());
+
+        assertEquals(4, channelGroup.getShards().size());
+        long startedReads = 0;
+        for (AsynchronousTlsChannelGroup.Shard shard : channelGroup.getShards()) {
+            // sockets are spread evenly, so all shards must have been used
+            assertTrue(shard.getStartedReadCount() + shard.getStartedWriteCount() > 0);
+            startedReads += shard.getStartedReadCount();
+        }
+        assertEquals(channelGroup.getStartedReadCount(), startedReads);
+
+        report.print();
+        printChannelGroupStatus(channelGroup);
+    }
+
+    // an idle group must not wake up periodically, even with reads waiting in all the sockets, as servers do
+    @Test
+    public void testIdleSelectorBlocks() throws Throwable {
+        AsynchronousTlsChannelGroup channelGroup = new AsynchronousTlsChannelGroup();
+        List<AsyncSocketPair> socketPairs =
+                factory.asyncN(Optional.of(NULL_CIPHER), channelGroup, socketPairCount, true, false);
+        for (AsyncSocketPair pair : socketPairs) {
+            pair.client.external.read(ByteBuffer.allocate(1));
+            pair.server.external.read(ByteBuffer.allocate(1));
+        }
+        // let registrations settle
+        Thread.sleep(100);
+        long selections = channelGroup.getSelectionCount();
+        Thread.sleep(500);
+        assertEquals(selections, channelGroup.getSelectionCount());
+        for (AsyncSocketPair pair : socketPairs) {
+            closePair(pair);
+        }
+        shutdownChannelGroup(channelGroup);
+        assertChannelGroupConsistency(channelGroup);
+        // the waiting reads fail when their sockets are closed, or see the end of stream if the peer
+        // closed first
+        assertEquals(
+                2 * socketPairCount, channelGroup.getFailedReadCount() + channelGroup.getSuccessfulReadCount());
+    }
+
+    // real engine - I/O in the selector thread, with channels that run tasks and channels that delegate them
+    @Test
+    public void testInlineIo() throws Throwable {
+        System.out.println("testInlineIo():");
+        AsynchronousTlsChannelGroup channelGroup =
+                AsynchronousTlsChannelGroup.newBuilder().withInlineIo(true).build();
+        int dataSize = 2 * 1024 * 1024;
+        System.out.printf("data size: %d\n", dataSize);
+        List<AsyncSocketPair> socketPairs = new ArrayList<>();
+        socketPairs.addAll(factory.asyncN(Optional.empty(), channelGroup, socketPairCount / 2, true, false));
+        socketPairs.addAll(factory.asyncN(Optional.empty(), channelGroup, socketPairCount / 2, false, false));
+        AsyncLoops.Report report = AsyncLoops.loop(socketPairs, dataSize);
+
+        shutdownChannelGroup(channelGroup);
+        assertChannelGroupConsistency(channelGroup);
+        assertEquals(0, channelGroup.getFailedReadCount());
+        assertEquals(0, channelGroup.getFailedWriteCount());
+        assertEquals(0, channelGroup.getCancelledReadCount());
+        assertEquals(0, channelGroup.getCancelledWriteCount());
+
+        report.print();
+        printChannelGroupStatus(channelGroup);
+    }
+
+    // real engine - work-stealing executor for I/O and a separate one for handlers
+    @Test
+    public void testCustomExecutors() throws Throwable {
+        System.out.println("testCustomExecutors():");
+        ExecutorService executor = new ForkJoinPool(2);
+        ExecutorService handlerExecutor = Executors.newFixedThreadPool(2);
+        AsynchronousTlsChannelGroup channelGroup = AsynchronousTlsChannelGroup.newBuilder()
+                .withExecutor(executor)
+                .withHandlerExecutor(handlerExecutor)
+                .build();
+        int dataSize = 2 * 1024 * 1024;
+        System.out.printf("data size: %d\n", dataSize);
+        List<AsyncSocketPair> socketPairs =
+                factory.asyncN(Optional.empty(), channelGroup, socketPairCount, true, false);
+        AsyncLoops.Report report = AsyncLoops.loop(socketPairs, dataSize);
+
+        shutdownChannelGroup(channelGroup);
+        assertChannelGroupConsistency(channelGroup);
+        assertEquals(0, channelGroup.getFailedReadCount());
+        assertEquals(0, channelGroup.getFailedWriteCount());
+        // the group owns the executors
+        assertTrue(executor.isTerminated());
+        assertTrue(handlerExecutor.isTerminated());
+
+        report.print();
+        printChannelGroupStatus(channelGroup);
+    }
+
+    // null engine - handler executor that rejects tasks when busy, whose handlers still run
+    @Test
+    public void testRejectingHandlerExecutor() throws Throwable {
+        ExecutorService handlerExecutor = new ThreadPoolExecutor(
+                1, 1, 0, TimeUnit.MILLISECONDS, new SynchronousQueue<>(), new ThreadPoolExecutor.AbortPolicy());
+        AsynchronousTlsChannelGroup channelGroup = AsynchronousTlsChannelGroup.newBuilder()
+                .withInlineIo(true)
+                .withHandlerExecutor(handlerExecutor)
+                .build();
+        List<AsyncSocketPair> socketPairs =
+                factory.asyncN(Optional.of(NULL_CIPHER), channelGroup, socketPairCount, true, false);
+        CountDownLatch handled = new CountDownLatch(socketPairCount);
+        for (AsyncSocketPair pair : socketPairs) {
+            pair.server.external.read(ByteBuffer.allocate(1), null, new CompletionHandler<Integer, Void>() {
+                @Override
+                public void completed(Integer c, Void attach) {
+                    handled.countDown();
+                }
+
+                @Override
+                public void failed(Throwable e, Void attach) {}
+            });
+            pair.client.external.write(ByteBuffer.wrap(new byte[] {1}));
+        }
+        assertTrue(handled.await(10, TimeUnit.SECONDS));
+        for (AsyncSocketPair pair : socketPairs) {
+            closePair(pair);
+        }
+        shutdownChannelGroup(channelGroup);
+        assertChannelGroupConsistency(channelGroup);
+        assertEquals(socketPairCount, channelGroup.getSuccessfulReadCount());
+        assertEquals(0, channelGroup.getFailedReadCount());
+    }
+
+    // real engine - do not run tasks, all of them in a single handshake thread
+    @Test
+    public void testSingleHandshakeThread() throws Throwable {
+        System.out.println("testSingleHandshakeThread():");
+        AsynchronousTlsChannelGroup channelGroup =
+                AsynchronousTlsChannelGroup.newBuilder().withHandshakeThreadCount(1).build();
+        int dataSize = 2 * 1024 * 1024;
+        System.out.printf("data size: %d\n", dataSize);
+        List<AsyncSocketPair> socketPairs =
+                factory.asyncN(Optional.empty(), channelGroup, socketPairCount, false, false);
+        AsyncLoops.Report report = AsyncLoops.loop(socketPairs, dataSize);
+
+        shutdownChannelGroup(channelGroup);
+        assertChannelGroupConsistency(channelGroup);
+        assertEquals(0, channelGroup.getFailedReadCount());
+        assertEquals(0, channelGroup.getFailedWriteCount());
+
+        report.print();
+        printChannelGroupStatus(channelGroup);
+    }
+
+    // handshake limiter - queued sockets are admitted when permits are released
+    @Test
+    public void testHandshakeLimiterQueue() throws Throwable {
+        HandshakeLimiter limiter = new HandshakeLimiter(2, 2, 1, TimeUnit.MINUTES);
+        AsynchronousTlsChannelGroup channelGroup =
+                AsynchronousTlsChannelGroup.newBuilder().withHandshakeLimiter(limiter).build();
+        // the first pair takes all the permits, and keeps them while it does not complete any operation
+        AsyncSocketPair holder = factory.async(Optional.of(NULL_CIPHER), channelGroup, true, false);
+        AsyncSocketPair pair = factory.async(Optional.of(NULL_CIPHER), channelGroup, true, false);
+        assertEquals(2, limiter.getQueueSize());
+        Future<Integer> write = pair.client.external.write(ByteBuffer.wrap(new byte[] {1}));
+        Thread.sleep(100);
+        assertFalse(write.isDone());
+        closePair(holder);
+        assertEquals(1, write.get(10, TimeUnit.SECONDS));
+        assertEquals(1, pair.server.external.read(ByteBuffer.allocate(1)).get(10, TimeUnit.SECONDS));
+        closePair(pair);
+
+        shutdownChannelGroup(channelGroup);
+        assertChannelGroupConsistency(channelGroup);
+        assertEquals(0, limiter.getInFlightCount());
+        assertEquals(4, limiter.getAdmittedCount());
+        assertEquals(2, limiter.getQueuedCount());
+        assertEquals(0, limiter.getRejectedCount());
+    }
+
+    // handshake limiter - the operations of rejected sockets fail
+    @Test
+    public void testHandshakeLimiterRejection() throws Throwable {
+        HandshakeLimiter limiter = new HandshakeLimiter(2, 0, 1, TimeUnit.MINUTES);
+        AsynchronousTlsChannelGroup channelGroup =
+                AsynchronousTlsChannelGroup.newBuilder().withHandshakeLimiter(limiter).build();
+        AsyncSocketPair holder = factory.async(Optional.of(NULL_CIPHER), channelGroup, true, false);
+        // the queue has no room, so both sockets are rejected immediately
+        AsyncSocketPair pair = factory.async(Optional.of(NULL_CIPHER), channelGroup, true, false);
+        assertEquals(2, limiter.getRejectedCount());
+        Future<Integer> write = pair.client.external.write(ByteBuffer.wrap(new byte[] {1}));
+        ExecutionException e = assertThrows(ExecutionException.class, () -> write.get(10, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof SSLHandshakeException);
+        closePair(holder);
+        closePair(pair);
+
+        shutdownChannelGroup(channelGroup);
+        assertChannelGroupConsistency(channelGroup);
+        assertEquals(0, limiter.getInFlightCount());
+        assertEquals(2, limiter.getAdmittedCount());
+        assertEquals(2, limiter.getRejectedCount());
+        assertEquals(1, channelGroup.getFailedWriteCount());
+    }
+
+    // handshake limiter - queued sockets are rejected after the maximum queue time, even if nothing else happens
+    @Test
+    public void testHandshakeLimiterQueueTime() throws Throwable {
+        HandshakeLimiter limiter = new HandshakeLimiter(2, 1, 50, TimeUnit.MILLISECONDS);
+        AsynchronousTlsChannelGroup channelGroup =
+                AsynchronousTlsChannelGroup.newBuilder().withHandshakeLimiter(limiter).build();
+        AsyncSocketPair holder = factory.async(Optional.of(NULL_CIPHER), channelGroup, true, false);
+        // the client is queued, and the server is rejected because the queue is full
+        AsyncSocketPair pair = factory.async(Optional.of(NULL_CIPHER), channelGroup, true, false);
+        assertEquals(1, limiter.getRejectedCount());
+        Future<Integer> write = pair.client.external.write(ByteBuffer.wrap(new byte[] {1}));
+        ExecutionException e = assertThrows(ExecutionException.class, () -> write.get(10, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof SSLHandshakeException);
+        assertEquals(2, limiter.getRejectedCount());
+        assertEquals(0, limiter.getQueueSize());
+        closePair(holder);
+        closePair(pair);
+
+        shutdownChannelGroup(channelGroup);
+        assertChannelGroupConsistency(channelGroup);
+        assertEquals(0, limiter.getInFlightCount());
+        assertEquals(2, limiter.getAdmittedCount());
+        assertEquals(2, limiter.getRejectedCount());
+    }
+
+    // handshake limiter - permits of sockets closed before their registration in the selector are released
+    @Test
+    public void testHandshakeLimiterCloseBeforeRegistration() throws Throwable {
+        HandshakeLimiter limiter = new HandshakeLimiter(socketPairCount, 0, 1, TimeUnit.MINUTES);
+        AsynchronousTlsChannelGroup channelGroup =
+                AsynchronousTlsChannelGroup.newBuilder().withHandshakeLimiter(limiter).build();
+        for (int i = 0; i < socketPairCount; i++) {
+            SocketChannel socket = SocketChannel.open();
+            socket.configureBlocking(false);
+            ClientTlsChannel tlsChannel = ClientTlsChannel.newBuilder(socket, factory.sslContext).build();
+            new AsynchronousTlsChannel(channelGroup, tlsChannel, socket);
+            // most sockets are closed before the selector thread registers them
+            socket.close();
+        }
+
+        shutdownChannelGroup(channelGroup);
+        assertChannelGroupConsistency(channelGroup);
+        assertEquals(socketPairCount, limiter.getAdmittedCount());
+        assertEquals(0, limiter.getInFlightCount());
+    }
+
+    private static void closePair(AsyncSocketPair pair) throws IOException {
+        pair.client.external.close();
+        pair.server.external.close();
+    }
 }
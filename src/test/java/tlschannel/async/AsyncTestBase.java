@@ -18,6 +18,10 @@ interface AsyncTestBase {
         System.out.printf("  successful write: %8d\n", channelGroup.getSuccessfulWriteCount());
         System.out.printf("  failed writes:    %8d\n", channelGroup.getFailedWriteCount());
         System.out.printf("  cancelled writes: %8d\n", channelGroup.getCancelledWriteCount());
+        System.out.printf("  read latency:     %s\n", channelGroup.getReadLatency());
+        System.out.printf("  write latency:    %s\n", channelGroup.getWriteLatency());
+        System.out.printf("  select time:      %s\n", channelGroup.getSelectTime());
+        System.out.printf("  dispatch time:    %s\n", channelGroup.getDispatchTime());
     }
 
     default void shutdownChannelGroup(AsynchronousTlsChannelGroup group) {
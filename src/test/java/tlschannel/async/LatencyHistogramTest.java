@@ -0,0 +1,65 @@
+package tlschannel.async;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+
+@TestInstance(Lifecycle.PER_CLASS)
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBuckets() {
+        long[] values = {0, 1, 7, 8, 9, 15, 16, 17, 1000, 123_456_789, Long.MAX_VALUE};
+        int previous = -1;
+        for (long value : values) {
+            int index = LatencyHistogram.bucketIndex(value);
+            assertTrue(index >= previous);
+            long upper = LatencyHistogram.bucketUpperBound(index);
+            assertTrue(upper >= value);
+            // relative error of at most 1/8
+            assertTrue(upper - value <= value / 8);
+            previous = index;
+        }
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.bucketUpperBound(LatencyHistogram.bucketIndex(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void testQuantiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(1_000_000, snapshot.getMaxNanos());
+        assertEquals(500_500, snapshot.getMeanNanos(), 0.1);
+        assertInRange(500_000, snapshot.getValueAtQuantile(0.5));
+        assertInRange(990_000, snapshot.getValueAtQuantile(0.99));
+        assertEquals(1_000_000, snapshot.getValueAtQuantile(1));
+        assertInRange(1000, snapshot.getValueAtQuantile(0));
+        assertThrows(IllegalArgumentException.class, () -> snapshot.getValueAtQuantile(1.5));
+    }
+
+    @Test
+    public void testMerge() {
+        LatencyHistogram a = new LatencyHistogram();
+        LatencyHistogram b = new LatencyHistogram();
+        a.record(100);
+        b.record(200);
+        b.record(-5);
+        LatencyHistogram.Snapshot merged = LatencyHistogram.Snapshot.empty.merge(a.snapshot()).merge(b.snapshot());
+        assertEquals(3, merged.getCount());
+        assertEquals(300, merged.getTotalNanos());
+        assertEquals(200, merged.getMaxNanos());
+        assertEquals(0, merged.getValueAtQuantile(0));
+        assertEquals(0, LatencyHistogram.Snapshot.empty.getValueAtQuantile(0.5));
+    }
+
+    private static void assertInRange(long expected, long actual) {
+        assertTrue(actual >= expected && actual <= expected + expected / 8, "value " + actual + " for " + expected);
+    }
+}
@@ -0,0 +1,132 @@
+package tlschannel.async;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+
+@TestInstance(Lifecycle.PER_CLASS)
+public class TimingWheelTest {
+
+    private static class RecordingTimeout extends TimingWheel.Timeout {
+        final long scheduledNanos = System.nanoTime();
+        final CountDownLatch latch;
+        volatile long expiredNanos;
+
+        RecordingTimeout(CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        @Override
+        void expire() {
+            expiredNanos = System.nanoTime();
+            latch.countDown();
+        }
+    }
+
+    private TimingWheel newWheel(int size) {
+        return new TimingWheel(runnable -> new Thread(runnable, "timing-wheel-test"), 1, TimeUnit.MILLISECONDS, size);
+    }
+
+    // timeouts never expire early, also when they are several turns away
+    @Test
+    public void testExpiration() throws InterruptedException {
+        TimingWheel wheel = newWheel(8);
+        try {
+            long[] delays = {0, 1, 3, 7, 8, 9, 20, 50};
+            CountDownLatch latch = new CountDownLatch(delays.length);
+            List<RecordingTimeout> timeouts = new ArrayList<>();
+            for (long delay : delays) {
+                RecordingTimeout timeout = new RecordingTimeout(latch);
+                timeouts.add(timeout);
+                wheel.schedule(timeout, delay, TimeUnit.MILLISECONDS);
+            }
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+            for (int i = 0; i < delays.length; i++) {
+                RecordingTimeout timeout = timeouts.get(i);
+                long elapsed = timeout.expiredNanos - timeout.scheduledNanos;
+                assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(delays[i]), "delay " + delays[i]);
+                assertFalse(timeout.cancelTimeout());
+            }
+            assertEquals(0, wheel.pendingCount());
+        } finally {
+            wheel.stop();
+        }
+    }
+
+    // cancelled timeouts do not expire
+    @Test
+    public void testCancellation() throws InterruptedException {
+        TimingWheel wheel = newWheel(16);
+        try {
+            CountDownLatch cancelledLatch = new CountDownLatch(100);
+            List<RecordingTimeout> cancelled = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                RecordingTimeout timeout = new RecordingTimeout(cancelledLatch);
+                cancelled.add(timeout);
+                wheel.schedule(timeout, 20 + i % 10, TimeUnit.MILLISECONDS);
+            }
+            for (RecordingTimeout timeout : cancelled) {
+                assertTrue(timeout.cancelTimeout());
+                assertFalse(timeout.cancelTimeout());
+            }
+            assertEquals(0, wheel.pendingCount());
+            // a later timeout, expiring after all the cancelled ones would have
+            CountDownLatch latch = new CountDownLatch(1);
+            wheel.schedule(new RecordingTimeout(latch), 50, TimeUnit.MILLISECONDS);
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+            assertEquals(100, cancelledLatch.getCount());
+        } finally {
+            wheel.stop();
+        }
+    }
+
+    // concurrent scheduling and cancellation, with every timeout either cancelled or expired exactly once
+    @Test
+    public void testConcurrentScheduling() throws InterruptedException {
+        TimingWheel wheel = newWheel(64);
+        try {
+            int threadCount = 4;
+            int timeoutsPerThread = 10_000;
+            AtomicInteger expirations = new AtomicInteger();
+            AtomicInteger cancellations = new AtomicInteger();
+            CountDownLatch done = new CountDownLatch(threadCount * timeoutsPerThread);
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < threadCount; t++) {
+                threads.add(new Thread(() -> {
+                    for (int i = 0; i < timeoutsPerThread; i++) {
+                        TimingWheel.Timeout timeout = new TimingWheel.Timeout() {
+                            @Override
+                            void expire() {
+                                expirations.incrementAndGet();
+                                done.countDown();
+                            }
+                        };
+                        wheel.schedule(timeout, i % 5, TimeUnit.MILLISECONDS);
+                        if (i % 2 == 0 && timeout.cancelTimeout()) {
+                            cancellations.incrementAndGet();
+                            done.countDown();
+                        }
+                    }
+                }));
+            }
+            threads.forEach(Thread::start);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertEquals(threadCount * timeoutsPerThread, expirations.get() + cancellations.get());
+            assertEquals(0, wheel.pendingCount());
+        } finally {
+            wheel.stop();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package tlschannel.helpers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ClosedChannelException;
+import tlschannel.NeedsReadException;
+import tlschannel.NeedsWriteException;
+import tlschannel.TlsChannel;
+
+/**
+ * A pair of connected in-memory channels, with non-blocking semantics: reads return 0 when no data is available
+ * and writes return 0 when the buffer is full. Not thread-safe: both ends are meant to be driven from the same
+ * thread, using the pump methods in this class. Useful to measure the cost of TLS without any system call.
+ */
+public class MemoryPipe {
+
+    private final ByteBuffer clientToServer;
+    private final ByteBuffer serverToClient;
+
+    private boolean clientClosed = false;
+    private boolean serverClosed = false;
+
+    private long clientWrites = 0;
+    private long serverWrites = 0;
+
+    public final ByteChannel client = new End(true);
+    public final ByteChannel server = new End(false);
+
+    public MemoryPipe(int bufferSize) {
+        this.clientToServer = ByteBuffer.allocate(bufferSize);
+        this.serverToClient = ByteBuffer.allocate(bufferSize);
+    }
+
+    public MemoryPipe() {
+        this(64 * 1024);
+    }
+
+    /** Number of write operations done on the client end, useful to measure syscalls of real channels. */
+    public long clientWrites() {
+        return clientWrites;
+    }
+
+    /** Number of write operations done on the server end, useful to measure syscalls of real channels. */
+    public long serverWrites() {
+        return serverWrites;
+    }
+
+    private class End implements ByteChannel {
+
+        private final boolean isClient;
+
+        End(boolean isClient) {
+            this.isClient = isClient;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (!isOpen()) {
+                throw new ClosedChannelException();
+            }
+            ByteBuffer source = isClient ? serverToClient : clientToServer;
+            if (source.position() == 0) {
+                boolean peerClosed = isClient ? serverClosed : clientClosed;
+                return peerClosed ? -1 : 0;
+            }
+            source.flip();
+            int bytes = Math.min(source.remaining(), dst.remaining());
+            ByteBuffer slice = source.duplicate();
+            slice.limit(slice.position() + bytes);
+            dst.put(slice);
+            source.position(source.position() + bytes);
+            source.compact();
+            return bytes;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            if (!isOpen()) {
+                throw new ClosedChannelException();
+            }
+            if (isClient) {
+                clientWrites++;
+            } else {
+                serverWrites++;
+            }
+            ByteBuffer dest = isClient ? clientToServer : serverToClient;
+            int bytes = Math.min(src.remaining(), dest.remaining());
+            ByteBuffer slice = src.duplicate();
+            slice.limit(slice.position() + bytes);
+            dest.put(slice);
+            src.position(src.position() + bytes);
+            return bytes;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return isClient ? !clientClosed : !serverClosed;
+        }
+
+        @Override
+        public void close() {
+            if (isClient) {
+                clientClosed = true;
+            } else {
+                serverClosed = true;
+            }
+        }
+    }
+
+    /** Complete the handshake of both channels, which must be connected using a {@link MemoryPipe}. */
+    public static void handshake(TlsChannel client, TlsChannel server) throws IOException {
+        boolean clientDone = false;
+        boolean serverDone = false;
+        while (!clientDone || !serverDone) {
+            if (!clientDone) {
+                clientDone = tryHandshake(client);
+            }
+            if (!serverDone) {
+                serverDone = tryHandshake(server);
+            }
+        }
+    }
+
+    private static boolean tryHandshake(TlsChannel channel) throws IOException {
+        try {
+            channel.handshake();
+            return true;
+        } catch (NeedsReadException | NeedsWriteException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Send all the remaining bytes of the source buffer from one channel to the other, which must be connected
+     * using a {@link MemoryPipe}. The receiving buffer is reused (cleared) as many times as needed.
+     *
+     * @return the number of bytes transferred
+     */
+    public static long transfer(TlsChannel from, TlsChannel to, ByteBuffer source, ByteBuffer receiveBuffer)
+            throws IOException {
+        long toReceive = source.remaining();
+        long received = 0;
+        while (received < toReceive) {
+            try {
+                // write even if there are no bytes remaining, to flush pending encrypted data
+                from.write(source);
+            } catch (NeedsReadException | NeedsWriteException e) {
+                // the receiving side must progress first
+            }
+            try {
+                receiveBuffer.clear();
+                int c = to.read(receiveBuffer);
+                if (c == -1) {
+                    throw new IOException("unexpected EOF");
+                }
+                received += c;
+            } catch (NeedsReadException | NeedsWriteException e) {
+                // the sending side must progress first
+            }
+        }
+        return received;
+    }
+}
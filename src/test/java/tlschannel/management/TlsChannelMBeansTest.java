@@ -0,0 +1,95 @@
+package tlschannel.management;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import tlschannel.HeapBufferAllocator;
+import tlschannel.TrackingAllocator;
+import tlschannel.async.AsynchronousTlsChannelGroup;
+
+@TestInstance(Lifecycle.PER_CLASS)
+public class TlsChannelMBeansTest {
+
+    private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+    @Test
+    public void testAllocatorRegistration() throws JMException {
+        TrackingAllocator allocator = new TrackingAllocator(new HeapBufferAllocator());
+        ObjectName name = TlsChannelMBeans.register(allocator, "test-allocator");
+        try {
+            allocator.free(allocator.allocate(100));
+            allocator.allocate(50);
+            assertEquals(150L, server.getAttribute(name, "BytesAllocated"));
+            assertEquals(50L, server.getAttribute(name, "CurrentAllocation"));
+            assertEquals(100L, server.getAttribute(name, "MaxAllocation"));
+            // the same name cannot be registered twice
+            assertThrows(
+                    InstanceAlreadyExistsException.class,
+                    () -> TlsChannelMBeans.register(allocator, "test-allocator"));
+        } finally {
+            TlsChannelMBeans.unregister(name);
+        }
+        assertFalse(server.isRegistered(name));
+    }
+
+    @Test
+    public void testAllocatorReset() {
+        TrackingAllocator allocator = new TrackingAllocator(new HeapBufferAllocator());
+        // refresh on every read
+        AllocatorMonitor monitor = new AllocatorMonitor(allocator, 0);
+        ByteBuffer buffer = allocator.allocate(100);
+        allocator.allocate(10);
+        assertEquals(2, monitor.getBuffersAllocated());
+        allocator.free(buffer);
+        monitor.reset();
+        assertEquals(0, monitor.getBytesAllocated());
+        assertEquals(0, monitor.getBuffersDeallocated());
+        // gauges are not affected, and the maximum restarts from the current allocation
+        assertEquals(10, monitor.getCurrentAllocation());
+        assertEquals(10, monitor.getMaxAllocation());
+        allocator.allocate(20);
+        // the rate is measured since the previous sample
+        assertTrue(monitor.getAllocationRate() > 0);
+        assertEquals(20, monitor.getBytesAllocated());
+        assertEquals(30, monitor.getMaxAllocation());
+    }
+
+    @Test
+    public void testConsistentSample() {
+        TrackingAllocator allocator = new TrackingAllocator(new HeapBufferAllocator());
+        AllocatorMonitor monitor = new AllocatorMonitor(allocator, 60_000);
+        allocator.allocate(100);
+        assertEquals(100, monitor.getBytesAllocated());
+        // within the refresh interval, attributes come from the same sample
+        allocator.allocate(100);
+        assertEquals(100, monitor.getBytesAllocated());
+        assertEquals(100, monitor.getCurrentAllocation());
+    }
+
+    @Test
+    public void testChannelGroupRegistration() throws JMException {
+        AsynchronousTlsChannelGroup group =
+                AsynchronousTlsChannelGroup.newBuilder().withSelectorCount(2).build();
+        ObjectName name = TlsChannelMBeans.register(group, "test-group");
+        try {
+            assertEquals(2, server.getAttribute(name, "SelectorCount"));
+            assertEquals(0L, server.getAttribute(name, "StartedReadCount"));
+            assertEquals(false, server.getAttribute(name, "Shutdown"));
+            server.invoke(name, "reset", null, null);
+        } finally {
+            TlsChannelMBeans.unregister(name);
+            group.shutdown();
+        }
+    }
+}